@@ -25,6 +25,8 @@ public class PantherDemoApplication extends Application {
             return;
         }
         LeakCanary.install(this);
+        // open database in background while the first screen is created
+        Panther.initAsync(this);
     }
 
     public static PantherDemoApplication get() {
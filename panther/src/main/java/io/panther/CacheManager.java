@@ -0,0 +1,463 @@
+package io.panther;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.panther.util.ByteUtil;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/27 10:30
+ * <p>
+ * Byte-bounded cache namespaces. Size and access of every key of a namespace are tracked in memory,
+ * reads never write to disk, the tracking is checkpointed in background and at close into one
+ * compact record per namespace. When a namespace exceeds its budget cold entries are evicted in
+ * background in small chunks until it is back under {@link #LOW_WATERMARK_PERCENT} of the budget.
+ * <p>
+ * Keys written after the last checkpoint of a crashed process are not tracked until rewritten,
+ * a namespace without checkpoint is rebuilt by scanning its keys.
+ */
+final class CacheManager {
+    private static final String CHECKPOINT_KEY_PREFIX = Panther.INTERNAL_KEY_PREFIX + "cache:";
+    private static final int LOW_WATERMARK_PERCENT = 90;
+    private static final int EVICTION_CHUNK = 64;
+    private static final int MAX_FREQUENCY = 255;
+    private static final long CHECKPOINT_INTERVAL_SECONDS = 60;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    interface Callback {
+        /**
+         * Delete evicted keys
+         */
+        void evict(List<String> keys) throws Exception;
+    }
+
+    private final List<Namespace> namespaces = new ArrayList<>();
+    private final DictionaryManager.Storage storage;
+    private final Scheduler scheduler;
+    private final Callback callback;
+    @Nullable
+    private Disposable checkpointer;
+
+    CacheManager(DictionaryManager.Storage storage, @Nullable Map<String, Long> budgets,
+                 @Nullable Map<String, EvictionPolicy> policies, Scheduler scheduler, Callback callback) {
+        this.storage = storage;
+        this.scheduler = scheduler;
+        this.callback = callback;
+        if (budgets != null) {
+            for (Map.Entry<String, Long> budget : budgets.entrySet()) {
+                EvictionPolicy policy = policies != null ? policies.get(budget.getKey()) : null;
+                namespaces.add(new Namespace(budget.getKey(), budget.getValue(), policy));
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return namespaces.isEmpty();
+    }
+
+    /**
+     * Checkpoint periodically in background, once until {@link #stop()}
+     */
+    synchronized void start() {
+        if (namespaces.isEmpty() || checkpointer != null) {
+            return;
+        }
+        checkpointer = scheduler.schedulePeriodicallyDirect(new Runnable() {
+            @Override
+            public void run() {
+                checkpoint();
+            }
+        }, CHECKPOINT_INTERVAL_SECONDS, CHECKPOINT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    synchronized void stop() {
+        if (checkpointer != null) {
+            checkpointer.dispose();
+            checkpointer = null;
+        }
+    }
+
+    /**
+     * Namespace of key
+     *
+     * @param key key
+     * @return namespace, null if key is not cached
+     */
+    @Nullable
+    Namespace namespaceOf(String key) {
+        Namespace matched = null;
+        for (int i = 0; i < namespaces.size(); i++) {
+            Namespace namespace = namespaces.get(i);
+            if (key.startsWith(namespace.prefix)
+                    && (matched == null || namespace.prefix.length() > matched.prefix.length())) {
+                matched = namespace;
+            }
+        }
+        return matched;
+    }
+
+    void onWrite(String key, @Nullable byte[] record) {
+        Namespace namespace = namespaceOf(key);
+        if (namespace != null) {
+            if (record == null) {
+                namespace.remove(key);
+            } else if (namespace.put(key, key.length() + record.length)) {
+                evictLater(namespace);
+            }
+        }
+    }
+
+    /**
+     * Track a key found by scanning a namespace without checkpoint
+     */
+    void onRebuilt(Namespace namespace, String key, int recordLength) {
+        if (namespace.put(key, key.length() + recordLength)) {
+            evictLater(namespace);
+        }
+    }
+
+    /**
+     * Confirm the eviction of a picked key, call it under the writer lock right before the delete
+     *
+     * @param key key
+     * @return delete it, false if written or read since it was picked
+     */
+    boolean confirmEviction(String key) {
+        Namespace namespace = namespaceOf(key);
+        return namespace != null && namespace.confirmEviction(key);
+    }
+
+    void onRead(String key) {
+        Namespace namespace = namespaceOf(key);
+        if (namespace != null) {
+            namespace.access(key);
+        }
+    }
+
+    /**
+     * Load checkpoints after open
+     *
+     * @return namespaces without checkpoint or with a damaged one, to rebuild by scanning
+     */
+    List<Namespace> load() {
+        List<Namespace> missing = new ArrayList<>();
+        for (Namespace namespace : namespaces) {
+            try {
+                byte[] checkpoint = storage.read(CHECKPOINT_KEY_PREFIX + namespace.prefix);
+                if (checkpoint != null) {
+                    namespace.restore(checkpoint);
+                } else {
+                    missing.add(namespace);
+                }
+            } catch (Exception e) {
+                missing.add(namespace);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Write the tracking of changed namespaces
+     */
+    void checkpoint() {
+        for (Namespace namespace : namespaces) {
+            byte[] checkpoint = namespace.checkpointIfDirty();
+            if (checkpoint != null) {
+                try {
+                    storage.write(CHECKPOINT_KEY_PREFIX + namespace.prefix, checkpoint);
+                } catch (Exception e) {
+                    namespace.markDirty();
+                }
+            }
+        }
+    }
+
+    void fillStats(PantherStats stats) {
+        for (Namespace namespace : namespaces) {
+            PantherStats.CacheStats namespaceStats = new PantherStats.CacheStats();
+            synchronized (namespace) {
+                namespaceStats.prefix = namespace.prefix;
+                namespaceStats.policy = namespace.policy;
+                namespaceStats.maxBytes = namespace.maxBytes;
+                namespaceStats.bytesUsed = namespace.bytesUsed;
+                namespaceStats.entries = namespace.entries.size();
+                namespaceStats.evictions = namespace.evictions;
+            }
+            stats.cacheStats.add(namespaceStats);
+        }
+    }
+
+    private void evictLater(final Namespace namespace) {
+        if (namespace.evicting.compareAndSet(false, true)) {
+            scheduler.scheduleDirect(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        evict(namespace);
+                    } finally {
+                        namespace.evicting.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private void evict(Namespace namespace) {
+        List<String> victims = namespace.victims();
+        try {
+            for (int from = 0; from < victims.size(); from += EVICTION_CHUNK) {
+                callback.evict(victims.subList(from, Math.min(victims.size(), from + EVICTION_CHUNK)));
+            }
+        } catch (Exception ignore) {
+
+        } finally {
+            namespace.endEviction();
+        }
+    }
+
+    static final class Namespace {
+        final String prefix;
+        final long maxBytes;
+        final EvictionPolicy policy;
+        // guarded by this
+        private final HashMap<String, Entry> entries = new HashMap<>();
+        private long bytesUsed;
+        private long evictions;
+        private long clock;
+        // last access of the picked victims when picked
+        private final HashMap<String, Long> picked = new HashMap<>();
+        private boolean dirty;
+        private final AtomicBoolean evicting = new AtomicBoolean();
+
+        Namespace(String prefix, long maxBytes, EvictionPolicy policy) {
+            this.prefix = prefix;
+            this.maxBytes = maxBytes;
+            this.policy = policy != null ? policy : EvictionPolicy.LRU;
+        }
+
+        /**
+         * @return over budget
+         */
+        synchronized boolean put(String key, int size) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            } else {
+                bytesUsed -= entry.size;
+            }
+            entry.size = size;
+            touch(entry);
+            bytesUsed += size;
+            dirty = true;
+            return bytesUsed > maxBytes;
+        }
+
+        synchronized void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                bytesUsed -= entry.size;
+                dirty = true;
+            }
+        }
+
+        synchronized void access(String key) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                touch(entry);
+                dirty = true;
+            }
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        private void touch(Entry entry) {
+            entry.lastAccess = ++clock;
+            if (entry.frequency < MAX_FREQUENCY) {
+                entry.frequency++;
+            }
+        }
+
+        /**
+         * Coldest keys to evict to get under the low watermark, LFU frequencies decay
+         *
+         * @return keys, coldest first
+         */
+        synchronized List<String> victims() {
+            long target = maxBytes * LOW_WATERMARK_PERCENT / 100;
+            if (bytesUsed <= maxBytes) {
+                return Collections.emptyList();
+            }
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            Collections.sort(candidates, policy == EvictionPolicy.LFU ? LFU_ORDER : LRU_ORDER);
+            List<String> victims = new ArrayList<>();
+            picked.clear();
+            long bytes = bytesUsed;
+            for (int i = 0; i < candidates.size() && bytes > target; i++) {
+                Map.Entry<String, Entry> candidate = candidates.get(i);
+                victims.add(candidate.getKey());
+                picked.put(candidate.getKey(), candidate.getValue().lastAccess);
+                bytes -= candidate.getValue().size;
+            }
+            if (policy == EvictionPolicy.LFU) {
+                for (Entry entry : entries.values()) {
+                    entry.frequency >>= 1;
+                }
+            }
+            return victims;
+        }
+
+        /**
+         * Stop tracking a picked key about to be deleted
+         *
+         * @return false if the key was written, read or removed since it was picked
+         */
+        synchronized boolean confirmEviction(String key) {
+            Long pickedAccess = picked.remove(key);
+            Entry entry = entries.get(key);
+            if (pickedAccess == null || entry == null || entry.lastAccess != pickedAccess) {
+                return false;
+            }
+            entries.remove(key);
+            bytesUsed -= entry.size;
+            evictions++;
+            dirty = true;
+            return true;
+        }
+
+        synchronized void endEviction() {
+            picked.clear();
+        }
+
+        /**
+         * | count 4 | ( key length 2 | key | size 4 | last access 8 | frequency 1 ) ... |
+         *
+         * @return checkpoint, null if not changed since the last one
+         */
+        @Nullable
+        synchronized byte[] checkpointIfDirty() {
+            if (!dirty) {
+                return null;
+            }
+            dirty = false;
+            List<byte[]> keys = new ArrayList<>(entries.size());
+            List<Entry> saved = new ArrayList<>(entries.size());
+            int length = 4;
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                byte[] keyBytes = entry.getKey().getBytes(DataEnvelope.UTF_8);
+                // the length has 2 bytes, longer keys are not checkpointed and rebuilt when rewritten
+                if (keyBytes.length > MAX_KEY_BYTES) {
+                    continue;
+                }
+                keys.add(keyBytes);
+                saved.add(entry.getValue());
+                length += 2 + keyBytes.length + 13;
+            }
+            byte[] checkpoint = new byte[length];
+            ByteUtil.writeInt(checkpoint, 0, saved.size());
+            int position = 4;
+            for (int i = 0; i < saved.size(); i++) {
+                Entry entry = saved.get(i);
+                byte[] key = keys.get(i);
+                checkpoint[position] = (byte) (key.length >>> 8);
+                checkpoint[position + 1] = (byte) key.length;
+                System.arraycopy(key, 0, checkpoint, position + 2, key.length);
+                position += 2 + key.length;
+                ByteUtil.writeInt(checkpoint, position, entry.size);
+                ByteUtil.writeLong(checkpoint, position + 4, entry.lastAccess);
+                checkpoint[position + 12] = (byte) entry.frequency;
+                position += 13;
+            }
+            return checkpoint;
+        }
+
+        /**
+         * Restore a checkpoint, a damaged one is rejected as a whole
+         *
+         * @param checkpoint checkpoint
+         * @throws IllegalArgumentException checkpoint damaged, nothing restored
+         */
+        synchronized void restore(byte[] checkpoint) {
+            if (checkpoint.length < 4) {
+                throw new IllegalArgumentException("Cache checkpoint damaged");
+            }
+            int count = ByteUtil.readInt(checkpoint, 0);
+            // every entry takes at least 15 bytes
+            if (count < 0 || count > (checkpoint.length - 4) / 15) {
+                throw new IllegalArgumentException("Cache checkpoint damaged");
+            }
+            List<String> keys = new ArrayList<>(count);
+            List<Entry> restored = new ArrayList<>(count);
+            int position = 4;
+            for (int i = 0; i < count; i++) {
+                if (position + 2 > checkpoint.length) {
+                    throw new IllegalArgumentException("Cache checkpoint damaged");
+                }
+                int keyLength = ((checkpoint[position] & 0xFF) << 8) | (checkpoint[position + 1] & 0xFF);
+                if (position + 2 + keyLength + 13 > checkpoint.length) {
+                    throw new IllegalArgumentException("Cache checkpoint damaged");
+                }
+                keys.add(new String(checkpoint, position + 2, keyLength, DataEnvelope.UTF_8));
+                position += 2 + keyLength;
+                Entry entry = new Entry();
+                entry.size = ByteUtil.readInt(checkpoint, position);
+                entry.lastAccess = ByteUtil.readLong(checkpoint, position + 4);
+                entry.frequency = checkpoint[position + 12] & 0xFF;
+                if (entry.size < 0) {
+                    throw new IllegalArgumentException("Cache checkpoint damaged");
+                }
+                position += 13;
+                restored.add(entry);
+            }
+            if (position != checkpoint.length) {
+                throw new IllegalArgumentException("Cache checkpoint damaged");
+            }
+            for (int i = 0; i < count; i++) {
+                String key = keys.get(i);
+                Entry entry = restored.get(i);
+                Entry old = entries.put(key, entry);
+                bytesUsed += entry.size - (old != null ? old.size : 0);
+                clock = Math.max(clock, entry.lastAccess);
+            }
+        }
+    }
+
+    private static final class Entry {
+        int size;
+        long lastAccess;
+        int frequency;
+    }
+
+    private static final Comparator<Map.Entry<String, Entry>> LRU_ORDER = new Comparator<Map.Entry<String, Entry>>() {
+        @Override
+        public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+            return compareLong(o1.getValue().lastAccess, o2.getValue().lastAccess);
+        }
+    };
+
+    private static final Comparator<Map.Entry<String, Entry>> LFU_ORDER = new Comparator<Map.Entry<String, Entry>>() {
+        @Override
+        public int compare(Map.Entry<String, Entry> o1, Map.Entry<String, Entry> o2) {
+            int result = o1.getValue().frequency - o2.getValue().frequency;
+            return result != 0 ? result : compareLong(o1.getValue().lastAccess, o2.getValue().lastAccess);
+        }
+    };
+
+    private static int compareLong(long x, long y) {
+        return x < y ? -1 : (x == y ? 0 : 1);
+    }
+}
@@ -0,0 +1,100 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import io.panther.codec.GsonCodec;
+import io.panther.codec.KryoCodec;
+import io.panther.codec.PantherCodec;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/15 16:05
+ * <p>
+ * Codecs by id for reading and by class for writing
+ */
+final class CodecRegistry {
+    private final PantherCodec[] codecsById = new PantherCodec[PantherCodec.MAX_ID + 1];
+    private final Map<Class<?>, PantherCodec> codecsByClass = new HashMap<>();
+    @NonNull
+    private final PantherCodec defaultCodec;
+
+    CodecRegistry(@Nullable PantherCodec defaultCodec, @Nullable Map<Class<?>, PantherCodec> classCodecs) {
+        // built-in codecs are always readable
+        codecsById[GsonCodec.ID] = new GsonCodec();
+        codecsById[KryoCodec.ID] = new KryoCodec();
+        if (classCodecs != null) {
+            for (Map.Entry<Class<?>, PantherCodec> entry : classCodecs.entrySet()) {
+                codecsByClass.put(entry.getKey(), register(entry.getValue()));
+            }
+        }
+        this.defaultCodec = defaultCodec != null ? register(defaultCodec) : codecsById[GsonCodec.ID];
+    }
+
+    private PantherCodec register(PantherCodec codec) {
+        int id = codec.id();
+        if (id <= DataEnvelope.CODEC_STRING || id > PantherCodec.MAX_ID) {
+            throw new IllegalArgumentException("Codec id " + id + " out of range");
+        }
+        if (id == DataEnvelope.CODEC_PRIMITIVE) {
+            throw new IllegalArgumentException("Codec id " + id + " is reserved by Panther");
+        }
+        PantherCodec registered = codecsById[id];
+        if (id < PantherCodec.MIN_CUSTOM_ID) {
+            // reserved ids only accept the built-in codecs or their subclasses
+            if (registered == null || !registered.getClass().isInstance(codec)) {
+                throw new IllegalArgumentException("Codec id " + id + " is reserved by Panther");
+            }
+        } else if (registered != null && registered.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException("Codec id " + id + " already used by " + registered);
+        }
+        if (registered == null || registered.getClass() != codec.getClass()) {
+            codecsById[id] = codec;
+        }
+        return codecsById[id];
+    }
+
+    /**
+     * Codec for writing, matched by the class of data, or the class of the first element of a collection
+     *
+     * @param data data
+     * @return codec
+     */
+    @NonNull
+    PantherCodec codecFor(@NonNull Object data) {
+        if (!codecsByClass.isEmpty()) {
+            PantherCodec codec = codecsByClass.get(data.getClass());
+            if (codec == null && data instanceof Collection) {
+                Iterator<?> iterator = ((Collection<?>) data).iterator();
+                Object first = iterator.hasNext() ? iterator.next() : null;
+                if (first != null) {
+                    codec = codecsByClass.get(first.getClass());
+                }
+            }
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return defaultCodec;
+    }
+
+    /**
+     * Codec for reading
+     *
+     * @param id id stored in record
+     * @return codec, null if unknown
+     */
+    @Nullable
+    PantherCodec codecOf(int id) {
+        if (id < 0 || id > PantherCodec.MAX_ID) {
+            return null;
+        }
+        return codecsById[id];
+    }
+}
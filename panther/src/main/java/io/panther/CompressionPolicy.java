@@ -0,0 +1,200 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.panther.compress.Compression;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/29 11:05
+ * <p>
+ * Decide whether and how a value is compressed, by key prefix.
+ * <p>
+ * Values below the threshold are never compressed. A compressed value is only kept if it saves
+ * at least the min saving percent. A prefix whose recent values did not compress well stops
+ * compressing, and samples one value in {@link #RESAMPLE_INTERVAL} to notice when data changes.
+ * <p>
+ * Prefix of a key is the longest configured prefix, or the key up to its first ':' '_' '/' '.'
+ */
+final class CompressionPolicy {
+    static final int DEFAULT_THRESHOLD = 1024;
+    static final int DEFAULT_MIN_SAVING_PERCENT = 10;
+
+    // misses in a row before a prefix stops compressing
+    private static final int MISS_LIMIT = 4;
+    private static final int RESAMPLE_INTERVAL = 32;
+    private static final int MAX_PREFIXES = 256;
+
+    private final Compression defaultCompression;
+    private final int threshold;
+    private final int minSavingPercent;
+    // configured prefixes, longest first
+    private final List<String> overridePrefixes = new ArrayList<>();
+    // stats of configured prefixes, never evicted, not modified after construction
+    private final Map<String, PrefixState> overrideStates = new HashMap<>();
+    // stats of derived prefixes, least recently used evicted
+    private final LinkedHashMap<String, PrefixState> states = new LinkedHashMap<String, PrefixState>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PrefixState> eldest) {
+            return size() > MAX_PREFIXES;
+        }
+    };
+
+    CompressionPolicy(Compression defaultCompression, int threshold, int minSavingPercent,
+                      @Nullable Map<String, Compression> overrides) {
+        this.defaultCompression = defaultCompression;
+        this.threshold = threshold;
+        this.minSavingPercent = minSavingPercent;
+        if (overrides == null) {
+            return;
+        }
+        for (Map.Entry<String, Compression> override : overrides.entrySet()) {
+            String prefix = override.getKey();
+            overrideStates.put(prefix, new PrefixState(prefix, override.getValue()));
+            int index = 0;
+            while (index < overridePrefixes.size() && overridePrefixes.get(index).length() >= prefix.length()) {
+                index++;
+            }
+            overridePrefixes.add(index, prefix);
+        }
+    }
+
+    /**
+     * Compression to try for a value
+     *
+     * @param key    key
+     * @param length length of value
+     * @return compression, NONE to store raw
+     */
+    @NonNull
+    Compression choose(String key, int length) {
+        if (length < threshold) {
+            return Compression.NONE;
+        }
+        PrefixState state = stateOf(key);
+        synchronized (state) {
+            state.writes++;
+            if (state.compression == Compression.NONE) {
+                state.skipped++;
+                return Compression.NONE;
+            }
+            if (state.skipping && ++state.sinceSample < RESAMPLE_INTERVAL) {
+                state.skipped++;
+                return Compression.NONE;
+            }
+            state.sinceSample = 0;
+            return state.compression;
+        }
+    }
+
+    /**
+     * Report a compression attempt
+     *
+     * @param key              key
+     * @param originalLength   length of value
+     * @param compressedLength length of compressed value
+     * @return whether to keep the compressed value
+     */
+    boolean accept(String key, int originalLength, int compressedLength) {
+        boolean saved = (long) compressedLength * 100 <= (long) originalLength * (100 - minSavingPercent);
+        PrefixState state = stateOf(key);
+        synchronized (state) {
+            state.bytesIn += originalLength;
+            if (saved) {
+                state.compressed++;
+                state.bytesOut += compressedLength;
+                state.misses = 0;
+                state.skipping = false;
+            } else {
+                state.rejected++;
+                state.bytesOut += originalLength;
+                if (++state.misses >= MISS_LIMIT) {
+                    state.skipping = true;
+                }
+            }
+        }
+        return saved;
+    }
+
+    void fillStats(PantherStats stats) {
+        List<PrefixState> snapshot = new ArrayList<>(overrideStates.values());
+        synchronized (states) {
+            snapshot.addAll(states.values());
+        }
+        for (PrefixState state : snapshot) {
+            PantherStats.CompressionStats prefixStats = new PantherStats.CompressionStats();
+            synchronized (state) {
+                prefixStats.prefix = state.prefix;
+                prefixStats.compression = state.compression.name();
+                prefixStats.skipping = state.skipping;
+                prefixStats.writes = state.writes;
+                prefixStats.compressed = state.compressed;
+                prefixStats.rejected = state.rejected;
+                prefixStats.skipped = state.skipped;
+                prefixStats.bytesIn = state.bytesIn;
+                prefixStats.bytesOut = state.bytesOut;
+            }
+            stats.compressionStats.add(prefixStats);
+        }
+    }
+
+    @NonNull
+    private PrefixState stateOf(String key) {
+        String prefix = prefixOf(key);
+        PrefixState state = overrideStates.get(prefix);
+        if (state != null) {
+            return state;
+        }
+        synchronized (states) {
+            state = states.get(prefix);
+            if (state == null) {
+                state = new PrefixState(prefix, defaultCompression);
+                states.put(prefix, state);
+            }
+            return state;
+        }
+    }
+
+    @NonNull
+    private String prefixOf(String key) {
+        for (String prefix : overridePrefixes) {
+            if (key.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == ':' || c == '_' || c == '/' || c == '.') {
+                return key.substring(0, i + 1);
+            }
+        }
+        return "";
+    }
+
+    private static final class PrefixState {
+        final String prefix;
+        final Compression compression;
+        boolean skipping;
+        int misses;
+        int sinceSample;
+        long writes;
+        long compressed;
+        long rejected;
+        long skipped;
+        long bytesIn;
+        long bytesOut;
+
+        PrefixState(String prefix, Compression compression) {
+            this.prefix = prefix;
+            this.compression = compression;
+        }
+    }
+}
@@ -4,10 +4,12 @@ package io.panther;
  * Project: ProjectPanther
  * Author: LiShen
  * Time: 2019/4/3 11:35
+ * <p>
+ * Legacy JSON record, only read now, new records are written as {@link DataEnvelope}
  */
 final class DataBundle {
     String key;
     String dataJson; // data to json
     boolean gzip;
-    long time;// TODO useless yet
-}
\ No newline at end of file
+    long time;
+}
@@ -0,0 +1,288 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+
+import java.nio.charset.Charset;
+
+import io.panther.codec.GsonCodec;
+import io.panther.util.ByteUtil;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/12 10:20
+ * <p>
+ * Binary record stored in database, replaces the JSON {@link DataBundle}
+ * <p>
+ * | magic 1 | version 1 | flags 1 | codec 1 | time 8 | optional fields by flags | payload ... |
+ * <p>
+ * Optional fields: dictionary id 4, expiry time 8
+ * <p>
+ * Primitive payload: | type 1 | value 8 |, doubles are stored as their raw long bits
+ */
+final class DataEnvelope {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final byte MAGIC = (byte) 0xA7;
+    static final byte VERSION = 1;
+    static final int HEADER_LENGTH = 12;
+
+    // codec of payload, others are ids of PantherCodec
+    static final int CODEC_STRING = 0; // raw UTF-8 text
+    static final int CODEC_PRIMITIVE = 3; // fixed width primitive
+
+    // types of primitive payloads
+    static final int PRIMITIVE_INT = 1;
+    static final int PRIMITIVE_LONG = 2;
+    static final int PRIMITIVE_DOUBLE = 3;
+    static final int PRIMITIVE_BOOLEAN = 4;
+    static final int PRIMITIVE_LENGTH = 9;
+
+    // flags, low 3 bits are the id of Compression of payload
+    static final int FLAG_COMPRESSION_MASK = 0x07;
+    // payload compressed with a preset dictionary, the id follows the header
+    static final int FLAG_DICTIONARY = 0x08;
+    // record expires, the expiry time follows the dictionary id
+    static final int FLAG_EXPIRES = 0x10;
+
+    int flags;
+    int codec;
+    long time;
+    int dictionaryId;
+    // expiry time in millis, 0 for never
+    long expiresAt;
+    byte[] buffer;
+    int payloadOffset;
+    int payloadLength;
+
+    int compression() {
+        return flags & FLAG_COMPRESSION_MASK;
+    }
+
+    boolean isExpired(long now) {
+        return expiresAt != 0 && expiresAt <= now;
+    }
+
+    boolean isPrimitive() {
+        return codec == CODEC_PRIMITIVE && payloadLength == PRIMITIVE_LENGTH;
+    }
+
+    /**
+     * Value of a primitive record converted to type, no boxing
+     *
+     * @param type primitive type
+     * @return value, raw long bits for doubles, 0 or 1 for booleans
+     */
+    long primitive(int type) {
+        if (!isPrimitive()) {
+            throw new IllegalArgumentException("Not a primitive record");
+        }
+        int storedType = buffer[payloadOffset];
+        long bits = ByteUtil.readLong(buffer, payloadOffset + 1);
+        if (storedType == type) {
+            return bits;
+        }
+        boolean storedDouble = storedType == PRIMITIVE_DOUBLE;
+        switch (type) {
+            case PRIMITIVE_DOUBLE:
+                return Double.doubleToRawLongBits(storedDouble ? Double.longBitsToDouble(bits) : (double) bits);
+            case PRIMITIVE_BOOLEAN:
+                return (storedDouble ? Double.longBitsToDouble(bits) != 0 : bits != 0) ? 1 : 0;
+            default:
+                return storedDouble ? (long) Double.longBitsToDouble(bits) : bits;
+        }
+    }
+
+    /**
+     * Value of a primitive record boxed as dataClass, any class the stored box is an instance of
+     * or String work as well
+     *
+     * @param dataClass class of data
+     * @return value
+     * @throws IllegalArgumentException if dataClass can not hold a number or boolean, e.g. a bean
+     */
+    @NonNull
+    Object primitiveValue(Class<?> dataClass) {
+        if (dataClass == Integer.class || dataClass == int.class) {
+            return (int) primitive(PRIMITIVE_INT);
+        } else if (dataClass == Long.class || dataClass == long.class) {
+            return primitive(PRIMITIVE_LONG);
+        } else if (dataClass == Double.class || dataClass == double.class) {
+            return Double.longBitsToDouble(primitive(PRIMITIVE_DOUBLE));
+        } else if (dataClass == Float.class || dataClass == float.class) {
+            return (float) Double.longBitsToDouble(primitive(PRIMITIVE_DOUBLE));
+        } else if (dataClass == Boolean.class || dataClass == boolean.class) {
+            return primitive(PRIMITIVE_BOOLEAN) != 0;
+        } else if (dataClass == Short.class || dataClass == short.class) {
+            return (short) primitive(PRIMITIVE_LONG);
+        } else if (dataClass == Byte.class || dataClass == byte.class) {
+            return (byte) primitive(PRIMITIVE_LONG);
+        }
+        // the stored type
+        int storedType = isPrimitive() ? buffer[payloadOffset] : 0;
+        Object value = storedType == PRIMITIVE_INT ? primitiveValue(Integer.class)
+                : storedType == PRIMITIVE_DOUBLE ? primitiveValue(Double.class)
+                : storedType == PRIMITIVE_BOOLEAN ? primitiveValue(Boolean.class) : primitiveValue(Long.class);
+        if (dataClass == String.class) {
+            return String.valueOf(value);
+        }
+        if (!dataClass.isInstance(value)) {
+            throw new IllegalArgumentException("Primitive record of " + value.getClass().getSimpleName()
+                    + " can not be read as " + dataClass.getName());
+        }
+        return value;
+    }
+
+    /**
+     * Boxed class of a primitive type
+     *
+     * @param type primitive type
+     * @return class
+     */
+    @NonNull
+    static Class<?> boxedClassOf(int type) {
+        return type == PRIMITIVE_INT ? Integer.class
+                : type == PRIMITIVE_LONG ? Long.class
+                : type == PRIMITIVE_DOUBLE ? Double.class : Boolean.class;
+    }
+
+    /**
+     * Primitive type of boxed data
+     *
+     * @param data data
+     * @return type, 0 if not a supported primitive
+     */
+    static int primitiveTypeOf(Object data) {
+        if (data instanceof Integer) {
+            return PRIMITIVE_INT;
+        } else if (data instanceof Long) {
+            return PRIMITIVE_LONG;
+        } else if (data instanceof Double) {
+            return PRIMITIVE_DOUBLE;
+        } else if (data instanceof Boolean) {
+            return PRIMITIVE_BOOLEAN;
+        }
+        return 0;
+    }
+
+    /**
+     * Value bits of boxed data of a primitive type
+     */
+    static long primitiveBits(Object data) {
+        if (data instanceof Double) {
+            return Double.doubleToRawLongBits((Double) data);
+        } else if (data instanceof Boolean) {
+            return (Boolean) data ? 1 : 0;
+        }
+        return ((Number) data).longValue();
+    }
+
+    @NonNull
+    static byte[] encodePrimitive(int type, long bits, long time, long expiresAt) {
+        byte[] payload = new byte[PRIMITIVE_LENGTH];
+        payload[0] = (byte) type;
+        ByteUtil.writeLong(payload, 1, bits);
+        return encode(0, CODEC_PRIMITIVE, time, 0, expiresAt, payload);
+    }
+
+    /**
+     * Whether the record is a binary envelope, legacy DataBundle records are JSON objects
+     *
+     * @param record record bytes
+     * @return envelope
+     */
+    static boolean isEnvelope(byte[] record) {
+        return record != null && record.length >= HEADER_LENGTH && record[0] == MAGIC;
+    }
+
+    @NonNull
+    static byte[] encode(int flags, int codec, long time, int dictionaryId, long expiresAt, byte[] payload) {
+        if (expiresAt != 0) {
+            flags |= FLAG_EXPIRES;
+        }
+        int headerLength = HEADER_LENGTH + ((flags & FLAG_DICTIONARY) != 0 ? 4 : 0)
+                + ((flags & FLAG_EXPIRES) != 0 ? 8 : 0);
+        byte[] record = new byte[headerLength + payload.length];
+        record[0] = MAGIC;
+        record[1] = VERSION;
+        record[2] = (byte) flags;
+        record[3] = (byte) codec;
+        ByteUtil.writeLong(record, 4, time);
+        int position = HEADER_LENGTH;
+        if ((flags & FLAG_DICTIONARY) != 0) {
+            ByteUtil.writeInt(record, position, dictionaryId);
+            position += 4;
+        }
+        if ((flags & FLAG_EXPIRES) != 0) {
+            ByteUtil.writeLong(record, position, expiresAt);
+            position += 8;
+        }
+        System.arraycopy(payload, 0, record, position, payload.length);
+        return record;
+    }
+
+    @NonNull
+    static DataEnvelope decode(byte[] record) {
+        if (!isEnvelope(record)) {
+            throw new IllegalArgumentException("Not a Panther record");
+        }
+        if (record[1] > VERSION) {
+            throw new IllegalArgumentException("Unsupported record version " + record[1]);
+        }
+        DataEnvelope envelope = new DataEnvelope();
+        envelope.flags = record[2] & 0xFF;
+        envelope.codec = record[3] & 0xFF;
+        envelope.time = ByteUtil.readLong(record, 4);
+        int position = HEADER_LENGTH + ((envelope.flags & FLAG_DICTIONARY) != 0 ? 4 : 0)
+                + ((envelope.flags & FLAG_EXPIRES) != 0 ? 8 : 0);
+        if (position > record.length) {
+            throw new IllegalArgumentException("Truncated Panther record");
+        }
+        position = HEADER_LENGTH;
+        if ((envelope.flags & FLAG_DICTIONARY) != 0) {
+            envelope.dictionaryId = ByteUtil.readInt(record, position);
+            position += 4;
+        }
+        if ((envelope.flags & FLAG_EXPIRES) != 0) {
+            envelope.expiresAt = ByteUtil.readLong(record, position);
+            position += 8;
+        }
+        envelope.buffer = record;
+        envelope.payloadOffset = position;
+        envelope.payloadLength = record.length - position;
+        return envelope;
+    }
+
+    /**
+     * Expiry time from the header only
+     *
+     * @param record record bytes
+     * @return expiry time, 0 for never or not a Panther record
+     */
+    static long expiresAt(byte[] record) {
+        if (!isEnvelope(record) || (record[2] & FLAG_EXPIRES) == 0) {
+            return 0;
+        }
+        int position = HEADER_LENGTH + ((record[2] & FLAG_DICTIONARY) != 0 ? 4 : 0);
+        return position + 8 <= record.length ? ByteUtil.readLong(record, position) : 0;
+    }
+
+    /**
+     * Wrap a legacy DataBundle, the payload must have been decompressed already
+     *
+     * @param dataBundle legacy data bundle
+     * @param dataJson   decompressed data json
+     * @return envelope
+     */
+    @NonNull
+    static DataEnvelope fromLegacy(DataBundle dataBundle, String dataJson) {
+        DataEnvelope envelope = new DataEnvelope();
+        envelope.flags = 0;
+        envelope.codec = GsonCodec.ID;
+        envelope.time = dataBundle.time;
+        envelope.buffer = dataJson.getBytes(UTF_8);
+        envelope.payloadOffset = 0;
+        envelope.payloadLength = envelope.buffer.length;
+        return envelope;
+    }
+}
@@ -0,0 +1,228 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import io.panther.compress.DictionaryTrainer;
+import io.panther.util.ByteUtil;
+import io.reactivex.Scheduler;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/2 10:15
+ * <p>
+ * Trained deflate dictionaries of key prefixes.
+ * <p>
+ * Values written under a dictionary prefix are sampled, once enough samples are collected a
+ * dictionary is trained in background and stored in database. Later values of the prefix are
+ * compressed with it and the record keeps the dictionary id. Dictionaries are retrained every
+ * {@link #RETRAIN_INTERVAL} writes, old ones are kept for the records still using them.
+ */
+final class DictionaryManager {
+    private static final String DICTIONARY_KEY_PREFIX = Panther.INTERNAL_KEY_PREFIX + "dict:";
+    private static final String CURRENT_KEY_PREFIX = Panther.INTERNAL_KEY_PREFIX + "dict_current:";
+
+    private static final int SAMPLE_COUNT = 64;
+    private static final int MAX_SAMPLE_LENGTH = 4 * 1024;
+    private static final int RETRAIN_INTERVAL = 50000;
+
+    interface Storage {
+        @Nullable
+        byte[] read(String key) throws Exception;
+
+        void write(String key, byte[] value) throws Exception;
+    }
+
+    private final Storage storage;
+    private final Scheduler scheduler;
+    private final List<PrefixDictionary> prefixes = new ArrayList<>();
+    // dictionaries by id, loaded lazily
+    private final ConcurrentHashMap<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+
+    DictionaryManager(Storage storage, @Nullable Collection<String> prefixes, Scheduler scheduler) {
+        this.storage = storage;
+        this.scheduler = scheduler;
+        if (prefixes != null) {
+            for (String prefix : prefixes) {
+                this.prefixes.add(new PrefixDictionary(prefix));
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return prefixes.isEmpty();
+    }
+
+    /**
+     * Dictionary prefix of key
+     *
+     * @param key key
+     * @return prefix dictionary, null if key is not under a dictionary prefix
+     */
+    @Nullable
+    PrefixDictionary prefixOf(String key) {
+        PrefixDictionary matched = null;
+        for (PrefixDictionary prefix : prefixes) {
+            if (key.startsWith(prefix.prefix) && (matched == null || prefix.prefix.length() > matched.prefix.length())) {
+                matched = prefix;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Dictionary of id, for reading
+     *
+     * @param id dictionary id
+     * @return dictionary
+     */
+    @NonNull
+    byte[] dictionary(int id) throws Exception {
+        byte[] dictionary = dictionaries.get(id);
+        if (dictionary == null) {
+            dictionary = storage.read(DICTIONARY_KEY_PREFIX + id);
+            if (dictionary == null) {
+                throw new IllegalStateException("Dictionary " + id + " not found");
+            }
+            dictionaries.put(id, dictionary);
+        }
+        return dictionary;
+    }
+
+    void fillStats(PantherStats stats) {
+        for (PrefixDictionary prefix : prefixes) {
+            PantherStats.DictionaryStats prefixStats = new PantherStats.DictionaryStats();
+            synchronized (prefix) {
+                prefixStats.prefix = prefix.prefix;
+                prefixStats.dictionaryId = prefix.currentId;
+                prefixStats.dictionarySize = prefix.current != null ? prefix.current.length : 0;
+                prefixStats.records = prefix.records;
+                prefixStats.bytesIn = prefix.bytesIn;
+                prefixStats.bytesOut = prefix.bytesOut;
+            }
+            stats.dictionaryStats.add(prefixStats);
+        }
+    }
+
+    final class PrefixDictionary {
+        final String prefix;
+        private boolean loaded;
+        private boolean trained;
+        private boolean training;
+        private int currentId;
+        @Nullable
+        private byte[] current;
+        private int writesSinceTrain;
+        private final List<byte[]> samples = new ArrayList<>();
+        private long records;
+        private long bytesIn;
+        private long bytesOut;
+
+        PrefixDictionary(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Current dictionary id of the prefix, sampling the value for training
+         *
+         * @param value uncompressed value
+         * @return dictionary id, 0 if no dictionary yet
+         */
+        int sample(byte[] value) {
+            boolean train = false;
+            synchronized (this) {
+                if (!loaded) {
+                    load();
+                }
+                writesSinceTrain++;
+                boolean sampling = !trained || writesSinceTrain >= RETRAIN_INTERVAL;
+                if (sampling && !training && samples.size() < SAMPLE_COUNT) {
+                    int length = Math.min(value.length, MAX_SAMPLE_LENGTH);
+                    byte[] sample = new byte[length];
+                    System.arraycopy(value, 0, sample, 0, length);
+                    samples.add(sample);
+                    if (samples.size() == SAMPLE_COUNT) {
+                        training = true;
+                        train = true;
+                    }
+                }
+            }
+            if (train) {
+                scheduler.scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        train();
+                    }
+                });
+            }
+            synchronized (this) {
+                return current != null ? currentId : 0;
+            }
+        }
+
+        synchronized void report(int originalLength, int compressedLength) {
+            records++;
+            bytesIn += originalLength;
+            bytesOut += compressedLength;
+        }
+
+        private void load() {
+            loaded = true;
+            try {
+                byte[] id = storage.read(CURRENT_KEY_PREFIX + prefix);
+                if (id != null && id.length == 4) {
+                    currentId = ByteUtil.readInt(id, 0);
+                    current = dictionary(currentId);
+                    trained = true;
+                }
+            } catch (Exception ignore) {
+                current = null;
+            }
+        }
+
+        private void train() {
+            List<byte[]> trainSamples;
+            synchronized (this) {
+                trainSamples = new ArrayList<>(samples);
+            }
+            try {
+                byte[] dictionary = DictionaryTrainer.train(trainSamples, DictionaryTrainer.DEFAULT_DICTIONARY_SIZE);
+                if (dictionary.length > 0) {
+                    CRC32 crc = new CRC32();
+                    crc.update(prefix.getBytes(DataEnvelope.UTF_8));
+                    crc.update(dictionary);
+                    // 0 means no dictionary
+                    int id = (int) crc.getValue();
+                    if (id == 0) {
+                        id = 1;
+                    }
+                    storage.write(DICTIONARY_KEY_PREFIX + id, dictionary);
+                    byte[] idBytes = new byte[4];
+                    ByteUtil.writeInt(idBytes, 0, id);
+                    storage.write(CURRENT_KEY_PREFIX + prefix, idBytes);
+                    dictionaries.put(id, dictionary);
+                    synchronized (this) {
+                        currentId = id;
+                        current = dictionary;
+                    }
+                }
+            } catch (Exception ignore) {
+
+            } finally {
+                synchronized (this) {
+                    samples.clear();
+                    writesSinceTrain = 0;
+                    trained = true;
+                    training = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package io.panther;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/27 10:10
+ * <p>
+ * Which entries a byte-bounded cache namespace evicts first
+ */
+public enum EvictionPolicy {
+    /**
+     * Least recently used
+     */
+    LRU,
+    /**
+     * Least frequently used, frequencies decay at every eviction so old hot entries cool down
+     */
+    LFU
+}
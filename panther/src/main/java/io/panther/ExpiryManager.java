@@ -0,0 +1,268 @@
+package io.panther;
+
+import android.support.annotation.Nullable;
+
+import com.snappydb.DB;
+import com.snappydb.KeyIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/23 16:40
+ * <p>
+ * Record expiry. The expiry time is kept in the record header, expired records read as missing
+ * without decoding the payload. Every record with an expiry time also has an index key
+ * __panther__:ttl:expiry time:key, a background sweeper walks the index in time order
+ * and deletes the expired records in small batches, taking the lock once per batch and record.
+ * Index keys of overwritten records are dropped when their record is found not expired, index keys
+ * of deleted records are dropped with the delete.
+ */
+final class ExpiryManager {
+    private static final String INDEX_KEY_PREFIX = Panther.INTERNAL_KEY_PREFIX + "ttl:";
+    private static final int TIME_DIGITS = 13;
+    private static final int SWEEP_BATCH_SIZE = 64;
+    private static final long SWEEP_INTERVAL_SECONDS = 60;
+
+    interface Callback {
+        void onExpired(String key);
+    }
+
+    private final PantherDatabase database;
+    @Nullable
+    private final Map<String, Long> prefixTtls;
+    private final Scheduler scheduler;
+    private final Callback callback;
+    // whether any record may expire, skips header reads of key checks otherwise
+    private volatile boolean active;
+    private final AtomicLong expired = new AtomicLong();
+    @Nullable
+    private Disposable sweeper;
+
+    ExpiryManager(PantherDatabase database, @Nullable Map<String, Long> prefixTtls, Scheduler scheduler,
+                  Callback callback) {
+        this.database = database;
+        this.prefixTtls = prefixTtls;
+        this.scheduler = scheduler;
+        this.callback = callback;
+        this.active = prefixTtls != null && !prefixTtls.isEmpty();
+    }
+
+    /**
+     * Sweep periodically in background, once until {@link #stop()}
+     */
+    synchronized void start() {
+        if (sweeper != null) {
+            return;
+        }
+        sweeper = scheduler.schedulePeriodicallyDirect(new Runnable() {
+            @Override
+            public void run() {
+                if (active && database.isAvailable()) {
+                    try {
+                        sweep(System.currentTimeMillis());
+                    } catch (Exception ignore) {
+
+                    }
+                }
+            }
+        }, SWEEP_INTERVAL_SECONDS, SWEEP_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Check the index after open, records written with a ttl before make it active
+     */
+    void load() {
+        if (active) {
+            return;
+        }
+        database.beginRead();
+        try {
+            KeyIterator iterator = database.get().findKeysIterator(INDEX_KEY_PREFIX);
+            try {
+                active = iterator.hasNext();
+            } finally {
+                iterator.close();
+            }
+        } catch (Exception ignore) {
+
+        } finally {
+            database.endRead();
+        }
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Expiry time of a write
+     *
+     * @param key key
+     * @param ttl ttl in millis, 0 for the default ttl of the key prefix
+     * @return expiry time, 0 for never
+     */
+    long expiresAt(String key, long ttl) {
+        if (ttl <= 0 && prefixTtls != null) {
+            String matched = null;
+            for (String prefix : prefixTtls.keySet()) {
+                if (key.startsWith(prefix) && (matched == null || prefix.length() > matched.length())) {
+                    matched = prefix;
+                }
+            }
+            if (matched != null) {
+                ttl = prefixTtls.get(matched);
+            }
+        }
+        return ttl > 0 ? System.currentTimeMillis() + ttl : 0;
+    }
+
+    /**
+     * Index a record written, no-op if it never expires
+     *
+     * @param key    key
+     * @param record record written, null for delete
+     */
+    void track(String key, @Nullable byte[] record) throws Exception {
+        long expiresAt = record != null ? DataEnvelope.expiresAt(record) : 0;
+        if (expiresAt == 0) {
+            return;
+        }
+        active = true;
+        String indexKey = indexKey(expiresAt, key);
+        database.beginWrite();
+        try {
+            database.get().put(indexKey, new byte[0]);
+        } finally {
+            database.endWrite();
+        }
+    }
+
+    /**
+     * Index key of a record about to be deleted, read the record in the writer lock of the delete
+     *
+     * @param key    key
+     * @param record record, null if not found
+     * @return index key for {@link #untrack(List)}, null if the record never expires
+     */
+    @Nullable
+    static String indexKeyOf(String key, @Nullable byte[] record) {
+        long expiresAt = record != null ? DataEnvelope.expiresAt(record) : 0;
+        return expiresAt != 0 ? indexKey(expiresAt, key) : null;
+    }
+
+    /**
+     * Drop index keys of deleted records
+     *
+     * @param indexKeys index keys
+     */
+    void untrack(List<String> indexKeys) throws Exception {
+        database.beginWrite();
+        try {
+            DB db = database.get();
+            for (String indexKey : indexKeys) {
+                db.del(indexKey);
+            }
+        } finally {
+            database.endWrite();
+        }
+    }
+
+    /**
+     * Delete records expired before now
+     *
+     * @param now now
+     * @return records deleted
+     */
+    int sweep(long now) throws Exception {
+        int deleted = 0;
+        String upperBound = indexKey(now, "\uffff\uffff");
+        while (true) {
+            List<String> indexKeys = new ArrayList<>(SWEEP_BATCH_SIZE);
+            database.beginRead();
+            try {
+                KeyIterator iterator = database.get().findKeysBetweenIterator(INDEX_KEY_PREFIX, upperBound);
+                try {
+                    while (indexKeys.size() < SWEEP_BATCH_SIZE && iterator.hasNext()) {
+                        for (String indexKey : iterator.next(SWEEP_BATCH_SIZE - indexKeys.size())) {
+                            indexKeys.add(indexKey);
+                        }
+                    }
+                } finally {
+                    iterator.close();
+                }
+            } finally {
+                database.endRead();
+            }
+            for (String indexKey : indexKeys) {
+                String key = indexKey.substring(INDEX_KEY_PREFIX.length() + TIME_DIGITS + 1);
+                if (deleteIfExpired(key, now)) {
+                    deleted++;
+                }
+            }
+            database.beginWrite();
+            try {
+                DB db = database.get();
+                for (String indexKey : indexKeys) {
+                    db.del(indexKey);
+                }
+            } finally {
+                database.endWrite();
+            }
+            if (indexKeys.size() < SWEEP_BATCH_SIZE) {
+                break;
+            }
+        }
+        expired.addAndGet(deleted);
+        return deleted;
+    }
+
+    private boolean deleteIfExpired(String key, long now) throws Exception {
+        database.beginWrite();
+        try {
+            byte[] record = database.getBytes(key);
+            if (record == null) {
+                return false;
+            }
+            long expiresAt = DataEnvelope.expiresAt(record);
+            // overwritten by a record without expiry or expiring later
+            if (expiresAt == 0 || expiresAt > now) {
+                return false;
+            }
+            database.get().del(key);
+        } finally {
+            database.endWrite();
+        }
+        callback.onExpired(key);
+        return true;
+    }
+
+    void fillStats(PantherStats stats) {
+        stats.expiredKeys = expired.get();
+    }
+
+    private static String indexKey(long expiresAt, String key) {
+        StringBuilder builder = new StringBuilder(INDEX_KEY_PREFIX.length() + TIME_DIGITS + 1 + key.length());
+        builder.append(INDEX_KEY_PREFIX);
+        String time = Long.toString(expiresAt);
+        for (int i = time.length(); i < TIME_DIGITS; i++) {
+            builder.append('0');
+        }
+        return builder.append(time).append(':').append(key).toString();
+    }
+}
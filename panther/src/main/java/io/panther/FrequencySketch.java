@@ -0,0 +1,113 @@
+package io.panther;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/29 10:15
+ * <p>
+ * Count-min sketch of access frequencies with 4-bit counters, sixteen counters packed in a long.
+ * Counters are halved when the sample size is reached so old popularity fades.
+ * <p>
+ * Not thread safe, guarded by the policy lock of the memory cache.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MIN_CAPACITY = 64;
+    private static final int MAX_CAPACITY = 1 << 24;
+
+    private long[] table;
+    private int tableMask;
+    private int capacity;
+    private int sampleSize;
+    private int size;
+
+    FrequencySketch() {
+        ensureCapacity(MIN_CAPACITY);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Grow the sketch for about maximum distinct entries, counts are lost when it grows
+     *
+     * @param maximum entries
+     */
+    void ensureCapacity(int maximum) {
+        int newCapacity = Math.min(Math.max(maximum, MIN_CAPACITY), MAX_CAPACITY);
+        if (table != null && newCapacity <= capacity) {
+            return;
+        }
+        capacity = newCapacity;
+        table = new long[ceilingPowerOfTwo(newCapacity)];
+        tableMask = table.length - 1;
+        sampleSize = 10 * newCapacity;
+        size = 0;
+    }
+
+    /**
+     * Estimated frequency, 0 ~ 15
+     */
+    int frequency(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEEDS[i]) * SEEDS[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
@@ -0,0 +1,266 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.panther.util.ByteUtil;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/6 10:20
+ * <p>
+ * Sampled access profile of the hottest read cached keys, one of 8 reads is counted. The top
+ * {@link #MAX_PROFILE_KEYS} keys are saved in background and at close, with the class they were
+ * read as, so the next start can prefetch them before they are asked for.
+ * <p>
+ * Counts restored from the last session are halved, keys not read any more fade out.
+ */
+final class HotKeyProfile {
+    private static final String PROFILE_KEY = Panther.INTERNAL_KEY_PREFIX + "profile";
+    // one of 8 reads is counted
+    private static final int SAMPLE_SHIFT = 29;
+    private static final int MAX_TRACKED_KEYS = 256;
+    private static final int MAX_PROFILE_KEYS = 64;
+    private static final long SAVE_INTERVAL_SECONDS = 60;
+
+    private final DictionaryManager.Storage storage;
+    private final AtomicInteger ticks = new AtomicInteger();
+    // counted keys, guarded by this
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    private boolean dirty;
+    private final Scheduler scheduler;
+    @Nullable
+    private Disposable saver;
+
+    HotKeyProfile(DictionaryManager.Storage storage, Scheduler scheduler) {
+        this.storage = storage;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Save periodically in background, once until {@link #stop()}
+     */
+    synchronized void start() {
+        if (saver != null) {
+            return;
+        }
+        saver = scheduler.schedulePeriodicallyDirect(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        }, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    synchronized void stop() {
+        if (saver != null) {
+            saver.dispose();
+            saver = null;
+        }
+    }
+
+    /**
+     * Count a read of key, sampled
+     *
+     * @param key       key
+     * @param dataClass class of data, or class of list element
+     * @param list      read as list
+     */
+    void onRead(String key, Class<?> dataClass, boolean list) {
+        // scrambled ticks, periodic access patterns do not alias with the sampling
+        if ((ticks.incrementAndGet() * 0x9E3779B9) >>> SAMPLE_SHIFT != 0) {
+            return;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                if (entries.size() >= MAX_TRACKED_KEYS) {
+                    age();
+                    if (entries.size() >= MAX_TRACKED_KEYS) {
+                        return;
+                    }
+                }
+                entry = new Entry(key);
+                entries.put(key, entry);
+            }
+            // the latest class wins
+            entry.className = dataClass.getName();
+            entry.list = list;
+            entry.count++;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Load the profile of the last session
+     *
+     * @return hottest keys first
+     */
+    @NonNull
+    List<Entry> load() {
+        try {
+            byte[] profile = storage.read(PROFILE_KEY);
+            if (profile != null) {
+                restore(profile);
+            }
+        } catch (Exception ignore) {
+
+        }
+        return top();
+    }
+
+    void save() {
+        byte[] profile = null;
+        synchronized (this) {
+            if (dirty) {
+                profile = encode(top());
+                dirty = false;
+            }
+        }
+        if (profile != null) {
+            try {
+                storage.write(PROFILE_KEY, profile);
+            } catch (Exception ignore) {
+                synchronized (this) {
+                    dirty = true;
+                }
+            }
+        }
+    }
+
+    @NonNull
+    private synchronized List<Entry> top() {
+        List<Entry> sorted = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            sorted.add(entry.copy());
+        }
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return o1.count > o2.count ? -1 : o1.count < o2.count ? 1 : 0;
+            }
+        });
+        return sorted.size() > MAX_PROFILE_KEYS ? new ArrayList<>(sorted.subList(0, MAX_PROFILE_KEYS)) : sorted;
+    }
+
+    /**
+     * Halve every count and drop the keys counted to 0, to make room for new keys
+     */
+    private void age() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            entry.count >>>= 1;
+            if (entry.count == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * | count 4 | entries: | key length 2 | key | class length 2 | class | list 1 | count 4 | ... |
+     */
+    @NonNull
+    private static byte[] encode(List<Entry> top) {
+        List<byte[]> keys = new ArrayList<>(top.size());
+        List<byte[]> classes = new ArrayList<>(top.size());
+        int length = 4;
+        for (Entry entry : top) {
+            byte[] key = entry.key.getBytes(DataEnvelope.UTF_8);
+            byte[] className = entry.className.getBytes(DataEnvelope.UTF_8);
+            keys.add(key);
+            classes.add(className);
+            length += 2 + key.length + 2 + className.length + 5;
+        }
+        byte[] profile = new byte[length];
+        ByteUtil.writeInt(profile, 0, top.size());
+        int position = 4;
+        for (int i = 0; i < top.size(); i++) {
+            position = writeBytes(profile, position, keys.get(i));
+            position = writeBytes(profile, position, classes.get(i));
+            profile[position] = (byte) (top.get(i).list ? 1 : 0);
+            ByteUtil.writeInt(profile, position + 1, top.get(i).count);
+            position += 5;
+        }
+        return profile;
+    }
+
+    private synchronized void restore(byte[] profile) {
+        int count = ByteUtil.readInt(profile, 0);
+        int position = 4;
+        for (int i = 0; i < count && position < profile.length; i++) {
+            int keyLength = readShort(profile, position);
+            String key = new String(profile, position + 2, keyLength, DataEnvelope.UTF_8);
+            position += 2 + keyLength;
+            int classLength = readShort(profile, position);
+            String className = new String(profile, position + 2, classLength, DataEnvelope.UTF_8);
+            position += 2 + classLength;
+            int restored = ByteUtil.readInt(profile, position + 1) >>> 1;
+            if (restored > 0 && !entries.containsKey(key) && entries.size() < MAX_TRACKED_KEYS) {
+                Entry entry = new Entry(key);
+                entry.className = className;
+                entry.list = profile[position] != 0;
+                entry.count = restored;
+                entries.put(key, entry);
+            }
+            position += 5;
+        }
+    }
+
+    private static int writeBytes(byte[] buffer, int position, byte[] bytes) {
+        buffer[position] = (byte) (bytes.length >>> 8);
+        buffer[position + 1] = (byte) bytes.length;
+        System.arraycopy(bytes, 0, buffer, position + 2, bytes.length);
+        return position + 2 + bytes.length;
+    }
+
+    private static int readShort(byte[] buffer, int position) {
+        return ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+    }
+
+    static final class Entry {
+        final String key;
+        String className;
+        boolean list;
+        int count;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        @NonNull
+        Entry copy() {
+            Entry copy = new Entry(key);
+            copy.className = className;
+            copy.list = list;
+            copy.count = count;
+            return copy;
+        }
+
+        /**
+         * Class the key was read as
+         *
+         * @return class, null if it is gone
+         */
+        @Nullable
+        Class<?> dataClass() {
+            try {
+                return Class.forName(className);
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.panther;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/4 10:20
+ * <p>
+ * Bloom filter over the stored keys, a read of a key the filter rules out returns at once
+ * without touching database.
+ * <p>
+ * Built in background after open, every key is assumed present until the build finishes. Writers
+ * add the key before the write so readers never miss it, and again after the write to the filter
+ * being built and the current one, so a build that scanned before the write and finished before
+ * the writer looked does not lose it. Deleted keys stay in the filter as false positives,
+ * the filter is rebuilt when the keys outgrow it or enough keys were deleted.
+ */
+final class KeyFilter {
+    private static final int BITS_PER_KEY = 10;
+    // about 1% false positives at 10 bits per key
+    private static final int HASHES = 7;
+    private static final int MIN_CAPACITY = 1024;
+
+    interface Builder {
+        /**
+         * Rebuild the filter in background, see {@link #startBuild(int)}
+         */
+        void rebuild();
+    }
+
+    private final Builder builder;
+    private final AtomicBoolean building = new AtomicBoolean();
+    // null until the first build finishes
+    private volatile Filter current;
+    private volatile Filter next;
+
+    KeyFilter(Builder builder) {
+        this.builder = builder;
+    }
+
+    boolean isReady() {
+        return current != null;
+    }
+
+    /**
+     * Whether key may be stored, false means definitely missing
+     *
+     * @param key key
+     * @return may be stored
+     */
+    boolean mightContain(String key) {
+        Filter filter = current;
+        if (filter == null || key.startsWith(Panther.INTERNAL_KEY_PREFIX)) {
+            return true;
+        }
+        return filter.mightContain(hash(key));
+    }
+
+    /**
+     * Add key before writing it
+     */
+    void add(String key) {
+        long hash = hash(key);
+        Filter filter = current;
+        if (filter != null && filter.add(hash) > filter.capacity) {
+            requestRebuild();
+        }
+        Filter building = next;
+        if (building != null) {
+            building.add(hash);
+        }
+    }
+
+    /**
+     * Add key again after it was written, for a build scanning concurrently
+     */
+    void confirm(String key) {
+        long hash = hash(key);
+        // next before current, a build finishes by setting current before clearing next
+        Filter building = next;
+        if (building != null) {
+            building.add(hash);
+        }
+        Filter filter = current;
+        if (filter != null && filter != building && filter.add(hash) > filter.capacity) {
+            requestRebuild();
+        }
+    }
+
+    void onDelete() {
+        Filter filter = current;
+        if (filter != null && filter.deletes.incrementAndGet() > filter.capacity / 2) {
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Request a build, no-op while one is running
+     */
+    void requestRebuild() {
+        if (building.compareAndSet(false, true)) {
+            builder.rebuild();
+        }
+    }
+
+    /**
+     * Start a build, writes from now on are also added to the new filter
+     *
+     * @param expectedKeys keys in database
+     * @return new filter to fill with the stored keys
+     */
+    Filter startBuild(int expectedKeys) {
+        Filter filter = new Filter(Math.max(MIN_CAPACITY, expectedKeys * 2));
+        next = filter;
+        return filter;
+    }
+
+    void finishBuild(Filter filter) {
+        current = filter;
+        next = null;
+        building.set(false);
+    }
+
+    void abortBuild() {
+        next = null;
+        building.set(false);
+    }
+
+    /**
+     * 64-bit FNV-1a of the chars with a final mix, halves give the two base hashes
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    static final class Filter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        final int capacity;
+        private final AtomicInteger keys = new AtomicInteger();
+        private final AtomicInteger deletes = new AtomicInteger();
+
+        Filter(int capacity) {
+            this.capacity = capacity;
+            int words = (int) Math.min(Integer.MAX_VALUE, ((long) capacity * BITS_PER_KEY + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+        }
+
+        void add(String key) {
+            add(hash(key));
+        }
+
+        /**
+         * @return distinct keys added so far, rewrites of a key are not counted
+         */
+        int add(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            boolean changed = false;
+            for (int i = 1; i <= HASHES; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long value;
+                do {
+                    value = bits.get(word);
+                    if ((value & mask) != 0) {
+                        break;
+                    }
+                    changed = true;
+                } while (!bits.compareAndSet(word, value, value | mask));
+            }
+            return changed ? keys.incrementAndGet() : keys.get();
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= HASHES; i++) {
+                long index = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.panther;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/30 10:20
+ * <p>
+ * How the memory cache holds a value
+ */
+public enum MemoryReference {
+    /**
+     * Kept until evicted, weighs the estimated size of the value
+     */
+    STRONG,
+    /**
+     * Kept while memory allows, cleared by the GC under memory pressure
+     */
+    SOFT,
+    /**
+     * Kept while the value is reachable elsewhere
+     */
+    WEAK
+}
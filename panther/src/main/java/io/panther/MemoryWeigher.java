@@ -0,0 +1,21 @@
+package io.panther;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/28 10:20
+ * <p>
+ * Estimated memory of values of a class in the memory cache, register it by
+ * {@link PantherConfiguration.Builder#memoryWeigher(Class, MemoryWeigher)}
+ * <p>
+ * Called once when a value is put, implementations must be thread safe and cheap.
+ */
+public interface MemoryWeigher<T> {
+    /**
+     * Estimated bytes retained by value
+     *
+     * @param value value, not null
+     * @return bytes
+     */
+    int weigh(T value);
+}
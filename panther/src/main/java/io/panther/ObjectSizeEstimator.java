@@ -0,0 +1,218 @@
+package io.panther;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.view.View;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/28 10:40
+ * <p>
+ * Approximate retained size of values, registered weighers first, then estimates of strings,
+ * arrays, collections, maps and beans by their fields.
+ * <p>
+ * Large collections are sampled and extrapolated, object graphs are followed to {@link #MAX_DEPTH}
+ * levels and {@link #MAX_OBJECTS} objects, shared objects are counted once.
+ * <p>
+ * Framework objects are not followed, their fields are counted but not what they point to.
+ * Contexts and views count nothing, a value only refers to them.
+ */
+final class ObjectSizeEstimator {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final int MAX_DEPTH = 6;
+    private static final int MAX_SAMPLES = 32;
+    private static final int MAX_OBJECTS = 1024;
+    private static final String[] FRAMEWORK_PACKAGES = {"java.", "javax.", "android.", "dalvik.", "libcore.",
+            "sun.", "com.android.", "kotlin."};
+
+    private final Map<Class<?>, MemoryWeigher<?>> weighers;
+    // instance fields of classes, reflection is slow
+    private final ConcurrentHashMap<Class<?>, Field[]> fields = new ConcurrentHashMap<>();
+    // whether classes are framework classes
+    private final ConcurrentHashMap<Class<?>, Boolean> frameworkClasses = new ConcurrentHashMap<>();
+
+    ObjectSizeEstimator(@Nullable Map<Class<?>, MemoryWeigher<?>> weighers) {
+        this.weighers = weighers != null ? weighers : Collections.<Class<?>, MemoryWeigher<?>>emptyMap();
+    }
+
+    /**
+     * Estimated bytes retained by value
+     *
+     * @param value value
+     * @return bytes
+     */
+    int weigh(@Nullable Object value) {
+        long size = weigh(value, 0, new IdentityHashMap<Object, Boolean>());
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long weigh(@Nullable Object value, int depth, IdentityHashMap<Object, Boolean> visited) {
+        if (value == null || depth > MAX_DEPTH || visited.size() >= MAX_OBJECTS
+                || visited.put(value, Boolean.TRUE) != null) {
+            return 0;
+        }
+        Class<?> clazz = value.getClass();
+        MemoryWeigher<Object> weigher = (MemoryWeigher<Object>) weigherOf(clazz);
+        if (weigher != null) {
+            return weigher.weigh(value);
+        }
+        if (value instanceof String) {
+            return align(OBJECT_HEADER + 12) + align(ARRAY_HEADER + 2L * ((String) value).length());
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16 + (value instanceof Long || value instanceof Double ? 8 : 0);
+        }
+        if (clazz.isArray()) {
+            return weighArray(value, clazz.getComponentType(), depth, visited);
+        }
+        if (value instanceof Collection) {
+            Collection<Object> collection = (Collection<Object>) value;
+            return align(OBJECT_HEADER + 20) + align(ARRAY_HEADER + (long) REFERENCE * collection.size())
+                    + weighSampled(collection.iterator(), collection.size(), depth, visited);
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            // table and one node per entry
+            long size = align(OBJECT_HEADER + 36) + align(ARRAY_HEADER + (long) REFERENCE * map.size())
+                    + 32L * map.size();
+            return size + weighSampled(map.keySet().iterator(), map.size(), depth, visited)
+                    + weighSampled(map.values().iterator(), map.size(), depth, visited);
+        }
+        if (value instanceof Context || value instanceof View) {
+            return 0;
+        }
+        // framework internals are not followed
+        return weighFields(value, clazz, isFramework(clazz) ? MAX_DEPTH : depth, visited);
+    }
+
+    private long weighArray(Object array, Class<?> componentType, int depth, IdentityHashMap<Object, Boolean> visited) {
+        int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return align(ARRAY_HEADER + (long) length * primitiveSize(componentType));
+        }
+        long size = align(ARRAY_HEADER + (long) REFERENCE * length);
+        List<Object> elements = new ArrayList<>(Math.min(length, MAX_SAMPLES));
+        for (int i = 0; i < length && elements.size() < MAX_SAMPLES; i++) {
+            elements.add(Array.get(array, i));
+        }
+        return size + weighSampled(elements.iterator(), length, depth, visited);
+    }
+
+    /**
+     * Weigh the first elements and extrapolate to count
+     */
+    private long weighSampled(Iterator<?> elements, int count, int depth, IdentityHashMap<Object, Boolean> visited) {
+        long size = 0;
+        int sampled = 0;
+        while (sampled < MAX_SAMPLES && elements.hasNext()) {
+            size += weigh(elements.next(), depth + 1, visited);
+            sampled++;
+        }
+        return sampled == 0 || sampled >= count ? size : size * count / sampled;
+    }
+
+    private long weighFields(Object value, Class<?> clazz, int depth, IdentityHashMap<Object, Boolean> visited) {
+        long size = OBJECT_HEADER;
+        long references = 0;
+        for (Field field : fieldsOf(clazz)) {
+            Class<?> type = field.getType();
+            if (type.isPrimitive()) {
+                size += primitiveSize(type);
+                continue;
+            }
+            size += REFERENCE;
+            try {
+                references += weigh(field.get(value), depth + 1, visited);
+            } catch (Exception ignore) {
+
+            }
+        }
+        return align(size) + references;
+    }
+
+    private boolean isFramework(Class<?> clazz) {
+        Boolean framework = frameworkClasses.get(clazz);
+        if (framework == null) {
+            framework = false;
+            String name = clazz.getName();
+            for (String frameworkPackage : FRAMEWORK_PACKAGES) {
+                if (name.startsWith(frameworkPackage)) {
+                    framework = true;
+                    break;
+                }
+            }
+            frameworkClasses.put(clazz, framework);
+        }
+        return framework;
+    }
+
+    private Field[] fieldsOf(Class<?> clazz) {
+        Field[] classFields = fields.get(clazz);
+        if (classFields == null) {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        list.add(field);
+                    } catch (Exception ignore) {
+
+                    }
+                }
+            }
+            classFields = list.toArray(new Field[0]);
+            fields.put(clazz, classFields);
+        }
+        return classFields;
+    }
+
+    @Nullable
+    private MemoryWeigher<?> weigherOf(Class<?> clazz) {
+        if (weighers.isEmpty()) {
+            return null;
+        }
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            MemoryWeigher<?> weigher = weighers.get(current);
+            if (weigher != null) {
+                return weigher;
+            }
+        }
+        return null;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
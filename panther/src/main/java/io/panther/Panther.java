@@ -19,19 +19,42 @@ package io.panther;
 import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.support.v4.util.ArrayMap;
+import android.support.v4.util.Pair;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import com.snappydb.DB;
+import com.snappydb.KeyIterator;
+
+import io.panther.codec.GsonCodec;
+import io.panther.codec.PantherCodec;
+import io.panther.compress.Compression;
 import io.panther.util.GZIPUtil;
 import io.panther.util.JSONUtil;
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
-import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.functions.Function;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.BiConsumer;
 
 /**
  * TODO Challenge of Multi Process
@@ -42,39 +65,237 @@ import io.reactivex.schedulers.Schedulers;
 public final class Panther {
     static final String PANTHER_MODULE_NAME = "io.panther.PantherModule";
 
-    static final int DEFAULT_MEMORY_CACHE_SIZE = 128;
-
-    private static final String KEY = "key";
-    private static final String DATA = "data";
-    private static final String DATA_CLASS = "dataClass";
+    // memory cache budget, fraction of the app memory class
+    static final float DEFAULT_MEMORY_CACHE_FRACTION = 1 / 16F;
+    // memory cache budget when the memory class is unknown
+    static final int DEFAULT_MEMORY_CACHE_SIZE = 4 * 1024 * 1024;
 
-    private static final int GZIP_TRIGGER_LENGTH = 1024;
+    // keys used by Panther itself, hidden from prefix queries
+    static final String INTERNAL_KEY_PREFIX = "__panther__:";
+    private static final String BATCH_JOURNAL_KEY = INTERNAL_KEY_PREFIX + "batch_journal";
+    // result of reading a missing key, misses do not build exceptions
+    private static final Object MISSING = new Object();
+    // min values decoded by one thread of bulk reads
+    private static final int MIN_PARALLEL_CHUNK = 16;
+    // hot keys prefetched in one pass
+    private static final int WARM_UP_CHUNK = 16;
 
     private static volatile Panther panther;
+    // background init started by initAsync, null if not requested
+    private static FutureTask<Panther> initTask;
 
     @NonNull
     private PantherConfiguration configuration;
+    @NonNull
+    private final PantherLogger logger;
 
     // database
-    private final PantherDatabase database = new PantherDatabase();
+    private final PantherDatabase database;
     // memory cache
     private final PantherMemoryCache memoryCache;
+    // value codecs
+    private final CodecRegistry codecs;
+    // compression decisions
+    private final CompressionPolicy compressionPolicy;
+    // trained dictionaries
+    private final DictionaryManager dictionaries;
+    // write behind queue, null if disabled
+    @Nullable
+    private final WriteBehindQueue writeBehind;
+    // record expiry
+    private final ExpiryManager expiry;
+    // byte-bounded cache namespaces
+    private final CacheManager caches;
+    // bloom filter of stored keys
+    private final KeyFilter keyFilter;
+    // access profile of read cached keys, null if warm-up is off
+    @Nullable
+    private final HotKeyProfile profile;
+    private volatile long warmUpMillis;
+    // released when the first open finished, database operations wait for it
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final AtomicBoolean started = new AtomicBoolean();
+    // thread running the first open, it must not wait for itself
+    @Nullable
+    private volatile Thread openingThread;
+    // milliseconds of init phases in order, guarded by itself
+    private final LinkedHashMap<String, Long> initPhases = new LinkedHashMap<>();
+    // lanes of async APIs
+    private final PantherSchedulers schedulers;
+    // decoded values of hot keys, null if disabled
+    @Nullable
+    private final ReadCache readCache;
+    // stored records in off-heap slabs, null if disabled
+    @Nullable
+    private final SlabCache slabCache;
 
-    private Panther(PantherConfiguration configuration) {
+    private Panther(PantherConfiguration configuration, long configurationMillis, boolean deferOpen) {
+        this(configuration, new PantherDatabase(), configurationMillis, deferOpen);
+    }
+
+    /**
+     * Panther over the given database, for tests on in-memory databases
+     */
+    Panther(PantherConfiguration configuration, PantherDatabase database, long configurationMillis, boolean deferOpen) {
+        long setupStart = System.currentTimeMillis();
+        initPhases.put("configuration", configurationMillis);
         this.configuration = configuration;
+        this.logger = new PantherLogger(configuration.logLevel, configuration.logValueMaxLength);
 
         // configuration
-        log("\n========== Panther configuration =========="
-                + "\nDatabase folder: " + configuration.databaseFolder.getPath()
-                + "\nDatabase name: " + configuration.databaseName
-                + "\nMemory cache size: " + configuration.memoryCacheSize
-                + "\n===========================================");
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("\n========== Panther configuration =========="
+                    + "\nDatabase folder: " + configuration.databaseFolder.getPath()
+                    + "\nDatabase name: " + configuration.databaseName
+                    + "\nMemory cache size: " + configuration.memoryCacheBytes + " bytes"
+                    + "\nWrite behind: " + configuration.writeBehindEnabled
+                    + "\nCompression: " + configuration.compression
+                    + "\nRead cache: " + configuration.readCachePrefixes
+                    + "\nOff-heap cache size: " + configuration.offHeapCacheSize + " bytes"
+                    + "\n===========================================");
+        }
 
+        // database
+        this.database = database;
+        // async lanes and background work
+        schedulers = new PantherSchedulers(configuration.readThreads, configuration.writeThreads,
+                configuration.deliveryScheduler);
         // memory cache
-        memoryCache = new PantherMemoryCache(configuration.memoryCacheSize);
+        memoryCache = new PantherMemoryCache(configuration.memoryCacheBytes,
+                new ObjectSizeEstimator(configuration.memoryWeighers));
+        // codecs
+        codecs = new CodecRegistry(configuration.codec, configuration.classCodecs);
+        // compression
+        compressionPolicy = new CompressionPolicy(configuration.compression, configuration.compressionThreshold,
+                configuration.compressionMinSaving, configuration.prefixCompressions);
+        dictionaries = new DictionaryManager(internalStorage, configuration.dictionaryPrefixes, schedulers.background);
+        // write behind
+        if (configuration.writeBehindEnabled) {
+            writeBehind = new WriteBehindQueue(writeBehindStore, configuration.writeBehindCapacity);
+        } else {
+            writeBehind = null;
+        }
+        // expiry
+        expiry = new ExpiryManager(database, configuration.prefixTtls, schedulers.background,
+                new ExpiryManager.Callback() {
+                    @Override
+                    public void onExpired(String key) {
+                        keyFilter.onDelete();
+                        invalidateReadCache(key);
+                        caches.onWrite(key, null);
+                    }
+                });
+        // cache namespaces
+        caches = new CacheManager(internalStorage, configuration.cacheBudgets, configuration.cachePolicies,
+                schedulers.background, new CacheManager.Callback() {
+                    @Override
+                    public void evict(List<String> keys) throws Exception {
+                        deleteChunk(keys, true);
+                    }
+                });
+        // key filter
+        keyFilter = new KeyFilter(new KeyFilter.Builder() {
+            @Override
+            public void rebuild() {
+                schedulers.background.scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        buildKeyFilter();
+                    }
+                });
+            }
+        });
+        // read cache
+        if (configuration.readCachePrefixes != null && !configuration.readCachePrefixes.isEmpty()) {
+            readCache = new ReadCache(configuration.readCachePrefixes, configuration.readCacheSize);
+        } else {
+            readCache = null;
+        }
+        // off-heap cache
+        slabCache = configuration.offHeapCacheSize > 0 ? new SlabCache(configuration.offHeapCacheSize) : null;
+        // hot key warm-up
+        profile = readCache != null && configuration.warmUpSize > 0
+                ? new HotKeyProfile(internalStorage, schedulers.background) : null;
 
-        // open database when PANTHER init
-        openDatabase();
+        initPhases.put("setup", System.currentTimeMillis() - setupStart);
+        // open database when PANTHER init, or later on the init thread
+        if (!deferOpen) {
+            start();
+        }
+    }
+
+    /**
+     * Open database and start background work, once
+     */
+    void start() {
+        if (!started.compareAndSet(false, true)) {
+            awaitReady();
+            return;
+        }
+        openingThread = Thread.currentThread();
+        try {
+            openDatabase();
+            if (profile != null) {
+                schedulers.background.scheduleDirect(new Runnable() {
+                    @Override
+                    public void run() {
+                        warmUp();
+                    }
+                });
+            }
+        } finally {
+            openingThread = null;
+            ready.countDown();
+        }
+        if (logger.isLoggable(Log.DEBUG)) {
+            synchronized (initPhases) {
+                logger.d("Panther ready, init phases in ms: {}", initPhases);
+            }
+        }
+    }
+
+    /**
+     * Block until the first open finished, database operations call it before touching database
+     */
+    private void awaitReady() {
+        if (ready.getCount() == 0 || Thread.currentThread() == openingThread) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                ready.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Record the time of an init phase during the first open
+     *
+     * @param phase phase
+     * @param start start of the phase
+     * @return now, start of the next phase
+     */
+    private long initPhase(String phase, long start) {
+        long now = System.currentTimeMillis();
+        if (ready.getCount() > 0) {
+            synchronized (initPhases) {
+                initPhases.put(phase, now - start);
+            }
+        }
+        return now;
+    }
+
+    private static Panther create(Context context, boolean deferOpen) {
+        long start = System.currentTimeMillis();
+        PantherConfiguration configuration = new ConfigurationParser(context).parse();
+        return new Panther(configuration, System.currentTimeMillis() - start, deferOpen);
     }
 
     /**
@@ -87,57 +308,146 @@ public final class Panther {
         if (panther == null) {
             synchronized (Panther.class) {
                 if (panther == null) {
-                    ConfigurationParser parser = new ConfigurationParser(context);
-                    panther = new Panther(parser.parse());
+                    // with async init the database keeps opening in background,
+                    // memory cache is usable at once, database operations wait for the open
+                    panther = create(context, initTask != null);
                 }
             }
         }
         return panther;
     }
 
+    /**
+     * Init PANTHER in background, call it as early as possible, e.g. in Application.onCreate.
+     * Configuration is parsed and database opened on the init thread, {@link #get(Context)} returns
+     * as soon as the instance is created, database operations before the open finished wait for it.
+     *
+     * @param context context
+     * @return future of the ready panther, done when database is open
+     */
+    public static Future<Panther> initAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        synchronized (Panther.class) {
+            if (initTask == null) {
+                initTask = new FutureTask<>(new Callable<Panther>() {
+                    @Override
+                    public Panther call() {
+                        Panther instance;
+                        synchronized (Panther.class) {
+                            if (panther == null) {
+                                panther = create(appContext, true);
+                            }
+                            instance = panther;
+                        }
+                        instance.start();
+                        return instance;
+                    }
+                });
+                Thread thread = new Thread(initTask, "Panther-Init");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            return initTask;
+        }
+    }
+
+    /**
+     * Whether database finished its first open, until then database operations block
+     *
+     * @return ready
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
     /**
      * Open database
      */
     private boolean openDatabase() {
-        boolean result;
-        synchronized (database) {
-            result = database.open(configuration.databaseFolder.getPath(), configuration.databaseName);
-        }
+        long phaseStart = System.currentTimeMillis();
+        boolean result = database.open(configuration.databaseFolder.getPath(), configuration.databaseName);
+        phaseStart = initPhase("open", phaseStart);
         if (result) {
-            log("Database " + configuration.databaseName + " open success");
+            logger.d("Database {} open success", configuration.databaseName);
+            recoverBatchJournal();
+            phaseStart = initPhase("recover", phaseStart);
+            expiry.load();
+            expiry.start();
+            phaseStart = initPhase("expiry", phaseStart);
+            loadCaches();
+            caches.start();
+            if (profile != null) {
+                profile.start();
+            }
+            initPhase("caches", phaseStart);
+            if (!keyFilter.isReady()) {
+                keyFilter.requestRebuild();
+            }
         } else {
-            logError("Database " + configuration.databaseName + " open failed",
-                    new RuntimeException("Database " + configuration.databaseName + " open failed"));
+            logger.e(null, "Database {} open failed", configuration.databaseName);
         }
         return result;
     }
 
     /**
-     * Close the database
+     * Close the database, periodic background work stops until it is opened again
      */
     public void closeDatabase() {
-        synchronized (database) {
-            boolean result = database.close();
-            if (result) {
-                log("Database " + configuration.databaseName + " close success");
-            } else {
-                logError(configuration.databaseName + "Database close failed",
-                        new RuntimeException("Database close failed"));
-            }
+        awaitReady();
+        expiry.stop();
+        caches.stop();
+        if (profile != null) {
+            profile.stop();
+        }
+        flush();
+        caches.checkpoint();
+        if (profile != null) {
+            profile.save();
+        }
+        boolean result = database.close();
+        if (result) {
+            logger.d("Database {} close success", configuration.databaseName);
+        } else {
+            logger.e(null, "Database {} close failed", configuration.databaseName);
         }
     }
 
     /**
-     * Whether database available
+     * Block until all queued async writes are committed, no-op without write behind mode
+     */
+    public void flush() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Statistics snapshot
      *
-     * @return available
+     * @return stats
      */
-    private boolean checkDatabaseAvailable() {
-        boolean result;
-        synchronized (database) {
-            result = database.isAvailable();
+    @NonNull
+    public PantherStats stats() {
+        PantherStats stats = new PantherStats();
+        compressionPolicy.fillStats(stats);
+        dictionaries.fillStats(stats);
+        expiry.fillStats(stats);
+        caches.fillStats(stats);
+        synchronized (initPhases) {
+            stats.initPhases.putAll(initPhases);
         }
-        return result;
+        stats.memoryCacheBytes = memoryCache.size();
+        stats.memoryCacheDeadEntries = memoryCache.deadCount();
+        stats.memoryCacheLiveEntries = memoryCache.liveCount();
+        stats.memoryCacheCollected = memoryCache.collectedCount();
+        stats.warmUpMillis = warmUpMillis;
+        if (readCache != null) {
+            readCache.fillStats(stats);
+        }
+        if (slabCache != null) {
+            slabCache.fillStats(stats);
+        }
+        return stats;
     }
 
     /**
@@ -149,7 +459,8 @@ public final class Panther {
         if (TextUtils.isEmpty(key)) {
             throw new IllegalArgumentException("KEY or PREFIX can not be null !");
         }
-        if (!checkDatabaseAvailable()) {
+        awaitReady();
+        if (!database.isAvailable()) {
             boolean openResult = openDatabase();
             if (!openResult)
                 throw new RuntimeException("Database open failed!");
@@ -166,58 +477,598 @@ public final class Panther {
      * @return result
      */
     public boolean writeInDatabase(String key, Object data) {
-        String dataJson;
+        return writeInDatabase(key, data, 0);
+    }
+
+    /**
+     * Save in database synchronously with a time to live, the value reads as missing after it expires
+     *
+     * @param key  key
+     * @param data data
+     * @param ttl  ttl in millis, 0 for the default ttl of the key prefix
+     * @return result
+     */
+    public boolean writeInDatabase(String key, Object data, long ttl) {
+        long traceStart = logger.traceStart();
         try {
             // pre check
             databaseOperationPreCheck(key);
             // data null --> delete
-            if (data == null) {
+            if (data == null || (data instanceof String && TextUtils.isEmpty((String) data))) {
                 deleteFromDatabase(key);
                 return true;
             }
-            // to Json string
-            if (data instanceof String) {
-                dataJson = (String) data;
-                if (TextUtils.isEmpty(dataJson)) {
-                    deleteFromDatabase(key);
-                    return true;
-                }
-            } else {
-                dataJson = JSONUtil.toJSONString(data);
-            }
-            // gzip
-            if (TextUtils.isEmpty(dataJson)) {
-                throw new RuntimeException("Save data parse failed!");
-            }
-            // start
-            DataBundle dataBundle = new DataBundle();
-            dataBundle.key = key;
-            dataBundle.dataJson = dataJson;
-            dataBundle.gzip = false;
-            if (dataJson != null && dataJson.length() >= GZIP_TRIGGER_LENGTH) {
-                String dataJsonGzip = GZIPUtil.compress(dataJson);
-                if (!TextUtils.isEmpty(dataJson)) {
-                    dataBundle.dataJson = dataJsonGzip;
-                    dataBundle.gzip = true;
-                }
-            }
-            dataBundle.time = System.currentTimeMillis();
-            String dataBundleJson = JSONUtil.toJSONString(dataBundle);
-            if (dataBundleJson == null) {
-                throw new RuntimeException("Save data parse failed!");
-            }
-            // compress
-            synchronized (database) {
-                database.get().put(key, dataBundleJson);
-                log("{ key = " + key + " value = " + dataJson + " } saved in database finished");
+            putRecord(key, encodeRecord(key, data, ttl));
+            logger.d("{ key = {} value = {} } saved in database finished", key, data);
+            logger.trace("Write", key, traceStart);
+        } catch (Exception e) {
+            logger.e(e, "{ key = {} value = {} } save in database failed", key, data);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Save int in database synchronously, stored as a fixed width binary value without boxing
+     *
+     * @param key   key
+     * @param value value
+     * @return result
+     */
+    public boolean writeIntInDatabase(String key, int value) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_INT, value, 0);
+    }
+
+    /**
+     * Save int in database synchronously with a time to live
+     *
+     * @param key   key
+     * @param value value
+     * @param ttl   ttl in millis, 0 for the default ttl of the key prefix
+     * @return result
+     */
+    public boolean writeIntInDatabase(String key, int value, long ttl) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_INT, value, ttl);
+    }
+
+    /**
+     * Save long in database synchronously, stored as a fixed width binary value without boxing
+     *
+     * @param key   key
+     * @param value value
+     * @return result
+     */
+    public boolean writeLongInDatabase(String key, long value) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_LONG, value, 0);
+    }
+
+    /**
+     * Save long in database synchronously with a time to live
+     *
+     * @param key   key
+     * @param value value
+     * @param ttl   ttl in millis, 0 for the default ttl of the key prefix
+     * @return result
+     */
+    public boolean writeLongInDatabase(String key, long value, long ttl) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_LONG, value, ttl);
+    }
+
+    /**
+     * Save double in database synchronously, stored as a fixed width binary value without boxing
+     *
+     * @param key   key
+     * @param value value
+     * @return result
+     */
+    public boolean writeDoubleInDatabase(String key, double value) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_DOUBLE, Double.doubleToRawLongBits(value), 0);
+    }
+
+    /**
+     * Save double in database synchronously with a time to live
+     *
+     * @param key   key
+     * @param value value
+     * @param ttl   ttl in millis, 0 for the default ttl of the key prefix
+     * @return result
+     */
+    public boolean writeDoubleInDatabase(String key, double value, long ttl) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_DOUBLE, Double.doubleToRawLongBits(value), ttl);
+    }
+
+    /**
+     * Save boolean in database synchronously, stored as a fixed width binary value without boxing
+     *
+     * @param key   key
+     * @param value value
+     * @return result
+     */
+    public boolean writeBooleanInDatabase(String key, boolean value) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_BOOLEAN, value ? 1 : 0, 0);
+    }
+
+    /**
+     * Save boolean in database synchronously with a time to live
+     *
+     * @param key   key
+     * @param value value
+     * @param ttl   ttl in millis, 0 for the default ttl of the key prefix
+     * @return result
+     */
+    public boolean writeBooleanInDatabase(String key, boolean value, long ttl) {
+        return writePrimitive(key, DataEnvelope.PRIMITIVE_BOOLEAN, value ? 1 : 0, ttl);
+    }
+
+    private boolean writePrimitive(String key, int type, long bits, long ttl) {
+        long traceStart = logger.traceStart();
+        try {
+            databaseOperationPreCheck(key);
+            putRecord(key, DataEnvelope.encodePrimitive(type, bits, System.currentTimeMillis(),
+                    expiry.expiresAt(key, ttl)));
+            if (logger.isLoggable(Log.DEBUG)) {
+                logger.d("{ key = {} value = {} } saved in database finished", key, bits);
             }
+            logger.trace("Write", key, traceStart);
         } catch (Exception e) {
-            logError("{ key = " + key + " value = " + String.valueOf(data) + " } save in database failed", e);
+            logger.e(e, "{ key = {} } save in database failed", key);
             return false;
         }
         return true;
     }
 
+    /**
+     * Put an encoded record, replacing the queued write of key
+     *
+     * @param key    key
+     * @param record record
+     */
+    private void putRecord(String key, byte[] record) throws Exception {
+        keyFilter.add(key);
+        database.beginWrite();
+        try {
+            if (writeBehind != null) {
+                writeBehind.discard(key);
+            }
+            database.get().put(key, record);
+            trackRecord(key, record);
+        } finally {
+            database.endWrite();
+        }
+        invalidateReadCache(key);
+    }
+
+    /**
+     * Encode data into a binary record
+     *
+     * @param key  key
+     * @param data data, not null
+     * @param ttl  ttl in millis, 0 for the default ttl of the key prefix
+     * @return record
+     */
+    @NonNull
+    private byte[] encodeRecord(String key, @NonNull Object data, long ttl) throws Exception {
+        int primitiveType = DataEnvelope.primitiveTypeOf(data);
+        if (primitiveType != 0) {
+            return DataEnvelope.encodePrimitive(primitiveType, DataEnvelope.primitiveBits(data),
+                    System.currentTimeMillis(), expiry.expiresAt(key, ttl));
+        }
+        int codec;
+        byte[] payload;
+        if (data instanceof String) {
+            codec = DataEnvelope.CODEC_STRING;
+            payload = ((String) data).getBytes(DataEnvelope.UTF_8);
+        } else {
+            PantherCodec dataCodec = codecs.codecFor(data);
+            codec = dataCodec.id();
+            payload = dataCodec.encode(data);
+        }
+        if (payload.length == 0) {
+            throw new RuntimeException("Save data parse failed!");
+        }
+        int flags = Compression.NONE.id;
+        int dictionaryId = 0;
+        // small similar values compress with a trained dictionary
+        DictionaryManager.PrefixDictionary dictionaryPrefix = dictionaries.isEmpty() ? null : dictionaries.prefixOf(key);
+        if (dictionaryPrefix != null) {
+            dictionaryId = dictionaryPrefix.sample(payload);
+        }
+        if (dictionaryId != 0) {
+            byte[] compressed = Compression.DEFLATE.compress(payload, 0, payload.length,
+                    dictionaries.dictionary(dictionaryId));
+            if (compressed.length < payload.length) {
+                dictionaryPrefix.report(payload.length, compressed.length);
+                payload = compressed;
+                flags = Compression.DEFLATE.id | DataEnvelope.FLAG_DICTIONARY;
+            } else {
+                dictionaryPrefix.report(payload.length, payload.length);
+                dictionaryId = 0;
+            }
+        } else {
+            // compress, keep it only when it saves enough
+            Compression compression = compressionPolicy.choose(key, payload.length);
+            if (compression != Compression.NONE) {
+                byte[] compressed = compression.compress(payload, 0, payload.length);
+                if (compressionPolicy.accept(key, payload.length, compressed.length)) {
+                    payload = compressed;
+                    flags = compression.id;
+                }
+            }
+        }
+        return DataEnvelope.encode(flags, codec, System.currentTimeMillis(), dictionaryId,
+                expiry.expiresAt(key, ttl), payload);
+    }
+
+    /**
+     * Read the record of key from database, legacy DataBundle records will be converted
+     *
+     * @param key key
+     * @return envelope, null if key is missing
+     */
+    @Nullable
+    private DataEnvelope readRecord(String key) throws Exception {
+        // queued writes are newer than database
+        if (writeBehind != null) {
+            WriteBehindQueue.PendingWrite pendingWrite = writeBehind.get(key);
+            if (pendingWrite != null) {
+                byte[] pendingRecord = pendingWrite.record();
+                return pendingRecord != null ? DataEnvelope.decode(pendingRecord) : null;
+            }
+        }
+        // misses return here without touching database
+        if (!keyFilter.mightContain(key)) {
+            return null;
+        }
+        long slabStamp = 0;
+        if (slabCache != null) {
+            byte[] cachedRecord = slabCache.get(key);
+            if (cachedRecord != null) {
+                return DataEnvelope.decode(cachedRecord);
+            }
+            slabStamp = slabCache.stamp();
+        }
+        byte[] record;
+        database.beginRead();
+        try {
+            // the filter is not ready or gave a false positive, misses do not throw either
+            record = database.find(key);
+        } finally {
+            database.endRead();
+        }
+        if (record == null) {
+            return null;
+        }
+        if (DataEnvelope.isEnvelope(record)) {
+            if (slabCache != null) {
+                slabCache.put(slabStamp, key, record);
+            }
+            return DataEnvelope.decode(record);
+        }
+        // legacy DataBundle json written as string
+        return legacyRecord(key, PantherDatabase.decodeString(record));
+    }
+
+    /**
+     * Convert a legacy DataBundle record
+     *
+     * @param key            key
+     * @param dataBundleJson record read as string
+     * @return envelope
+     */
+    @NonNull
+    private DataEnvelope legacyRecord(String key, String dataBundleJson) throws Exception {
+        DataBundle dataBundle = JSONUtil.parseObject(dataBundleJson, DataBundle.class);
+        if (dataBundle == null || dataBundle.dataJson == null) {
+            throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
+        }
+        String dataJson = dataBundle.dataJson;
+        if (dataBundle.gzip) {
+            dataJson = GZIPUtil.decompress(dataBundle.dataJson);
+            if (dataJson == null) {
+                throw new RuntimeException("Read { key = " + key + " } from database failed, GZIP failed");
+            }
+        }
+        return DataEnvelope.fromLegacy(dataBundle, dataJson);
+    }
+
+    /**
+     * Decompress the payload of record in place
+     *
+     * @param key      key
+     * @param envelope record
+     */
+    private void decompressRecord(String key, DataEnvelope envelope) throws Exception {
+        Compression compression = Compression.of(envelope.compression());
+        if (compression == Compression.NONE) {
+            return;
+        }
+        if (compression == null) {
+            throw new RuntimeException("Read { key = " + key + " } from database failed, unknown compression");
+        }
+        byte[] payload;
+        if ((envelope.flags & DataEnvelope.FLAG_DICTIONARY) != 0) {
+            payload = compression.decompress(envelope.buffer, envelope.payloadOffset, envelope.payloadLength,
+                    dictionaries.dictionary(envelope.dictionaryId));
+        } else {
+            payload = compression.decompress(envelope.buffer, envelope.payloadOffset, envelope.payloadLength);
+        }
+        envelope.buffer = payload;
+        envelope.payloadOffset = 0;
+        envelope.payloadLength = payload.length;
+        envelope.flags &= ~(DataEnvelope.FLAG_COMPRESSION_MASK | DataEnvelope.FLAG_DICTIONARY);
+    }
+
+    /**
+     * Decode the value of record
+     *
+     * @param key       key
+     * @param envelope  record
+     * @param dataClass class of data, or class of list element
+     * @param list      decode as list
+     * @return data
+     */
+    @Nullable
+    private Object decodeRecord(String key, DataEnvelope envelope, Class<?> dataClass, boolean list) throws Exception {
+        if (envelope.codec == DataEnvelope.CODEC_PRIMITIVE) {
+            if (list) {
+                throw new RuntimeException("Read { key = " + key + " } from database failed, not a list");
+            }
+            return envelope.primitiveValue(dataClass);
+        }
+        decompressRecord(key, envelope);
+        byte[] buffer = envelope.buffer;
+        int offset = envelope.payloadOffset;
+        int length = envelope.payloadLength;
+        if (envelope.codec == DataEnvelope.CODEC_STRING) {
+            // raw text, string class reads it directly
+            String text = new String(buffer, offset, length, DataEnvelope.UTF_8);
+            if (list) {
+                return JSONUtil.parseList(text, dataClass);
+            }
+            return dataClass == String.class ? text : JSONUtil.parseObject(text, dataClass);
+        }
+        PantherCodec codec = codecs.codecOf(envelope.codec);
+        if (codec == null) {
+            throw new RuntimeException("Read { key = " + key + " } from database failed, unknown codec " + envelope.codec);
+        }
+        if (list) {
+            return codec.decodeList(buffer, offset, length, dataClass);
+        }
+        if (dataClass == String.class) {
+            // JSON records read as string give the stored text, binary records the JSON of value
+            if (codec instanceof GsonCodec) {
+                return new String(buffer, offset, length, DataEnvelope.UTF_8);
+            }
+            return JSONUtil.toJSONString(codec.decode(buffer, offset, length, Object.class));
+        }
+        return codec.decode(buffer, offset, length, dataClass);
+    }
+
+    /**
+     * Read and decode the value of key, through the read cache if the key is cached
+     *
+     * @param key       key
+     * @param dataClass class of data, or class of list element
+     * @param list      decode as list
+     * @return data, {@link #MISSING} if key is missing or expired
+     */
+    @Nullable
+    private Object readValue(String key, Class<?> dataClass, boolean list) throws Exception {
+        boolean cacheable = readCache != null && !TextUtils.isEmpty(key) && readCache.accepts(key);
+        long stamp = 0;
+        if (cacheable) {
+            if (profile != null) {
+                profile.onRead(key, dataClass, list);
+            }
+            Object data = readCache.get(key, dataClass, list);
+            if (data != null) {
+                caches.onRead(key);
+                return data;
+            }
+            stamp = readCache.stamp();
+        }
+        // pre check
+        databaseOperationPreCheck(key);
+        // read record
+        DataEnvelope envelope = readRecord(key);
+        if (envelope == null || envelope.isExpired(System.currentTimeMillis())) {
+            return MISSING;
+        }
+        Object data = decodeRecord(key, envelope, dataClass, list);
+        if (cacheable && data != null) {
+            readCache.put(stamp, key, dataClass, list, data, envelope.payloadLength, envelope.expiresAt);
+        }
+        caches.onRead(key);
+        return data;
+    }
+
+    /**
+     * Drop the cached value of key, call it after the new value is visible to readers
+     *
+     * @param key key
+     */
+    private void invalidateReadCache(String key) {
+        if (readCache != null) {
+            readCache.invalidate(key);
+        }
+        if (slabCache != null) {
+            slabCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Create an atomic multi-key write batch
+     *
+     * @return batch
+     */
+    public WriteBatch batch() {
+        return new WriteBatch(this);
+    }
+
+    /**
+     * Encode all values outside the lock, then apply the batch in one lock acquisition.
+     * A journal is written first so an interrupted batch is finished on next open.
+     *
+     * @param batch batch
+     * @return result
+     */
+    boolean commitBatch(WriteBatch batch) {
+        int size = batch.keys.size();
+        if (size == 0) {
+            return true;
+        }
+        try {
+            databaseOperationPreCheck(batch.keys.get(0));
+            List<byte[]> records = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Object data = batch.values.get(i);
+                records.add(data == null ? null : encodeRecord(batch.keys.get(i), data, 0));
+            }
+            byte[] journal = size > 1 ? WriteBatch.encodeJournal(batch.keys, records) : null;
+            // exclusive, readers see all the writes of batch or none of them
+            database.beginExclusive();
+            try {
+                if (journal != null) {
+                    database.get().put(BATCH_JOURNAL_KEY, journal);
+                }
+                applyBatch(batch.keys, records);
+                if (journal != null) {
+                    database.get().del(BATCH_JOURNAL_KEY);
+                }
+            } finally {
+                database.endExclusive();
+            }
+            if (logger.isLoggable(Log.DEBUG)) {
+                logger.d("Batch of {} writes committed in database", size);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.e(e, "Batch of {} writes commit failed", size);
+            return false;
+        }
+    }
+
+    /**
+     * Apply records, must be called inside the exclusive lock
+     *
+     * @param keys    keys
+     * @param records records, null for delete
+     */
+    private void applyBatch(List<String> keys, List<byte[]> records) throws Exception {
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            byte[] record = records.get(i);
+            if (writeBehind != null) {
+                writeBehind.discard(key);
+            }
+            if (record == null) {
+                database.get().del(key);
+            } else {
+                keyFilter.add(key);
+                database.get().put(key, record);
+            }
+            trackRecord(key, record);
+            invalidateReadCache(key);
+        }
+    }
+
+    /**
+     * Track the expiry and cache size of a written record, record null means delete.
+     * Call it under the writer lock, evictions confirm their victims there.
+     *
+     * @param key    key
+     * @param record record
+     */
+    private void trackRecord(String key, @Nullable byte[] record) throws Exception {
+        if (record != null) {
+            keyFilter.confirm(key);
+        } else {
+            keyFilter.onDelete();
+        }
+        expiry.track(key, record);
+        caches.onWrite(key, record);
+    }
+
+    /**
+     * Fill a new key filter with the keys of database, runs in background
+     */
+    private void buildKeyFilter() {
+        long start = System.currentTimeMillis();
+        try {
+            int expectedKeys;
+            database.beginRead();
+            try {
+                expectedKeys = database.countAllKeys();
+            } finally {
+                database.endRead();
+            }
+            KeyFilter.Filter filter = keyFilter.startBuild(expectedKeys);
+            database.beginRead();
+            try {
+                KeyIterator iterator = database.get().allKeysIterator();
+                try {
+                    while (iterator.hasNext()) {
+                        for (String key : iterator.next(PrefixCursor.DEFAULT_PAGE_SIZE)) {
+                            filter.add(key);
+                        }
+                    }
+                } finally {
+                    iterator.close();
+                }
+            } finally {
+                database.endRead();
+            }
+            keyFilter.finishBuild(filter);
+            logger.d("Key filter of {} keys built in {}ms", expectedKeys, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            keyFilter.abortBuild();
+            logger.e(e, "Build key filter failed");
+        }
+    }
+
+    /**
+     * Finish the batch interrupted by process death
+     */
+    private void recoverBatchJournal() {
+        try {
+            byte[] journal;
+            database.beginRead();
+            try {
+                journal = database.find(BATCH_JOURNAL_KEY);
+            } finally {
+                database.endRead();
+            }
+            if (journal == null) {
+                return;
+            }
+            List<String> keys = new ArrayList<>();
+            List<byte[]> records = new ArrayList<>();
+            try {
+                WriteBatch.decodeJournal(journal, keys, records);
+            } catch (IllegalArgumentException e) {
+                // nothing can be recovered from it, drop it instead of failing every open
+                logger.e(e, "Batch journal damaged, dropped");
+                database.beginWrite();
+                try {
+                    database.get().del(BATCH_JOURNAL_KEY);
+                } finally {
+                    database.endWrite();
+                }
+                return;
+            }
+            database.beginExclusive();
+            try {
+                applyBatch(keys, records);
+                database.get().del(BATCH_JOURNAL_KEY);
+            } finally {
+                database.endExclusive();
+            }
+            logger.d("Interrupted batch of {} writes recovered", keys.size());
+        } catch (Exception e) {
+            logger.e(e, "Recover batch journal failed");
+        }
+    }
+
     /**
      * Save in database asynchronously
      *
@@ -225,23 +1076,208 @@ public final class Panther {
      * @param data data
      */
     public Observable<Boolean> writeInDatabaseAsync(String key, Object data) {
-        ArrayMap<String, Object> bundle = new ArrayMap<>();
-        bundle.put(KEY, key);
-        bundle.put(DATA, data);
-        return Observable.just(bundle)
-                .map(new Function<ArrayMap<String, Object>, Boolean>() {
-                    @Override
-                    public Boolean apply(ArrayMap<String, Object> bundle) throws Exception {
-                        String key = (String) bundle.get(KEY);
-                        Object data = bundle.get(DATA);
-                        bundle.clear();
-                        return writeInDatabase(key, data);
-                    }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        return writeInDatabaseAsync(key, data, schedulers.delivery);
+    }
+
+    /**
+     * Save in database asynchronously, nothing is written until subscribed.
+     * With write behind the result fails with {@link java.util.concurrent.RejectedExecutionException}
+     * while the queue is full.
+     *
+     * @param key       key
+     * @param data      data
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the write thread
+     */
+    public Observable<Boolean> writeInDatabaseAsync(String key, Object data, @Nullable Scheduler deliverOn) {
+        if (writeBehind != null && !TextUtils.isEmpty(key)) {
+            if (data instanceof String && TextUtils.isEmpty((String) data)) {
+                data = null;
+            }
+            return deliver(enqueueWrite(key, data), deliverOn);
+        }
+        return async(new AsyncCall<Boolean>(AsyncCall.WRITE, key, data, null), schedulers.write, deliverOn);
+    }
+
+    /**
+     * Commit batch asynchronously
+     *
+     * @param batch     batch
+     * @param deliverOn scheduler to deliver the result on, null for no hop
+     */
+    Observable<Boolean> commitBatchAsync(WriteBatch batch, @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<Boolean>(AsyncCall.COMMIT_BATCH, null, batch, null), schedulers.write, deliverOn);
+    }
+
+    /**
+     * Default scheduler to deliver async results on, null for no hop
+     */
+    @Nullable
+    Scheduler deliveryScheduler() {
+        return schedulers.delivery;
+    }
+
+    /**
+     * Queue a write behind when subscribed, the caller is never blocked, while the queue is full
+     * the result fails with {@link java.util.concurrent.RejectedExecutionException}
+     *
+     * @param key  key
+     * @param data data, null means delete
+     * @return result of the write
+     */
+    private Observable<Boolean> enqueueWrite(final String key, @Nullable final Object data) {
+        return Observable.defer(new Callable<ObservableSource<Boolean>>() {
+            @Override
+            public ObservableSource<Boolean> call() {
+                Observable<Boolean> result = writeBehind.enqueue(key, data);
+                invalidateReadCache(key);
+                return result;
+            }
+        });
+    }
+
+    private <T> Observable<T> async(AsyncCall<T> call, PantherSchedulers.Lane lane, @Nullable Scheduler deliverOn) {
+        return deliver(lane.call(call), deliverOn);
+    }
+
+    private static <T> Observable<T> deliver(Observable<T> result, @Nullable Scheduler deliverOn) {
+        return deliverOn != null ? result.observeOn(deliverOn) : result;
+    }
+
+    /**
+     * Database call of the async APIs, carries the arguments of the call in one object
+     */
+    private final class AsyncCall<T> implements Callable<T> {
+        static final int WRITE = 0;
+        static final int READ = 1;
+        static final int READ_LIST = 2;
+        static final int DELETE = 3;
+        static final int MASS_DELETE = 4;
+        static final int MASS_DELETE_BY_PREFIX = 5;
+        static final int FIND_KEYS = 6;
+        static final int COMMIT_BATCH = 7;
+        static final int READ_MANY = 8;
+
+        private final int operation;
+        private final String key;
+        private final Object data;
+        private final Class<?> dataClass;
+
+        AsyncCall(int operation, String key, Object data, Class<?> dataClass) {
+            this.operation = operation;
+            this.key = key;
+            this.data = data;
+            this.dataClass = dataClass;
+        }
+
+        @Override
+        public T call() throws Exception {
+            Object result;
+            switch (operation) {
+                case WRITE:
+                    result = writeInDatabase(key, data);
+                    break;
+                case READ:
+                    result = readFromDatabase(key, dataClass);
+                    break;
+                case READ_LIST:
+                    result = readListFromDatabase(key, dataClass);
+                    break;
+                case DELETE:
+                    result = deleteFromDatabase(key);
+                    break;
+                case MASS_DELETE:
+                    result = data != null && deleteKeys((List<String>) data);
+                    break;
+                case MASS_DELETE_BY_PREFIX:
+                    result = deleteByPrefix(key) >= 0;
+                    break;
+                case FIND_KEYS:
+                    result = findKeysByPrefix(key);
+                    break;
+                case COMMIT_BATCH:
+                    result = ((WriteBatch) data).commit();
+                    break;
+                case READ_MANY:
+                    result = readMany((Collection<String>) data, dataClass);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+            return (T) result;
+        }
     }
 
+    private final WriteBehindQueue.Store writeBehindStore = new WriteBehindQueue.Store() {
+        @NonNull
+        @Override
+        public byte[] encode(String key, @NonNull Object data) throws Exception {
+            return encodeRecord(key, data, 0);
+        }
+
+        @Override
+        public void beginCommit() throws Exception {
+            awaitReady();
+            // open outside the lock, opening needs the exclusive lock
+            if (!database.isAvailable() && !openDatabase()) {
+                throw new RuntimeException("Database open failed!");
+            }
+            database.beginWrite();
+        }
+
+        @Override
+        public void endCommit() {
+            database.endWrite();
+        }
+
+        @Override
+        public void write(String key, @Nullable byte[] record) throws Exception {
+            if (record == null) {
+                database.get().del(key);
+            } else {
+                keyFilter.add(key);
+                database.get().put(key, record);
+            }
+            trackRecord(key, record);
+        }
+
+        @Override
+        public void onBatchCommitted(int size, long costMillis) {
+            if (logger.isLoggable(Log.DEBUG)) {
+                logger.d("{} writes committed in database in {}ms", size, costMillis);
+            }
+        }
+
+        @Override
+        public void onWriteFailed(String key, Throwable error) {
+            logger.e(error, "{ key = {} } write behind failed", key);
+        }
+    };
+
+    // internal records of dictionaries and cache namespaces
+    private final DictionaryManager.Storage internalStorage = new DictionaryManager.Storage() {
+        @Nullable
+        @Override
+        public byte[] read(String key) throws Exception {
+            databaseOperationPreCheck(key);
+            database.beginRead();
+            try {
+                return database.find(key);
+            } finally {
+                database.endRead();
+            }
+        }
+
+        @Override
+        public void write(String key, byte[] value) throws Exception {
+            databaseOperationPreCheck(key);
+            database.beginWrite();
+            try {
+                database.get().put(key, value);
+            } finally {
+                database.endWrite();
+            }
+        }
+    };
 
     /**
      * Read from database synchronously, core method.
@@ -254,138 +1290,397 @@ public final class Panther {
      */
     @Nullable
     public <T> T readFromDatabase(String key, Class<T> dataClass) {
+        long traceStart = logger.traceStart();
         T data = null;
         try {
-            // pre check
-            databaseOperationPreCheck(key);
-            // read data bundle json
-            String dataBundleJson;
-            synchronized (database) {
-                dataBundleJson = database.get().get(key);
-            }
-            if (dataBundleJson == null) {
-                throw new RuntimeException("Read { key = " + key + " } from database failed, no data");
+            Object value = readValue(key, dataClass, false);
+            if (value == MISSING) {
+                logger.d("Read { key = {} } from database, not found", key);
+                return null;
             }
-            DataBundle dataBundle = JSONUtil.parseObject(dataBundleJson, DataBundle.class);
-            if (dataBundle == null) {
+            data = (T) value;
+            if (data != null) {
+                logger.d("Read { key = {} value = {} } read from database finished", key, data);
+                logger.trace("Read", key, traceStart);
+            } else {
                 throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
             }
-            String dataJson = dataBundle.dataJson;
-            if (dataBundle.gzip) {
-                dataJson = GZIPUtil.decompress(dataBundle.dataJson);
-                if (dataJson == null) {
-                    throw new RuntimeException("Read { key = " + key + " } from database failed, GZIP failed");
-                }
-            }
-            if (dataClass == String.class) {
-                data = (T) dataJson;
-            } else {
-                data = JSONUtil.parseObject(dataJson, dataClass);
+        } catch (Exception e) {
+            logger.e(e, "Read { key = {} } from database failed", key);
+        }
+        return data;
+    }
+
+    /**
+     * Read data from database asynchronously
+     *
+     * @param key       key
+     * @param dataClass class of data
+     */
+    public <T> Observable<T> readFromDatabaseAsync(String key, Class<T> dataClass) {
+        return readFromDatabaseAsync(key, dataClass, schedulers.delivery);
+    }
+
+    /**
+     * Read data from database asynchronously
+     *
+     * @param key       key
+     * @param dataClass class of data
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the read thread
+     */
+    public <T> Observable<T> readFromDatabaseAsync(String key, Class<T> dataClass, @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<T>(AsyncCall.READ, key, null, dataClass), schedulers.read, deliverOn);
+    }
+
+    /**
+     * Read array data from database synchronously, database method.
+     * Not recommended to call for read large data in the main thread.
+     * Read large data use {@link #readListFromDatabaseAsync(String, Class)}
+     *
+     * @param key       key
+     * @param dataClass class of data
+     * @return array data
+     */
+    @Nullable
+    public <T> List<T> readListFromDatabase(String key, Class<T> dataClass) {
+        long traceStart = logger.traceStart();
+        List<T> data = null;
+        try {
+            Object value = readValue(key, dataClass, true);
+            if (value == MISSING) {
+                logger.d("Read { key = {} } from database, not found", key);
+                return null;
             }
+            data = (List<T>) value;
             if (data != null) {
-                log("Read { key = " + key + " value = " + dataJson + " } read from database finished");
+                logger.d("Read { key = {} value = {} } read from database finished", key, data);
+                logger.trace("Read", key, traceStart);
             } else {
                 throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
             }
         } catch (Exception e) {
-            logError("Read { key = " + key + " } from database failed", e);
+            logger.e(e, "Read { key = {} } from database failed", key);
         }
         return data;
     }
 
     /**
-     * Read data from database asynchronously
+     * Read list data from database asynchronously
      *
      * @param key       key
      * @param dataClass class of data
      */
-    public <T> Observable<T> readFromDatabaseAsync(String key, Class<T> dataClass) {
-        ArrayMap<String, Object> bundle = new ArrayMap<>();
-        bundle.put(KEY, key);
-        bundle.put(DATA_CLASS, dataClass);
-        return Observable.just(bundle)
-                .map(new Function<ArrayMap<String, Object>, T>() {
-                    @Override
-                    public T apply(ArrayMap<String, Object> bundle) throws Exception {
-                        String key = (String) bundle.get(KEY);
-                        Class<T> dataClass = (Class<T>) bundle.get(DATA_CLASS);
-                        return readFromDatabase(key, dataClass);
+    public <T> Observable<List<T>> readListFromDatabaseAsync(String key, Class<T> dataClass) {
+        return readListFromDatabaseAsync(key, dataClass, schedulers.delivery);
+    }
+
+    /**
+     * Read list data from database asynchronously
+     *
+     * @param key       key
+     * @param dataClass class of data
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the read thread
+     */
+    public <T> Observable<List<T>> readListFromDatabaseAsync(String key, Class<T> dataClass,
+                                                             @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<List<T>>(AsyncCall.READ_LIST, key, null, dataClass), schedulers.read, deliverOn);
+    }
+
+
+    /**
+     * Read values of keys synchronously.
+     * Records are fetched in one pass under one lock, then decoded in parallel.
+     *
+     * @param keys      keys
+     * @param dataClass class of data
+     * @return values by key in order of keys, keys without value are absent
+     */
+    @NonNull
+    public <T> Map<String, T> readMany(Collection<String> keys, Class<T> dataClass) {
+        return readMany(keys, dataClass, null);
+    }
+
+    /**
+     * Read values of keys synchronously.
+     * Records are fetched in one pass under one lock, then decoded in parallel.
+     *
+     * @param keys        keys
+     * @param dataClass   class of data
+     * @param missingKeys out, keys without value or failed to decode
+     * @return values by key in order of keys, keys without value are absent
+     */
+    @NonNull
+    public <T> Map<String, T> readMany(Collection<String> keys, final Class<T> dataClass,
+                                       @Nullable Collection<String> missingKeys) {
+        long traceStart = logger.traceStart();
+        Map<String, T> result = new LinkedHashMap<>();
+        if (keys == null || keys.isEmpty()) {
+            return result;
+        }
+        final Map<String, Object> values = new HashMap<>();
+        final List<String> readKeys = new ArrayList<>(keys.size());
+        // envelope bytes, or legacy records as string
+        final List<Object> records = new ArrayList<>(keys.size());
+        final long stamp = readCache != null ? readCache.stamp() : 0;
+        try {
+            // read cache and queued writes first
+            List<String> storedKeys = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                if (TextUtils.isEmpty(key) || values.containsKey(key)) {
+                    continue;
+                }
+                if (readCache != null && readCache.accepts(key)) {
+                    if (profile != null) {
+                        profile.onRead(key, dataClass, false);
+                    }
+                    Object data = readCache.get(key, dataClass, false);
+                    if (data != null) {
+                        values.put(key, data);
+                        continue;
+                    }
+                }
+                WriteBehindQueue.PendingWrite pendingWrite = writeBehind != null ? writeBehind.get(key) : null;
+                if (pendingWrite == null) {
+                    byte[] cachedRecord = slabCache != null ? slabCache.get(key) : null;
+                    if (cachedRecord != null) {
+                        readKeys.add(key);
+                        records.add(cachedRecord);
+                    } else {
+                        storedKeys.add(key);
+                    }
+                    continue;
+                }
+                try {
+                    byte[] record = pendingWrite.record();
+                    if (record != null) {
+                        readKeys.add(key);
+                        records.add(record);
+                    }
+                } catch (Exception e) {
+                    logger.e(e, "Read { key = {} } from database failed", key);
+                }
+            }
+            if (!storedKeys.isEmpty()) {
+                databaseOperationPreCheck(storedKeys.get(0));
+                long slabStamp = slabCache != null ? slabCache.stamp() : 0;
+                int fetchedFrom = readKeys.size();
+                fetchRecords(storedKeys, readKeys, records);
+                for (int i = fetchedFrom; slabCache != null && i < readKeys.size(); i++) {
+                    if (records.get(i) instanceof byte[]) {
+                        slabCache.put(slabStamp, readKeys.get(i), (byte[]) records.get(i));
+                    }
+                }
+            }
+            // decode in parallel
+            final long now = System.currentTimeMillis();
+            final Object[] decoded = new Object[readKeys.size()];
+            forEachChunk(readKeys.size(), new ChunkTask() {
+                @Override
+                public void run(int from, int to) {
+                    for (int i = from; i < to; i++) {
+                        String key = readKeys.get(i);
+                        try {
+                            Object record = records.get(i);
+                            DataEnvelope envelope = record instanceof String
+                                    ? legacyRecord(key, (String) record) : DataEnvelope.decode((byte[]) record);
+                            if (envelope.isExpired(now)) {
+                                continue;
+                            }
+                            decoded[i] = decodeRecord(key, envelope, dataClass, false);
+                            if (decoded[i] != null && readCache != null && readCache.accepts(key)) {
+                                readCache.put(stamp, key, dataClass, false, decoded[i], envelope.payloadLength,
+                                        envelope.expiresAt);
+                            }
+                        } catch (Exception e) {
+                            logger.e(e, "Read { key = {} } from database failed", key);
+                        }
                     }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+                }
+            });
+            for (int i = 0; i < decoded.length; i++) {
+                if (decoded[i] != null) {
+                    values.put(readKeys.get(i), decoded[i]);
+                }
+            }
+        } catch (Exception e) {
+            logger.e(e, "Read {} keys from database failed", keys.size());
+        }
+        for (String key : keys) {
+            Object data = values.get(key);
+            if (data != null) {
+                result.put(key, (T) data);
+                caches.onRead(key);
+            } else if (missingKeys != null) {
+                missingKeys.add(key);
+            }
+        }
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("Read {} of {} keys from database finished", result.size(), keys.size());
+        }
+        if (traceStart != 0) {
+            logger.trace("ReadMany", keys.size() + " keys", traceStart);
+        }
+        return result;
+    }
+
+    /**
+     * Read values of keys asynchronously, keys without value are absent from the result
+     *
+     * @param keys      keys
+     * @param dataClass class of data
+     */
+    public <T> Observable<Map<String, T>> readManyAsync(Collection<String> keys, Class<T> dataClass) {
+        return readManyAsync(keys, dataClass, schedulers.delivery);
+    }
+
+    /**
+     * Read values of keys asynchronously, keys without value are absent from the result
+     *
+     * @param keys      keys
+     * @param dataClass class of data
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the read thread
+     */
+    public <T> Observable<Map<String, T>> readManyAsync(Collection<String> keys, Class<T> dataClass,
+                                                       @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<Map<String, T>>(AsyncCall.READ_MANY, null, keys, dataClass), schedulers.read,
+                deliverOn);
+    }
+
+    /**
+     * Fetch the records of keys in one pass under one lock, keys without record are skipped
+     *
+     * @param keys     keys
+     * @param readKeys out, keys having record
+     * @param records  out, records of readKeys, envelope bytes or legacy records as string
+     */
+    private void fetchRecords(List<String> keys, List<String> readKeys, List<Object> records) throws Exception {
+        database.beginRead();
+        try {
+            for (String key : keys) {
+                if (!keyFilter.mightContain(key)) {
+                    continue;
+                }
+                byte[] record = database.find(key);
+                if (record == null) {
+                    continue;
+                }
+                readKeys.add(key);
+                // legacy DataBundle json written as string
+                records.add(DataEnvelope.isEnvelope(record) ? record : PantherDatabase.decodeString(record));
+            }
+        } finally {
+            database.endRead();
+        }
     }
 
     /**
-     * Read array data from database synchronously, database method.
-     * Not recommended to call for read large data in the main thread.
-     * Read large data use {@link #readListFromDatabaseAsync(String, Class)}
-     *
-     * @param key       key
-     * @param dataClass class of data
-     * @return array data
+     * Prefetch the hottest keys of the last session into read cache, hottest first, in chunks
+     * fetched in one pass each, until the warm-up budget is used up
      */
-    @Nullable
-    public <T> List<T> readListFromDatabase(String key, Class<T> dataClass) {
-        List<T> data = null;
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        List<HotKeyProfile.Entry> entries = profile.load();
+        long budget = Math.min(configuration.warmUpSize, configuration.readCacheSize);
+        int warmed = 0;
         try {
-            // pre check
-            databaseOperationPreCheck(key);
-            // read data bundle json
-            String dataBundleJson;
-            synchronized (database) {
-                dataBundleJson = database.get().get(key);
-            }
-            if (dataBundleJson == null) {
-                throw new RuntimeException("Read { key = " + key + " } from database failed, no data");
-            }
-            DataBundle dataBundle = JSONUtil.parseObject(dataBundleJson, DataBundle.class);
-            if (dataBundle == null) {
-                throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
-            }
-            String dataJson = dataBundle.dataJson;
-            if (dataBundle.gzip) {
-                dataJson = GZIPUtil.decompress(dataBundle.dataJson);
-                if (dataJson == null) {
-                    throw new RuntimeException("Read { key = " + key + " } from database failed, GZIP failed");
+            for (int from = 0; from < entries.size() && budget > 0; from += WARM_UP_CHUNK) {
+                Map<String, HotKeyProfile.Entry> chunk = new HashMap<>();
+                List<String> keys = new ArrayList<>(WARM_UP_CHUNK);
+                for (HotKeyProfile.Entry entry : entries.subList(from, Math.min(from + WARM_UP_CHUNK, entries.size()))) {
+                    // queued writes are newer than the database
+                    if (readCache.accepts(entry.key) && (writeBehind == null || writeBehind.get(entry.key) == null)) {
+                        chunk.put(entry.key, entry);
+                        keys.add(entry.key);
+                    }
+                }
+                if (keys.isEmpty()) {
+                    continue;
+                }
+                databaseOperationPreCheck(keys.get(0));
+                // a write during the chunk drops its values
+                long stamp = readCache.stamp();
+                List<String> readKeys = new ArrayList<>(keys.size());
+                List<Object> records = new ArrayList<>(keys.size());
+                fetchRecords(keys, readKeys, records);
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < readKeys.size() && budget > 0; i++) {
+                    String key = readKeys.get(i);
+                    HotKeyProfile.Entry entry = chunk.get(key);
+                    Class<?> dataClass = entry.dataClass();
+                    if (dataClass == null) {
+                        continue;
+                    }
+                    try {
+                        Object record = records.get(i);
+                        DataEnvelope envelope = record instanceof String
+                                ? legacyRecord(key, (String) record) : DataEnvelope.decode((byte[]) record);
+                        if (envelope.isExpired(now) || envelope.payloadLength > budget) {
+                            continue;
+                        }
+                        Object data = decodeRecord(key, envelope, dataClass, entry.list);
+                        if (data != null && readCache.prefetch(stamp, key, dataClass, entry.list, data,
+                                envelope.payloadLength, envelope.expiresAt)) {
+                            budget -= envelope.payloadLength;
+                            warmed++;
+                        }
+                    } catch (Exception e) {
+                        logger.e(e, "Warm up { key = {} } failed", key);
+                    }
                 }
-            }
-            data = JSONUtil.parseList(dataJson, dataClass);
-            if (data != null) {
-                log("Read { key = " + key + " value = " + dataJson + " } read from database finished");
-            } else {
-                throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
             }
         } catch (Exception e) {
-            logError("Read { key = " + key + " } from database failed", e);
+            logger.e(e, "Warm up failed");
         }
-        return data;
+        warmUpMillis = System.currentTimeMillis() - start;
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("Warm up prefetched {} of {} hot keys in {}ms", warmed, entries.size(), warmUpMillis);
+        }
+    }
+
+    private interface ChunkTask {
+        void run(int from, int to);
     }
 
     /**
-     * Read list data from database asynchronously
+     * Split [0, size) into chunks run in parallel on the decode lane. The caller runs the first chunk
+     * and every chunk no decode thread has started yet, so it never waits on a queued chunk.
      *
-     * @param key       key
-     * @param dataClass class of data
+     * @param size size
+     * @param task task
      */
-    public <T> Observable<List<T>> readListFromDatabaseAsync(String key, Class<T> dataClass) {
-        ArrayMap<String, Object> bundle = new ArrayMap<>();
-        bundle.put(KEY, key);
-        bundle.put(DATA_CLASS, dataClass);
-        return Observable.just(bundle)
-                .map(new Function<ArrayMap<String, Object>, List<T>>() {
-                    @Override
-                    public List<T> apply(ArrayMap<String, Object> bundle) throws Exception {
-                        String key = (String) bundle.get(KEY);
-                        Class<T> dataClass = (Class<T>) bundle.get(DATA_CLASS);
-                        return readListFromDatabase(key, dataClass);
-                    }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+    private void forEachChunk(int size, final ChunkTask task) throws Exception {
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_PARALLEL_CHUNK);
+        if (chunks <= 1) {
+            task.run(0, size);
+            return;
+        }
+        int chunkSize = (size + chunks - 1) / chunks;
+        List<FutureTask<Void>> futures = new ArrayList<>(chunks);
+        for (int from = chunkSize; from < size; from += chunkSize) {
+            final int chunkFrom = from;
+            final int chunkTo = Math.min(size, from + chunkSize);
+            FutureTask<Void> future = new FutureTask<>(new Runnable() {
+                @Override
+                public void run() {
+                    task.run(chunkFrom, chunkTo);
+                }
+            }, null);
+            futures.add(future);
+            schedulers.decode.execute(future);
+        }
+        task.run(0, chunkSize);
+        for (FutureTask<Void> future : futures) {
+            // no-op if a decode thread took it
+            future.run();
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+            }
+        }
     }
 
-
     /**
      * Read String from database synchronously
      *
@@ -422,12 +1717,18 @@ public final class Panther {
      */
     @NonNull
     public Integer readIntFromDatabase(String key, @NonNull Integer defaultValue) {
-        Integer data = readFromDatabase(key, Integer.class);
-        if (data == null) {
-            return defaultValue;
-        } else {
-            return data;
-        }
+        return readIntFromDatabase(key, defaultValue.intValue());
+    }
+
+    /**
+     * Read int from database synchronously, no boxing for values written as primitives
+     *
+     * @param key          key
+     * @param defaultValue defaultValue
+     * @return data
+     */
+    public int readIntFromDatabase(String key, int defaultValue) {
+        return (int) readPrimitive(key, DataEnvelope.PRIMITIVE_INT, defaultValue);
     }
 
     /**
@@ -439,12 +1740,18 @@ public final class Panther {
      */
     @NonNull
     public Long readLongFromDatabase(String key, @NonNull Long defaultValue) {
-        Long data = readFromDatabase(key, Long.class);
-        if (data == null) {
-            return defaultValue;
-        } else {
-            return data;
-        }
+        return readLongFromDatabase(key, defaultValue.longValue());
+    }
+
+    /**
+     * Read long from database synchronously, no boxing for values written as primitives
+     *
+     * @param key          key
+     * @param defaultValue defaultValue
+     * @return data
+     */
+    public long readLongFromDatabase(String key, long defaultValue) {
+        return readPrimitive(key, DataEnvelope.PRIMITIVE_LONG, defaultValue);
     }
 
     /**
@@ -456,12 +1763,19 @@ public final class Panther {
      */
     @NonNull
     public double readDoubleFromDatabase(String key, @NonNull Double defaultValue) {
-        Double data = readFromDatabase(key, Double.class);
-        if (data == null) {
-            return defaultValue;
-        } else {
-            return data;
-        }
+        return readDoubleFromDatabase(key, defaultValue.doubleValue());
+    }
+
+    /**
+     * Read double from database synchronously, no boxing for values written as primitives
+     *
+     * @param key          key
+     * @param defaultValue defaultValue
+     * @return data
+     */
+    public double readDoubleFromDatabase(String key, double defaultValue) {
+        return Double.longBitsToDouble(readPrimitive(key, DataEnvelope.PRIMITIVE_DOUBLE,
+                Double.doubleToRawLongBits(defaultValue)));
     }
 
     /**
@@ -473,11 +1787,65 @@ public final class Panther {
      */
     @NonNull
     public boolean readBooleanFromDatabase(String key, @NonNull Boolean defaultValue) {
-        Boolean data = readFromDatabase(key, Boolean.class);
-        if (data == null) {
-            return defaultValue;
-        } else {
-            return data;
+        return readBooleanFromDatabase(key, defaultValue.booleanValue());
+    }
+
+    /**
+     * Read boolean from database synchronously, no boxing for values written as primitives
+     *
+     * @param key          key
+     * @param defaultValue defaultValue
+     * @return data
+     */
+    public boolean readBooleanFromDatabase(String key, boolean defaultValue) {
+        return readPrimitive(key, DataEnvelope.PRIMITIVE_BOOLEAN, defaultValue ? 1 : 0) != 0;
+    }
+
+    /**
+     * Read a primitive value, binary records are decoded in place, legacy JSON records fall back to
+     * the codec. Keys of the read cache go through it and the hot key profile like other reads.
+     *
+     * @param key         key
+     * @param type        primitive type
+     * @param defaultBits bits of the default value
+     * @return value bits
+     */
+    private long readPrimitive(String key, int type, long defaultBits) {
+        long traceStart = logger.traceStart();
+        try {
+            Class<?> dataClass = DataEnvelope.boxedClassOf(type);
+            if (readCache != null && !TextUtils.isEmpty(key) && readCache.accepts(key)) {
+                Object data = readValue(key, dataClass, false);
+                if (data == MISSING) {
+                    return defaultBits;
+                }
+                if (data == null) {
+                    throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
+                }
+                logger.trace("Read", key, traceStart);
+                return DataEnvelope.primitiveBits(data);
+            }
+            databaseOperationPreCheck(key);
+            DataEnvelope envelope = readRecord(key);
+            if (envelope == null || envelope.isExpired(System.currentTimeMillis())) {
+                return defaultBits;
+            }
+            long bits;
+            if (envelope.isPrimitive()) {
+                bits = envelope.primitive(type);
+            } else {
+                Object data = decodeRecord(key, envelope, dataClass, false);
+                if (data == null) {
+                    throw new RuntimeException("Read { key = " + key + " } from database failed, parse failed");
+                }
+                bits = DataEnvelope.primitiveBits(data);
+            }
+            caches.onRead(key);
+            logger.trace("Read", key, traceStart);
+            return bits;
+        } catch (Exception e) {
+            logger.e(e, "Read { key = {} } from database failed", key);
+            return defaultBits;
         }
     }
 
@@ -489,13 +1857,29 @@ public final class Panther {
     public boolean deleteFromDatabase(String key) {
         try {
             databaseOperationPreCheck(key);
-            synchronized (database) {
+            String indexKey = null;
+            database.beginWrite();
+            try {
+                if (writeBehind != null) {
+                    writeBehind.discard(key);
+                }
+                if (expiry.isActive()) {
+                    indexKey = ExpiryManager.indexKeyOf(key, database.find(key));
+                }
                 database.get().del(key);
+            } finally {
+                database.endWrite();
+            }
+            if (indexKey != null) {
+                expiry.untrack(Collections.singletonList(indexKey));
             }
-            log("{ key = " + key + " } delete from database finished");
+            keyFilter.onDelete();
+            invalidateReadCache(key);
+            caches.onWrite(key, null);
+            logger.d("{ key = {} } delete from database finished", key);
             return true;
         } catch (Exception e) {
-            logError(" { key = " + key + " } delete from database failed", e);
+            logger.e(e, "{ key = {} } delete from database failed", key);
             return false;
         }
     }
@@ -506,15 +1890,22 @@ public final class Panther {
      * @param key key
      */
     public Observable<Boolean> deleteFromDatabaseAsync(String key) {
-        return Observable.just(key)
-                .map(new Function<String, Boolean>() {
-                    @Override
-                    public Boolean apply(String key) throws Exception {
-                        return deleteFromDatabase(key);
-                    }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        return deleteFromDatabaseAsync(key, schedulers.delivery);
+    }
+
+    /**
+     * Delete data from database, asynchronously, nothing is deleted until subscribed.
+     * With write behind the result fails with {@link java.util.concurrent.RejectedExecutionException}
+     * while the queue is full.
+     *
+     * @param key       key
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the write thread
+     */
+    public Observable<Boolean> deleteFromDatabaseAsync(String key, @Nullable Scheduler deliverOn) {
+        if (writeBehind != null && !TextUtils.isEmpty(key)) {
+            return deliver(enqueueWrite(key, null), deliverOn);
+        }
+        return async(new AsyncCall<Boolean>(AsyncCall.DELETE, key, null, null), schedulers.write, deliverOn);
     }
 
     /**
@@ -523,23 +1914,17 @@ public final class Panther {
      * @param keys keys
      */
     public Observable<Boolean> massDeleteFromDatabaseAsync(List<String> keys) {
-        return Observable.just(keys)
-                .map(new Function<List<String>, Boolean>() {
-                    @Override
-                    public Boolean apply(List<String> keys) throws Exception {
-                        if (keys == null)
-                            return false;
-                        boolean massDeleteSuccess = true;
-                        for (String key : keys) {
-                            // once failed, consider it as failed
-                            if (!deleteFromDatabase(key))
-                                massDeleteSuccess = false;
-                        }
-                        return massDeleteSuccess;
-                    }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+        return massDeleteFromDatabaseAsync(keys, schedulers.delivery);
+    }
+
+    /**
+     * Mass delete from database, asynchronously
+     *
+     * @param keys      keys
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the write thread
+     */
+    public Observable<Boolean> massDeleteFromDatabaseAsync(List<String> keys, @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<Boolean>(AsyncCall.MASS_DELETE, null, keys, null), schedulers.write, deliverOn);
     }
 
     /**
@@ -548,22 +1933,157 @@ public final class Panther {
      * @param prefix prefix
      */
     public Observable<Boolean> massDeleteByPrefixFromDatabaseAsync(String prefix) {
-        return Observable.just(prefix)
-                .map(new Function<String, Boolean>() {
-                    @Override
-                    public Boolean apply(String prefix) throws Exception {
-                        List<String> keys = findKeysByPrefix(prefix);
-                        boolean massDeleteSuccess = true;
-                        for (String key : keys) {
-                            // once failed, consider it as failed
-                            if (!deleteFromDatabase(key))
-                                massDeleteSuccess = false;
+        return massDeleteByPrefixFromDatabaseAsync(prefix, schedulers.delivery);
+    }
+
+    /**
+     * Mass delete from database by prefix, asynchronously
+     *
+     * @param prefix    prefix
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the write thread
+     */
+    public Observable<Boolean> massDeleteByPrefixFromDatabaseAsync(String prefix, @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<Boolean>(AsyncCall.MASS_DELETE_BY_PREFIX, prefix, null, null), schedulers.write,
+                deliverOn);
+    }
+
+    /**
+     * Delete all keys with prefix synchronously.
+     * Keys are deleted in chunks, each chunk in one writer lock acquisition,
+     * other operations proceed between chunks.
+     *
+     * @param prefix prefix
+     * @return keys deleted, -1 if failed
+     */
+    public int deleteByPrefix(String prefix) {
+        try {
+            return deleteRange(prefix, null);
+        } catch (Exception e) {
+            logger.e(e, "{ prefix = {} } delete from database failed", prefix);
+            return -1;
+        }
+    }
+
+    /**
+     * Delete all keys with prefix asynchronously, emits the count of deleted keys after every chunk,
+     * the last one is the total. Disposing stops after the current chunk.
+     *
+     * @param prefix prefix
+     */
+    public Observable<Integer> deleteByPrefixAsync(final String prefix) {
+        Observable<Integer> progress = Observable.create(new ObservableOnSubscribe<Integer>() {
+            @Override
+            public void subscribe(ObservableEmitter<Integer> emitter) throws Exception {
+                deleteRange(prefix, emitter);
+                emitter.onComplete();
+            }
+        });
+        return deliver(progress.subscribeOn(schedulers.write.scheduler), schedulers.delivery);
+    }
+
+    private int deleteRange(String prefix, @Nullable ObservableEmitter<Integer> progress) throws Exception {
+        long traceStart = logger.traceStart();
+        PrefixCursor cursor = cursor(prefix, 0, 0, false);
+        int deleted = 0;
+        while ((progress == null || !progress.isDisposed()) && cursor.hasNext()) {
+            deleted += deleteChunk(cursor.nextPage(), false);
+            if (progress != null) {
+                progress.onNext(deleted);
+            }
+        }
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("{ prefix = {} } {} keys deleted from database", prefix, deleted);
+        }
+        logger.trace("DeleteRange", prefix, traceStart);
+        return deleted;
+    }
+
+    /**
+     * Delete a chunk of keys in one writer lock acquisition
+     *
+     * @param keys  keys
+     * @param evict evicted by a cache namespace, keys written or read since they were picked are kept,
+     *              queued writes of the keys are kept and land after the delete
+     * @return keys deleted
+     */
+    private int deleteChunk(List<String> keys, boolean evict) throws Exception {
+        boolean expiryActive = expiry.isActive();
+        List<String> indexKeys = null;
+        List<String> deletedKeys = evict ? new ArrayList<String>(keys.size()) : keys;
+        database.beginWrite();
+        try {
+            DB db = database.get();
+            for (String key : keys) {
+                if (evict) {
+                    // checked under the writer lock, a write of key is either seen here or lands after the delete
+                    if (!caches.confirmEviction(key)) {
+                        continue;
+                    }
+                    deletedKeys.add(key);
+                } else if (writeBehind != null) {
+                    writeBehind.discard(key);
+                }
+                if (expiryActive) {
+                    String indexKey = ExpiryManager.indexKeyOf(key, database.find(key));
+                    if (indexKey != null) {
+                        if (indexKeys == null) {
+                            indexKeys = new ArrayList<>();
                         }
-                        return massDeleteSuccess;
+                        indexKeys.add(indexKey);
                     }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+                }
+                db.del(key);
+            }
+        } finally {
+            database.endWrite();
+        }
+        for (String key : deletedKeys) {
+            keyFilter.onDelete();
+            invalidateReadCache(key);
+            if (!evict) {
+                caches.onWrite(key, null);
+            }
+        }
+        if (indexKeys != null) {
+            expiry.untrack(indexKeys);
+        }
+        return deletedKeys.size();
+    }
+
+    /**
+     * Load the tracking of cache namespaces, namespaces without checkpoint are rebuilt in background
+     */
+    private void loadCaches() {
+        if (caches.isEmpty()) {
+            return;
+        }
+        final List<CacheManager.Namespace> missing = caches.load();
+        if (missing.isEmpty()) {
+            return;
+        }
+        schedulers.background.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                for (CacheManager.Namespace namespace : missing) {
+                    try {
+                        PrefixCursor cursor = cursor(namespace.prefix);
+                        while (cursor.hasNext()) {
+                            List<String> readKeys = new ArrayList<>();
+                            List<Object> records = new ArrayList<>();
+                            fetchRecords(cursor.nextPage(), readKeys, records);
+                            for (int i = 0; i < readKeys.size(); i++) {
+                                Object record = records.get(i);
+                                int length = record instanceof String
+                                        ? ((String) record).length() : ((byte[]) record).length;
+                                caches.onRebuilt(namespace, readKeys.get(i), length);
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.e(e, "{ prefix = {} } rebuild cache tracking failed", namespace.prefix);
+                    }
+                }
+            }
+        });
     }
 
 
@@ -577,13 +2097,30 @@ public final class Panther {
         boolean exist = false;
         try {
             databaseOperationPreCheck(key);
-            synchronized (database) {
-                exist = database.get().exists(key);
+            WriteBehindQueue.PendingWrite pendingWrite = writeBehind != null ? writeBehind.get(key) : null;
+            if (pendingWrite != null) {
+                exist = pendingWrite.data != null;
+            } else if (keyFilter.mightContain(key)) {
+                database.beginRead();
+                try {
+                    // expired records are missing, check the header only when records may expire
+                    if (expiry.isActive()) {
+                        byte[] record = database.find(key);
+                        long expiresAt = record != null ? DataEnvelope.expiresAt(record) : 0;
+                        exist = record != null && (expiresAt == 0 || expiresAt > System.currentTimeMillis());
+                    } else {
+                        exist = database.get().exists(key);
+                    }
+                } finally {
+                    database.endRead();
+                }
             }
         } catch (Exception e) {
-            logError("Find key exist failed", e);
+            logger.e(e, "Find key exist failed");
+        }
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("{ key = {} } exist = {}", key, exist);
         }
-        log("{ key = " + key + " } exist = " + exist);
         return exist;
     }
 
@@ -598,17 +2135,51 @@ public final class Panther {
         String[] keys = null;
         try {
             databaseOperationPreCheck(prefix);
-            synchronized (database) {
+            database.beginRead();
+            try {
                 keys = database.get().findKeys(prefix);
+            } finally {
+                database.endRead();
             }
         } catch (Exception e) {
-            logError("Find keys by prefix failed", e);
+            logger.e(e, "Find keys by prefix failed");
         }
         if (keys == null) {
             keys = new String[]{};
         }
-        log("{ prefix = " + prefix + " } has " + keys.length + " keys");
-        return Arrays.asList(keys);
+        List<String> keyList = Arrays.asList(keys);
+        if (prefix != null && (INTERNAL_KEY_PREFIX.startsWith(prefix) || prefix.startsWith(INTERNAL_KEY_PREFIX))) {
+            List<String> userKeys = new ArrayList<>(keyList.size());
+            for (String key : keyList) {
+                if (!key.startsWith(INTERNAL_KEY_PREFIX)) {
+                    userKeys.add(key);
+                }
+            }
+            keyList = userKeys;
+        }
+        if (writeBehind != null && !TextUtils.isEmpty(prefix)) {
+            keyList = writeBehind.mergeKeys(prefix, keyList);
+        }
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("{ prefix = {} } has {} keys", prefix, keyList.size());
+        }
+        return keyList;
+    }
+
+    /**
+     * Delete keys one by one
+     *
+     * @param keys keys
+     * @return false if any delete failed
+     */
+    private boolean deleteKeys(Collection<String> keys) {
+        boolean success = true;
+        for (String key : keys) {
+            // once failed, consider it as failed
+            if (!deleteFromDatabase(key))
+                success = false;
+        }
+        return success;
     }
 
     /**
@@ -617,17 +2188,123 @@ public final class Panther {
      * @param prefix prefix
      */
     public Observable<List<String>> findKeysByPrefixAsync(String prefix) {
-        return Observable.just(prefix)
-                .map(new Function<String, List<String>>() {
-                    @Override
-                    public List<String> apply(String prefix1) throws Exception {
-                        return findKeysByPrefix(prefix1);
+        return findKeysByPrefixAsync(prefix, schedulers.delivery);
+    }
+
+    /**
+     * Return keys with same prefix from database, asynchronously
+     *
+     * @param prefix    prefix
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the read thread
+     */
+    public Observable<List<String>> findKeysByPrefixAsync(String prefix, @Nullable Scheduler deliverOn) {
+        return async(new AsyncCall<List<String>>(AsyncCall.FIND_KEYS, prefix, null, null), schedulers.read, deliverOn);
+    }
+
+
+    /**
+     * Cursor over all keys with prefix, in key order
+     *
+     * @param prefix prefix
+     * @return cursor
+     */
+    @NonNull
+    public PrefixCursor cursor(String prefix) {
+        return cursor(prefix, 0, 0, false);
+    }
+
+    /**
+     * Cursor over the keys with prefix, keys are fetched lazily a page at a time.
+     * Queued async writes are committed first.
+     *
+     * @param prefix  prefix
+     * @param offset  keys to skip
+     * @param limit   max keys, 0 for no limit
+     * @param reverse descending key order
+     * @return cursor
+     */
+    @NonNull
+    public PrefixCursor cursor(String prefix, int offset, int limit, boolean reverse) throws RuntimeException {
+        databaseOperationPreCheck(prefix);
+        flush();
+        return new PrefixCursor(database, prefix, offset, limit, reverse, PrefixCursor.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Keys with prefix as a backpressured stream, pages are fetched on demand on the read lane
+     *
+     * @param prefix  prefix
+     * @param offset  keys to skip
+     * @param limit   max keys, 0 for no limit
+     * @param reverse descending key order
+     */
+    public Flowable<String> scanKeys(final String prefix, final int offset, final int limit, final boolean reverse) {
+        Flowable<String> keys = Flowable.generate(new Callable<PrefixCursor>() {
+            @Override
+            public PrefixCursor call() throws Exception {
+                return cursor(prefix, offset, limit, reverse);
+            }
+        }, new BiConsumer<PrefixCursor, Emitter<String>>() {
+            @Override
+            public void accept(PrefixCursor cursor, Emitter<String> emitter) throws Exception {
+                if (cursor.hasNext()) {
+                    emitter.onNext(cursor.next());
+                } else {
+                    emitter.onComplete();
+                }
+            }
+        });
+        return deliver(keys.subscribeOn(schedulers.read.scheduler), schedulers.delivery);
+    }
+
+    /**
+     * Keys and values with prefix as a backpressured stream, every page of keys is read by
+     * {@link #readMany(Collection, Class)}, keys deleted during the scan are skipped
+     *
+     * @param prefix    prefix
+     * @param dataClass class of data
+     * @param offset    keys to skip
+     * @param limit     max keys, 0 for no limit
+     * @param reverse   descending key order
+     */
+    public <T> Flowable<Pair<String, T>> scan(final String prefix, final Class<T> dataClass, final int offset,
+                                              final int limit, final boolean reverse) {
+        Flowable<Pair<String, T>> entries = Flowable.generate(new Callable<EntryScan<T>>() {
+            @Override
+            public EntryScan<T> call() throws Exception {
+                return new EntryScan<>(cursor(prefix, offset, limit, reverse));
+            }
+        }, new BiConsumer<EntryScan<T>, Emitter<Pair<String, T>>>() {
+            @Override
+            public void accept(EntryScan<T> scan, Emitter<Pair<String, T>> emitter) throws Exception {
+                while (scan.page.isEmpty() && scan.cursor.hasNext()) {
+                    Map<String, T> values = readMany(scan.cursor.nextPage(), dataClass);
+                    for (Map.Entry<String, T> value : values.entrySet()) {
+                        scan.page.add(Pair.create(value.getKey(), value.getValue()));
                     }
-                })
-                .subscribeOn(Schedulers.io())
-                .observeOn(AndroidSchedulers.mainThread());
+                }
+                if (scan.page.isEmpty()) {
+                    emitter.onComplete();
+                } else {
+                    emitter.onNext(scan.page.poll());
+                }
+            }
+        });
+        return deliver(entries.subscribeOn(schedulers.read.scheduler), schedulers.delivery);
+    }
+
+    private static final class EntryScan<T> {
+        final PrefixCursor cursor;
+        final ArrayDeque<Pair<String, T>> page = new ArrayDeque<>();
+
+        EntryScan(PrefixCursor cursor) {
+            this.cursor = cursor;
+        }
     }
 
+    private static <T> Flowable<T> deliver(Flowable<T> result, @Nullable Scheduler deliverOn) {
+        return deliverOn != null ? result.observeOn(deliverOn) : result;
+    }
 
     /**
      * Save data in memory cache, default will be weak reference mode
@@ -637,9 +2314,22 @@ public final class Panther {
      * @param strongly strongly or weak reference
      */
     public void writeInMemory(String key, Object data, boolean strongly) {
-        memoryCache.put(key, data, strongly);
-        log("{ key = " + key + " data = " + data + " } save in memory finished");
-        log("Memory cache size: " + memoryCache.size());
+        writeInMemory(key, data, strongly ? MemoryReference.STRONG : MemoryReference.WEAK);
+    }
+
+    /**
+     * Save data in memory cache
+     *
+     * @param key       key
+     * @param data      data
+     * @param reference how the cache holds data, {@link MemoryReference#SOFT} keeps it while memory allows
+     */
+    public void writeInMemory(String key, Object data, MemoryReference reference) {
+        memoryCache.put(key, data, reference);
+        logger.d("{ key = {} data = {} } save in memory finished", key, data);
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("Memory cache size: {}", memoryCache.size());
+        }
     }
 
     /**
@@ -660,8 +2350,19 @@ public final class Panther {
      * @return data
      */
     public <V> V readFromMemory(String key, boolean strongly) {
-        V data = memoryCache.get(key, strongly);
-        log("{ key = " + key + " data = " + data + " } read from memory finished");
+        return readFromMemory(key, strongly ? MemoryReference.STRONG : MemoryReference.WEAK);
+    }
+
+    /**
+     * Read data from memory cache
+     *
+     * @param key       key
+     * @param reference reference mode the data was saved with
+     * @return data
+     */
+    public <V> V readFromMemory(String key, MemoryReference reference) {
+        V data = memoryCache.get(key, reference);
+        logger.d("{ key = {} data = {} } read from memory finished", key, data);
         return data;
     }
 
@@ -682,8 +2383,10 @@ public final class Panther {
      */
     public void deleteFromMemory(String key) {
         memoryCache.delete(key);
-        log("{ key = " + key + " } delete from memory finished");
-        log("Memory cache size: " + memoryCache.size());
+        logger.d("{ key = {} } delete from memory finished", key);
+        if (logger.isLoggable(Log.DEBUG)) {
+            logger.d("Memory cache size: {}", memoryCache.size());
+        }
     }
 
     /**
@@ -700,16 +2403,6 @@ public final class Panther {
      */
     public void clearMemoryCache() {
         memoryCache.clear();
-        log("Memory cache clear finish");
-    }
-
-    private void log(String content) {
-        if (configuration.logEnabled)
-            Log.d("Panther", content);
-    }
-
-    private void logError(String content, Throwable error) {
-        if (configuration.logEnabled)
-            Log.e("Panther", content, error);
+        logger.d("Memory cache clear finish");
     }
 }
\ No newline at end of file
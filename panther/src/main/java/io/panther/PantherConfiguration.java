@@ -16,11 +16,23 @@
 
 package io.panther;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
+import android.util.Log;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.panther.codec.PantherCodec;
+import io.panther.compress.Compression;
+import io.reactivex.Scheduler;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 
 
 /**
@@ -32,18 +44,64 @@ public class PantherConfiguration {
     Context context;
     String databaseName;
     File databaseFolder;
-    int memoryCacheSize;
+    int memoryCacheBytes;
+    float memoryCacheFraction;
+    Map<Class<?>, MemoryWeigher<?>> memoryWeighers;
     boolean logEnabled;
+    int logLevel;
+    int logValueMaxLength;
+    PantherCodec codec;
+    Map<Class<?>, PantherCodec> classCodecs;
+    boolean writeBehindEnabled;
+    int writeBehindCapacity;
+    Compression compression;
+    Map<String, Compression> prefixCompressions;
+    int compressionThreshold;
+    int compressionMinSaving;
+    List<String> dictionaryPrefixes;
+    List<String> readCachePrefixes;
+    int readCacheSize;
+    int offHeapCacheSize;
+    int warmUpSize;
+    int readThreads;
+    int writeThreads;
+    Scheduler deliveryScheduler;
+    Map<String, Long> prefixTtls;
+    Map<String, Long> cacheBudgets;
+    Map<String, EvictionPolicy> cachePolicies;
 
     private PantherConfiguration(Builder builder) {
         context = builder.context;
         databaseName = builder.databaseName;
         databaseFolder = builder.databaseFolder;
-        memoryCacheSize = builder.memoryCacheSize;
+        memoryCacheBytes = builder.memoryCacheBytes;
+        memoryCacheFraction = builder.memoryCacheFraction;
+        memoryWeighers = builder.memoryWeighers;
         logEnabled = builder.logEnabled;
+        logLevel = builder.logLevel;
+        logValueMaxLength = builder.logValueMaxLength;
+        codec = builder.codec;
+        classCodecs = builder.classCodecs;
+        writeBehindEnabled = builder.writeBehindEnabled;
+        writeBehindCapacity = builder.writeBehindCapacity;
+        compression = builder.compression;
+        prefixCompressions = builder.prefixCompressions;
+        compressionThreshold = builder.compressionThreshold;
+        compressionMinSaving = builder.compressionMinSaving;
+        dictionaryPrefixes = builder.dictionaryPrefixes;
+        readCachePrefixes = builder.readCachePrefixes;
+        readCacheSize = builder.readCacheSize;
+        offHeapCacheSize = builder.offHeapCacheSize;
+        warmUpSize = builder.warmUpSize;
+        readThreads = builder.readThreads;
+        writeThreads = builder.writeThreads;
+        deliveryScheduler = builder.deliveryScheduler;
+        prefixTtls = builder.prefixTtls;
+        cacheBudgets = builder.cacheBudgets;
+        cachePolicies = builder.cachePolicies;
 
-        // application context
-        if (context == null) {
+        // application context, only tests build without one and set name and folder
+        if (context == null && (databaseName == null || databaseFolder == null)) {
             throw new IllegalArgumentException("Context can not be null!");
         }
         // default core name
@@ -80,9 +138,60 @@ public class PantherConfiguration {
         if (databaseFolder == null) {
             throw new IllegalArgumentException("Database folder can not be null!");
         }
-        // memory cache max size
-        if (memoryCacheSize <= 0) {
-            memoryCacheSize = Panther.DEFAULT_MEMORY_CACHE_SIZE;
+        // memory cache budget in bytes
+        if (memoryCacheBytes <= 0 && builder.memoryCacheEntries > 0) {
+            memoryCacheBytes = PantherMemoryCache.bytesOfEntries(builder.memoryCacheEntries);
+        }
+        if (memoryCacheBytes <= 0) {
+            if (memoryCacheFraction <= 0 || memoryCacheFraction > 1) {
+                memoryCacheFraction = Panther.DEFAULT_MEMORY_CACHE_FRACTION;
+            }
+            int memoryClass = 0;
+            try {
+                ActivityManager activityManager = context != null
+                        ? (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE) : null;
+                memoryClass = activityManager != null ? activityManager.getMemoryClass() : 0;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            memoryCacheBytes = memoryClass > 0
+                    ? (int) (memoryClass * 1024L * 1024L * memoryCacheFraction) : Panther.DEFAULT_MEMORY_CACHE_SIZE;
+        }
+        // log
+        if (logLevel <= 0) {
+            logLevel = logEnabled ? Log.DEBUG : PantherLogger.LEVEL_NONE;
+        }
+        logEnabled = logLevel != PantherLogger.LEVEL_NONE;
+        if (logValueMaxLength == 0) {
+            logValueMaxLength = PantherLogger.DEFAULT_VALUE_MAX_LENGTH;
+        }
+        // compression of large values
+        if (compression == null) {
+            compression = Compression.DEFLATE;
+        }
+        if (compressionThreshold <= 0) {
+            compressionThreshold = CompressionPolicy.DEFAULT_THRESHOLD;
+        }
+        if (compressionMinSaving <= 0 || compressionMinSaving >= 100) {
+            compressionMinSaving = CompressionPolicy.DEFAULT_MIN_SAVING_PERCENT;
+        }
+        // write behind queue capacity
+        if (writeBehindCapacity <= 0) {
+            writeBehindCapacity = WriteBehindQueue.DEFAULT_CAPACITY;
+        }
+        // read cache bytes
+        if (readCacheSize <= 0) {
+            readCacheSize = ReadCache.DEFAULT_MAX_BYTES;
+        }
+        // async lanes, results delivered on main thread by default
+        if (readThreads <= 0) {
+            readThreads = PantherSchedulers.defaultReadThreads();
+        }
+        if (writeThreads <= 0) {
+            writeThreads = PantherSchedulers.DEFAULT_WRITE_THREADS;
+        }
+        if (!builder.deliverySchedulerSet) {
+            deliveryScheduler = AndroidSchedulers.mainThread();
         }
     }
 
@@ -90,13 +199,44 @@ public class PantherConfiguration {
         private Context context;
         private String databaseName;
         private File databaseFolder;
-        private int memoryCacheSize;
+        private int memoryCacheEntries;
+        private int memoryCacheBytes;
+        private float memoryCacheFraction;
+        private Map<Class<?>, MemoryWeigher<?>> memoryWeighers;
         private boolean logEnabled;
+        private int logLevel;
+        private int logValueMaxLength;
+        private PantherCodec codec;
+        private Map<Class<?>, PantherCodec> classCodecs;
+        private boolean writeBehindEnabled;
+        private int writeBehindCapacity;
+        private Compression compression;
+        private Map<String, Compression> prefixCompressions;
+        private int compressionThreshold;
+        private int compressionMinSaving;
+        private List<String> dictionaryPrefixes;
+        private List<String> readCachePrefixes;
+        private int readCacheSize;
+        private int offHeapCacheSize;
+        private int warmUpSize;
+        private int readThreads;
+        private int writeThreads;
+        private Scheduler deliveryScheduler;
+        private boolean deliverySchedulerSet;
+        private Map<String, Long> prefixTtls;
+        private Map<String, Long> cacheBudgets;
+        private Map<String, EvictionPolicy> cachePolicies;
 
         public Builder(Context context) {
             this.context = context.getApplicationContext();
         }
 
+        /**
+         * Builder without context, for tests, database name and folder must be set
+         */
+        Builder() {
+        }
+
         /**
          * Database name
          *
@@ -122,11 +262,51 @@ public class PantherConfiguration {
         /**
          * Memory cache max size
          *
-         * @param val size
+         * @param val entry count
          * @return
+         * @deprecated the memory cache is bounded by bytes now, the count is converted to a byte budget
+         * of {@link PantherMemoryCache#ESTIMATED_ENTRY_BYTES} per entry, use {@link #memoryCacheBytes(int)}
          */
+        @Deprecated
         public Builder memoryCacheSize(int val) {
-            memoryCacheSize = val;
+            memoryCacheEntries = val;
+            return this;
+        }
+
+        /**
+         * Memory cache budget in estimated bytes of the values, overrides {@link #memoryCacheFraction(float)}
+         *
+         * @param val bytes
+         * @return
+         */
+        public Builder memoryCacheBytes(int val) {
+            memoryCacheBytes = val;
+            return this;
+        }
+
+        /**
+         * Memory cache budget as a fraction of the app memory class, 1/16 by default
+         *
+         * @param val fraction of {@link ActivityManager#getMemoryClass()}, 0 ~ 1
+         * @return
+         */
+        public Builder memoryCacheFraction(float val) {
+            memoryCacheFraction = val;
+            return this;
+        }
+
+        /**
+         * Weigher of values of a class and its subclasses in the memory cache, instead of the default estimate
+         *
+         * @param dataClass class of data
+         * @param val       weigher
+         * @return
+         */
+        public <T> Builder memoryWeigher(Class<T> dataClass, MemoryWeigher<? super T> val) {
+            if (memoryWeighers == null) {
+                memoryWeighers = new HashMap<>();
+            }
+            memoryWeighers.put(dataClass, val);
             return this;
         }
 
@@ -141,6 +321,264 @@ public class PantherConfiguration {
             return this;
         }
 
+        /**
+         * Min log level, one of {@link Log#VERBOSE} ~ {@link Log#ERROR}, overrides {@link #logEnabled(boolean)}.
+         * VERBOSE also traces the cost of every operation.
+         *
+         * @param val level
+         * @return
+         */
+        public Builder logLevel(int val) {
+            logLevel = val;
+            return this;
+        }
+
+        /**
+         * Values in log longer than this are truncated, 256 if not set, negative for no limit
+         *
+         * @param val max length
+         * @return
+         */
+        public Builder logValueMaxLength(int val) {
+            logValueMaxLength = val;
+            return this;
+        }
+
+        /**
+         * Default codec of values, Gson if not set
+         *
+         * @param val codec
+         * @return
+         */
+        public Builder codec(PantherCodec val) {
+            codec = val;
+            return this;
+        }
+
+        /**
+         * Codec of values of a class, also used for collections of the class
+         *
+         * @param dataClass class of data
+         * @param val       codec
+         * @return
+         */
+        public Builder codec(Class<?> dataClass, PantherCodec val) {
+            if (classCodecs == null) {
+                classCodecs = new HashMap<>();
+            }
+            classCodecs.put(dataClass, val);
+            return this;
+        }
+
+        /**
+         * Write behind mode, async writes are queued in memory and group committed
+         * by a single writer, reads see the queued writes
+         *
+         * @param val enabled
+         * @return
+         */
+        public Builder writeBehindEnabled(boolean val) {
+            writeBehindEnabled = val;
+            return this;
+        }
+
+        /**
+         * Max pending writes of the write behind queue, async writes of new keys fail when full
+         *
+         * @param val capacity
+         * @return
+         */
+        public Builder writeBehindCapacity(int val) {
+            writeBehindCapacity = val;
+            return this;
+        }
+
+        /**
+         * Compression of large values, DEFLATE if not set.
+         * Records keep their compression, changing it does not affect old records.
+         *
+         * @param val compression
+         * @return
+         */
+        public Builder compression(Compression val) {
+            compression = val;
+            return this;
+        }
+
+        /**
+         * Compression of values whose key starts with prefix, NONE to never compress them
+         *
+         * @param prefix key prefix
+         * @param val    compression
+         * @return
+         */
+        public Builder compression(String prefix, Compression val) {
+            if (prefixCompressions == null) {
+                prefixCompressions = new HashMap<>();
+            }
+            prefixCompressions.put(prefix, val);
+            return this;
+        }
+
+        /**
+         * Values shorter than this are never compressed, 1024 bytes if not set
+         *
+         * @param val length in bytes
+         * @return
+         */
+        public Builder compressionThreshold(int val) {
+            compressionThreshold = val;
+            return this;
+        }
+
+        /**
+         * Compressed values are only kept when at least this percent smaller, 10 if not set
+         *
+         * @param val percent, 1 ~ 99
+         * @return
+         */
+        public Builder compressionMinSaving(int val) {
+            compressionMinSaving = val;
+            return this;
+        }
+
+        /**
+         * Compress values whose key starts with prefix with a dictionary trained from samples,
+         * for many small values of similar content
+         *
+         * @param prefix key prefix
+         * @return
+         */
+        public Builder dictionaryPrefix(String prefix) {
+            if (dictionaryPrefixes == null) {
+                dictionaryPrefixes = new ArrayList<>();
+            }
+            dictionaryPrefixes.add(prefix);
+            return this;
+        }
+
+        /**
+         * Cache decoded values whose key starts with prefix, reads of them are served from memory
+         * until the key is written or deleted. Cached values are shared, do not modify them.
+         * Empty prefix caches all keys.
+         *
+         * @param prefix key prefix
+         * @return
+         */
+        public Builder readCachePrefix(String prefix) {
+            if (readCachePrefixes == null) {
+                readCachePrefixes = new ArrayList<>();
+            }
+            readCachePrefixes.add(prefix);
+            return this;
+        }
+
+        /**
+         * Max payload bytes of the values in read cache, 1MB if not set
+         *
+         * @param val size in bytes
+         * @return
+         */
+        public Builder readCacheSize(int val) {
+            readCacheSize = val;
+            return this;
+        }
+
+        /**
+         * Off-heap cache of stored records of 8KB ~ 1MB in direct buffers, disabled if not set
+         *
+         * @param val size in bytes, rounded down to 1MB slabs
+         * @return
+         */
+        public Builder offHeapCacheSize(int val) {
+            offHeapCacheSize = val;
+            return this;
+        }
+
+        /**
+         * Profile the hottest keys read through the read cache, and prefetch them into read cache
+         * in background after the next open. Needs a read cache prefix, disabled if not set
+         *
+         * @param val max payload bytes to prefetch, at most the read cache size
+         * @return
+         */
+        public Builder warmUpSize(int val) {
+            warmUpSize = val;
+            return this;
+        }
+
+        /**
+         * Threads of async reads, 2 ~ 4 by CPU count if not set.
+         * Up to 256 calls per thread may be pending, more fail with RejectedExecutionException.
+         *
+         * @param val thread count
+         * @return
+         */
+        public Builder readThreads(int val) {
+            readThreads = val;
+            return this;
+        }
+
+        /**
+         * Threads of async writes and deletes, 2 if not set.
+         * Up to 256 calls per thread may be pending, more fail with RejectedExecutionException.
+         *
+         * @param val thread count
+         * @return
+         */
+        public Builder writeThreads(int val) {
+            writeThreads = val;
+            return this;
+        }
+
+        /**
+         * Default scheduler async results are delivered on, main thread if not set.
+         * Null delivers on the Panther thread that did the work, for background pipelines.
+         *
+         * @param val scheduler
+         * @return
+         */
+        public Builder deliveryScheduler(@Nullable Scheduler val) {
+            deliveryScheduler = val;
+            deliverySchedulerSet = true;
+            return this;
+        }
+
+        /**
+         * Default time to live of values whose key starts with prefix, expired values read as missing
+         * and are deleted in background
+         *
+         * @param prefix key prefix
+         * @param millis ttl in millis
+         * @return
+         */
+        public Builder ttl(String prefix, long millis) {
+            if (prefixTtls == null) {
+                prefixTtls = new HashMap<>();
+            }
+            prefixTtls.put(prefix, millis);
+            return this;
+        }
+
+        /**
+         * Treat keys starting with prefix as a disk cache bounded by maxBytes, cold entries are
+         * deleted in background when the prefix grows over the budget
+         *
+         * @param prefix   key prefix
+         * @param maxBytes approximate byte budget of keys and records
+         * @param policy   which entries to evict first
+         * @return
+         */
+        public Builder cacheNamespace(String prefix, long maxBytes, EvictionPolicy policy) {
+            if (cacheBudgets == null) {
+                cacheBudgets = new HashMap<>();
+                cachePolicies = new HashMap<>();
+            }
+            cacheBudgets.put(prefix, maxBytes);
+            cachePolicies.put(prefix, policy);
+            return this;
+        }
+
         public PantherConfiguration build() {
             return new PantherConfiguration(this);
         }
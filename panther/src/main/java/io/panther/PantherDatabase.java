@@ -1,41 +1,211 @@
 package io.panther;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import com.snappydb.DB;
 import com.snappydb.DBFactory;
+import com.snappydb.KeyIterator;
+import com.snappydb.SnappydbException;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Project: ProjectPanther
  * Author: LiShen
  * Time: 2019/4/3 11:09
+ * <p>
+ * LevelDB is safe for concurrent reads and writes, so operations only share the lifecycle lock
+ * and run in parallel. Writers also take the writer lock to keep the order between a write and
+ * the pending writes of write behind. Open, close and batch apply take the lifecycle lock
+ * exclusively. Every operation must go through {@link #beginRead()}, {@link #beginWrite()} or
+ * {@link #beginExclusive()} and never open or close the database while holding a shared lock.
+ * <p>
+ * Lock order: lifecycle, writer
  */
 class PantherDatabase {
 
     @Nullable
-    private DB core = null;
+    private volatile DB core = null;
+    // set after open and cleared before close, checked without any lock
+    private volatile boolean available;
+
+    private final ReentrantReadWriteLock lifecycleLock = new ReentrantReadWriteLock();
+    private final ReentrantLock writerLock = new ReentrantLock();
 
+    /**
+     * Database, call inside one of the locks
+     *
+     * @return database
+     */
+    @NonNull
     DB get() {
-        return core;
+        DB db = core;
+        if (db == null) {
+            throw new IllegalStateException("Database is closed");
+        }
+        return db;
+    }
+
+    /**
+     * Record of key in one lookup, a missing key costs a native exception, for keys expected to exist.
+     * Call inside one of the locks.
+     *
+     * @param key key
+     * @return record, null if not found
+     */
+    @Nullable
+    byte[] getBytes(String key) throws SnappydbException {
+        try {
+            return get().getBytes(key);
+        } catch (SnappydbException e) {
+            // SnappyDB reports a missing key as an error, "...: NotFound: "
+            String message = e.getMessage();
+            if (message != null && message.contains("NotFound")) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Record of key, checked with {@link DB#exists(String)} first so a missing key does not build
+     * an exception, for keys that may be missing. Call inside one of the locks.
+     *
+     * @param key key
+     * @return record, null if not found
+     */
+    @Nullable
+    byte[] find(String key) throws SnappydbException {
+        if (!get().exists(key)) {
+            return null;
+        }
+        // deleted between the two lookups, still reported as missing
+        return getBytes(key);
+    }
+
+    /**
+     * Count every key by iterating, SnappyDB rejects the empty prefix of {@link DB#countKeys(String)}.
+     * Call inside one of the locks.
+     *
+     * @return key count
+     */
+    int countAllKeys() throws SnappydbException {
+        KeyIterator iterator = get().allKeysIterator();
+        try {
+            int count = 0;
+            while (iterator.hasNext()) {
+                count += iterator.next(PrefixCursor.DEFAULT_PAGE_SIZE).length;
+            }
+            return count;
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * Decode a record written as string, the same as SnappyDB gives for {@link DB#get(String)}.
+     * SnappyDB stores strings in the modified UTF-8 of JNI, decoding the bytes saves another lookup.
+     *
+     * @param record record bytes
+     * @return string
+     */
+    @NonNull
+    static String decodeString(byte[] record) {
+        char[] chars = new char[record.length];
+        int count = 0;
+        int i = 0;
+        while (i < record.length) {
+            int b = record[i] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+                i++;
+            } else if ((b & 0xE0) == 0xC0 && i + 1 < record.length) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (record[i + 1] & 0x3F));
+                i += 2;
+            } else if ((b & 0xF0) == 0xE0 && i + 2 < record.length) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((record[i + 1] & 0x3F) << 6) | (record[i + 2] & 0x3F));
+                i += 3;
+            } else if ((b & 0xF8) == 0xF0 && i + 3 < record.length) {
+                // standard UTF-8 of a supplementary character, not written by JNI but accepted by it
+                int codePoint = ((b & 0x07) << 18) | ((record[i + 1] & 0x3F) << 12)
+                        | ((record[i + 2] & 0x3F) << 6) | (record[i + 3] & 0x3F);
+                count += Character.toChars(codePoint, chars, count);
+                i += 4;
+            } else {
+                chars[count++] = '\uFFFD';
+                i++;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    void beginRead() {
+        lifecycleLock.readLock().lock();
+    }
+
+    void endRead() {
+        lifecycleLock.readLock().unlock();
+    }
+
+    void beginWrite() {
+        lifecycleLock.readLock().lock();
+        writerLock.lock();
+    }
+
+    void endWrite() {
+        writerLock.unlock();
+        lifecycleLock.readLock().unlock();
+    }
+
+    void beginExclusive() {
+        lifecycleLock.writeLock().lock();
+    }
+
+    void endExclusive() {
+        lifecycleLock.writeLock().unlock();
     }
 
     boolean open(String path, String name) {
+        beginExclusive();
         try {
             if (core != null && core.isOpen()) {
+                available = true;
                 return true;
             }
             synchronized (DB.class) {
                 core = DBFactory.open(path, name);
+                available = true;
                 return true;
             }
         } catch (Exception ignore) {
             return false;
+        } finally {
+            endExclusive();
+        }
+    }
+
+    /**
+     * Use a database already open, for tests on in-memory databases
+     *
+     * @param db database
+     */
+    void attach(DB db) {
+        beginExclusive();
+        try {
+            core = db;
+            available = true;
+        } finally {
+            endExclusive();
         }
     }
 
     boolean close() {
+        beginExclusive();
         boolean result;
         try {
+            available = false;
             if (core != null) {
                 core.close();
             }
@@ -44,17 +214,17 @@ class PantherDatabase {
             result = false;
         } finally {
             core = null;
+            endExclusive();
         }
         return result;
     }
 
+    /**
+     * Lock free, a close racing with the caller is reported by {@link #get()}
+     *
+     * @return available
+     */
     boolean isAvailable() {
-        boolean available = false;
-        try {
-            available = core != null && core.isOpen();
-        } catch (Exception ignore) {
-
-        }
         return available;
     }
-}
\ No newline at end of file
+}
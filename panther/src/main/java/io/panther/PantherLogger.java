@@ -0,0 +1,150 @@
+package io.panther;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/6 10:30
+ * <p>
+ * Leveled logger, messages are formatted only when the level is enabled.
+ * <p>
+ * Messages use "{}" placeholders, arguments are passed as they are and turned into strings
+ * (truncated to the max value length) only when logged, so values are never materialized
+ * when logging is off. Fixed arity methods avoid varargs arrays, callers with primitive
+ * arguments should check {@link #isLoggable(int)} first to avoid boxing.
+ */
+final class PantherLogger {
+    private static final String TAG = "Panther";
+
+    static final int LEVEL_NONE = Integer.MAX_VALUE;
+    static final int DEFAULT_VALUE_MAX_LENGTH = 256;
+
+    /**
+     * Deferred message for messages too expensive for placeholders
+     */
+    interface Message {
+        String build();
+    }
+
+    private final int level;
+    private final int valueMaxLength;
+
+    PantherLogger(int level, int valueMaxLength) {
+        this.level = level;
+        this.valueMaxLength = valueMaxLength;
+    }
+
+    boolean isLoggable(int level) {
+        return level >= this.level;
+    }
+
+    void v(String format, @Nullable Object arg1, @Nullable Object arg2) {
+        if (Log.VERBOSE >= level) {
+            Log.v(TAG, format(format, arg1, arg2, null));
+        }
+    }
+
+    void d(String message) {
+        if (Log.DEBUG >= level) {
+            Log.d(TAG, message);
+        }
+    }
+
+    void d(String format, @Nullable Object arg1) {
+        if (Log.DEBUG >= level) {
+            Log.d(TAG, format(format, arg1, null, null));
+        }
+    }
+
+    void d(String format, @Nullable Object arg1, @Nullable Object arg2) {
+        if (Log.DEBUG >= level) {
+            Log.d(TAG, format(format, arg1, arg2, null));
+        }
+    }
+
+    void d(String format, @Nullable Object arg1, @Nullable Object arg2, @Nullable Object arg3) {
+        if (Log.DEBUG >= level) {
+            Log.d(TAG, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    void d(Message message) {
+        if (Log.DEBUG >= level) {
+            Log.d(TAG, message.build());
+        }
+    }
+
+    void w(String format, @Nullable Object arg1) {
+        if (Log.WARN >= level) {
+            Log.w(TAG, format(format, arg1, null, null));
+        }
+    }
+
+    void e(@Nullable Throwable error, String message) {
+        if (Log.ERROR >= level) {
+            Log.e(TAG, message, error);
+        }
+    }
+
+    void e(@Nullable Throwable error, String format, @Nullable Object arg1) {
+        if (Log.ERROR >= level) {
+            Log.e(TAG, format(format, arg1, null, null), error);
+        }
+    }
+
+    void e(@Nullable Throwable error, String format, @Nullable Object arg1, @Nullable Object arg2) {
+        if (Log.ERROR >= level) {
+            Log.e(TAG, format(format, arg1, arg2, null), error);
+        }
+    }
+
+    /**
+     * Start of a traced operation
+     *
+     * @return start time, 0 if tracing is off
+     */
+    long traceStart() {
+        return Log.VERBOSE >= level ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Log the cost of a traced operation
+     *
+     * @param operation operation
+     * @param key       key
+     * @param start     start from {@link #traceStart()}
+     */
+    void trace(String operation, String key, long start) {
+        if (start != 0 && Log.VERBOSE >= level) {
+            long costMicros = (System.nanoTime() - start) / 1000;
+            Log.v(TAG, format("{} { key = {} } took {}us", operation, key, costMicros));
+        }
+    }
+
+    private String format(String format, Object arg1, Object arg2, Object arg3) {
+        StringBuilder builder = new StringBuilder(format.length() + 64);
+        int argIndex = 0;
+        int start = 0;
+        int index;
+        while ((index = format.indexOf("{}", start)) >= 0) {
+            builder.append(format, start, index);
+            Object arg = argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3;
+            appendValue(builder, arg);
+            argIndex++;
+            start = index + 2;
+        }
+        builder.append(format, start, format.length());
+        return builder.toString();
+    }
+
+    private void appendValue(StringBuilder builder, Object value) {
+        String text = String.valueOf(value);
+        if (valueMaxLength > 0 && text.length() > valueMaxLength) {
+            builder.append(text, 0, valueMaxLength).append("...(").append(text.length()).append(" chars)");
+        } else {
+            builder.append(text);
+        }
+    }
+}
@@ -17,88 +17,567 @@
 package io.panther;
 
 import android.support.annotation.Nullable;
-import android.support.v4.util.LruCache;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by LiShen on 2017/11/21.
- * Lru cache map
+ * Concurrent memory cache bounded by the estimated bytes of the values
+ * <p>
+ * Strong, soft and weak values live in separate tables. Reads are lock-free, accesses are recorded in
+ * lossy striped buffers and replayed under the policy lock. Writes weigh the value outside the lock.
+ * <p>
+ * Eviction is W-TinyLFU: new entries enter a small LRU window, window victims are admitted into
+ * the segmented LRU main space only if their estimated frequency beats the main victim, so one-off
+ * scans can not flush frequently used entries.
+ * <p>
+ * Strong values weigh their estimated retained size, soft and weak values only their reference
+ * since the GC bounds them. Weights are taken at put time so later changes of a value do not
+ * unbalance the cache. References cleared by the GC are enqueued and their entries purged on the
+ * next cache operation, so dead entries do not push out live ones.
  */
 
 @SuppressWarnings("unchecked")
 public class PantherMemoryCache {
+    /**
+     * Bytes of an entry assumed when an entry count is given, 128 entries make the 4MB default budget
+     */
+    public static final int ESTIMATED_ENTRY_BYTES = 32 * 1024;
+
     private static final String PREFIX_STRONG = "strong:";
+    private static final String PREFIX_SOFT = "soft:";
     private static final String PREFIX_WEAK = "weak:";
+    // entry, node and reference overhead
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+    private static final int READ_BUFFER_STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
 
-    private volatile LruCache<String, Object> CACHE;
+    private final ObjectSizeEstimator estimator;
+    private final ConcurrentHashMap<String, Node> strongTable = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Node> softTable = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Node> weakTable = new ConcurrentHashMap<>();
+    // cleared soft and weak references
+    private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<>();
+    private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
 
+    // policy, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final AccessOrder window = new AccessOrder();
+    private final AccessOrder probation = new AccessOrder();
+    private final AccessOrder protectedOrder = new AccessOrder();
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long protectedMaxWeight;
+    private volatile long weight;
+    private volatile long collected;
+
+    /**
+     * @param maxSize max entry count
+     * @deprecated the cache is bounded by bytes, the count is converted to a byte budget of
+     * {@link #ESTIMATED_ENTRY_BYTES} per entry, use {@link #withMaxBytes(int)}
+     */
+    @Deprecated
     public PantherMemoryCache(int maxSize) {
-        if (maxSize <= 0) {
-            throw new IllegalArgumentException("maxSize <= 0");
+        this(bytesOfEntries(maxSize), new ObjectSizeEstimator(null));
+    }
+
+    /**
+     * Cache bounded by the estimated bytes of the values
+     *
+     * @param maxBytes budget in bytes
+     * @return cache
+     */
+    public static PantherMemoryCache withMaxBytes(int maxBytes) {
+        return new PantherMemoryCache(maxBytes, new ObjectSizeEstimator(null));
+    }
+
+    static int bytesOfEntries(int entries) {
+        return entries <= 0 ? entries : (int) Math.min(Integer.MAX_VALUE, (long) entries * ESTIMATED_ENTRY_BYTES);
+    }
+
+    PantherMemoryCache(int maxBytes, ObjectSizeEstimator estimator) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0");
+        }
+        this.estimator = estimator;
+        this.maxWeight = maxBytes;
+        this.windowMaxWeight = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.protectedMaxWeight = (maxWeight - windowMaxWeight) * PROTECTED_PERCENT / 100;
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
         }
-        CACHE = new LruCache<>(maxSize);
     }
 
-    public synchronized void put(String key, Object value) {
-        put(key, value, false);
+    public void put(String key, Object value) {
+        put(key, value, MemoryReference.WEAK);
+    }
+
+    public void put(String key, Object value, boolean strong) {
+        put(key, value, strong ? MemoryReference.STRONG : MemoryReference.WEAK);
     }
 
-    public synchronized void put(String key, Object value, boolean strong) {
-        if (strong) {
-            CACHE.put(PREFIX_STRONG + key, value);
+    public void put(String key, Object value, MemoryReference reference) {
+        int nodeWeight = ENTRY_OVERHEAD + 2 * key.length();
+        Node node = new Node(key, reference, nodeWeight);
+        if (reference == MemoryReference.STRONG) {
+            node.weight += estimator.weigh(value);
+            node.value = value;
+        } else if (reference == MemoryReference.SOFT) {
+            node.value = new SoftNodeReference(value, referenceQueue, node);
         } else {
-            CACHE.put(PREFIX_WEAK + key, new WeakReference<>(value));
+            node.value = new WeakNodeReference(value, referenceQueue, node);
+        }
+        lock.lock();
+        try {
+            drainReadBuffers();
+            purgeCollected();
+            Node old = tableOf(reference).put(key, node);
+            if (old != null) {
+                unlink(old);
+            }
+            link(node);
+            evict();
+        } finally {
+            lock.unlock();
         }
     }
 
     @Nullable
-    public synchronized <T> T get(String key) {
-        return get(key, false);
+    public <T> T get(String key) {
+        return get(key, MemoryReference.WEAK);
     }
 
     @Nullable
-    public synchronized <T> T get(String key, boolean strong) {
-        T value = null;
-        if (strong) {
-            try {
-                value = (T) CACHE.get(PREFIX_STRONG + key);
-                if (value instanceof WeakReference) {
-                    throw new RuntimeException("Maybe use wrong STRONG type");
+    public <T> T get(String key, boolean strong) {
+        return get(key, strong ? MemoryReference.STRONG : MemoryReference.WEAK);
+    }
+
+    @Nullable
+    public <T> T get(String key, MemoryReference reference) {
+        Node node = tableOf(reference).get(key);
+        if (node == null) {
+            return null;
+        }
+        Object value = node.get();
+        if (value == null) {
+            // cleared by the GC, purge it now instead of waiting for a write
+            if (lock.tryLock()) {
+                try {
+                    purgeCollected();
+                } finally {
+                    lock.unlock();
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                value = null;
             }
-        } else {
+            return null;
+        }
+        recordAccess(node);
+        return (T) value;
+    }
+
+    public void delete(String key) {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            purgeCollected();
+            for (MemoryReference reference : MemoryReference.values()) {
+                Node node = tableOf(reference).remove(key);
+                if (node != null) {
+                    unlink(node);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            strongTable.clear();
+            softTable.clear();
+            weakTable.clear();
+            while (referenceQueue.poll() != null) {
+                // references of the dropped entries
+            }
+            window.clear();
+            probation.clear();
+            protectedOrder.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimated bytes of the cached entries
+     */
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    public int maxSize() {
+        return (int) maxWeight;
+    }
+
+    /**
+     * Entries whose value is still reachable
+     */
+    public int liveCount() {
+        return entryCount() - deadCount();
+    }
+
+    /**
+     * Soft and weak entries cleared by the GC and not purged yet
+     */
+    public int deadCount() {
+        int dead = 0;
+        for (Node node : softTable.values()) {
+            if (node.get() == null) {
+                dead++;
+            }
+        }
+        for (Node node : weakTable.values()) {
+            if (node.get() == null) {
+                dead++;
+            }
+        }
+        return dead;
+    }
+
+    /**
+     * Soft and weak entries purged since creation because the GC cleared them
+     */
+    public long collectedCount() {
+        return collected;
+    }
+
+    public String[] keySet() {
+        List<String> keys = new ArrayList<>(entryCount());
+        for (String key : strongTable.keySet()) {
+            keys.add(PREFIX_STRONG + key);
+        }
+        for (String key : softTable.keySet()) {
+            keys.add(PREFIX_SOFT + key);
+        }
+        for (String key : weakTable.keySet()) {
+            keys.add(PREFIX_WEAK + key);
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    private int entryCount() {
+        return strongTable.size() + softTable.size() + weakTable.size();
+    }
+
+    private ConcurrentHashMap<String, Node> tableOf(MemoryReference reference) {
+        if (reference == MemoryReference.STRONG) {
+            return strongTable;
+        }
+        return reference == MemoryReference.SOFT ? softTable : weakTable;
+    }
+
+    /**
+     * Remove the entries whose reference was cleared, must be called inside the lock
+     */
+    private void purgeCollected() {
+        Reference<?> reference;
+        while ((reference = referenceQueue.poll()) != null) {
+            Node node = ((NodeReference) reference).node();
+            if (node.queue >= 0) {
+                remove(node);
+                collected++;
+            }
+        }
+    }
+
+    private void recordAccess(Node node) {
+        ReadBuffer buffer = readBuffers[(int) spread(Thread.currentThread().getId()) & (READ_BUFFER_STRIPES - 1)];
+        if (buffer.offer(node) && lock.tryLock()) {
             try {
-                WeakReference<Object> valueRef = (WeakReference<Object>) CACHE.get(PREFIX_WEAK + key);
-                if (valueRef != null) {
-                    value = (T) valueRef.get();
+                drainReadBuffers();
+                purgeCollected();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            buffer.drain(this);
+        }
+    }
+
+    /**
+     * Replay an access, must be called inside the lock
+     */
+    private void onAccess(Node node) {
+        if (node.queue < 0) {
+            // removed before the access was replayed
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedOrder.addLast(node);
+            while (protectedOrder.weight > protectedMaxWeight && protectedOrder.first() != node) {
+                Node demoted = protectedOrder.first();
+                protectedOrder.remove(demoted);
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            protectedOrder.moveToBack(node);
+        }
+    }
+
+    private void link(Node node) {
+        if (entryCount() > sketch.capacity()) {
+            sketch.ensureCapacity(2 * entryCount());
+        }
+        sketch.increment(node.key);
+        node.queue = WINDOW;
+        window.addLast(node);
+        weight += node.weight;
+    }
+
+    private void unlink(Node node) {
+        if (node.queue == WINDOW) {
+            window.remove(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+        } else if (node.queue == PROTECTED) {
+            protectedOrder.remove(node);
+        } else {
+            return;
+        }
+        node.queue = -1;
+        weight -= node.weight;
+    }
+
+    private void evict() {
+        // window victims compete with the main victims for admission
+        while (window.weight > windowMaxWeight && window.first() != null) {
+            Node candidate = window.first();
+            window.remove(candidate);
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            while (weight > maxWeight) {
+                Node victim = probation.first() != candidate ? probation.first() : protectedOrder.first();
+                if (victim == null) {
+                    break;
+                }
+                if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                    remove(victim);
+                } else {
+                    remove(candidate);
+                    break;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
         }
-        return value;
+        while (weight > maxWeight) {
+            Node victim = probation.first();
+            if (victim == null) {
+                victim = protectedOrder.first();
+            }
+            if (victim == null) {
+                victim = window.first();
+            }
+            if (victim == null) {
+                break;
+            }
+            remove(victim);
+        }
+    }
+
+    private void remove(Node node) {
+        tableOf(node.reference).remove(node.key, node);
+        unlink(node);
+    }
+
+    private static long spread(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        return x ^ (x >>> 33);
     }
 
-    public synchronized void delete(String key) {
-        CACHE.remove(PREFIX_STRONG + key);
-        CACHE.remove(PREFIX_WEAK + key);
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(Math.max(x, 2) - 1);
     }
 
-    public synchronized void clear() {
-        CACHE.evictAll();
+    private static final class Node {
+        final String key;
+        final MemoryReference reference;
+        // value, or the soft or weak reference of the value, set before the node is published
+        Object value;
+        int weight;
+        // guarded by the lock
+        int queue = -1;
+        Node previous;
+        Node next;
+
+        Node(String key, MemoryReference reference, int weight) {
+            this.key = key;
+            this.reference = reference;
+            this.weight = weight;
+        }
+
+        @Nullable
+        Object get() {
+            return reference == MemoryReference.STRONG ? value : ((Reference<?>) value).get();
+        }
     }
 
-    public synchronized int size() {
-        return CACHE.size();
+    private interface NodeReference {
+        Node node();
     }
 
-    public synchronized String[] keySet() {
-        Set<String> keySet = CACHE.snapshot().keySet();
-        return keySet.toArray(new String[0]);
+    private static final class SoftNodeReference extends SoftReference<Object> implements NodeReference {
+        private final Node node;
+
+        SoftNodeReference(Object value, ReferenceQueue<Object> queue, Node node) {
+            super(value, queue);
+            this.node = node;
+        }
+
+        @Override
+        public Node node() {
+            return node;
+        }
+    }
+
+    private static final class WeakNodeReference extends WeakReference<Object> implements NodeReference {
+        private final Node node;
+
+        WeakNodeReference(Object value, ReferenceQueue<Object> queue, Node node) {
+            super(value, queue);
+            this.node = node;
+        }
+
+        @Override
+        public Node node() {
+            return node;
+        }
+    }
+
+    /**
+     * Doubly linked access order, first is the eviction victim
+     */
+    private static final class AccessOrder {
+        Node head;
+        Node tail;
+        long weight;
+
+        Node first() {
+            return head;
+        }
+
+        void addLast(Node node) {
+            node.previous = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node node) {
+            if (node.previous == null) {
+                head = node.next;
+            } else {
+                node.previous.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.previous;
+            } else {
+                node.next.previous = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToBack(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            for (Node node = head; node != null; node = node.next) {
+                node.queue = -1;
+            }
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+
+    /**
+     * Lossy ring buffer of accesses, many readers offer, the lock holder drains
+     */
+    private static final class ReadBuffer {
+        private final AtomicLong writeCounter = new AtomicLong();
+        private final AtomicReferenceArray<Node> buffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private volatile long readCounter;
+
+        /**
+         * @return buffer should be drained
+         */
+        boolean offer(Node node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            long size = tail - head;
+            if (size >= READ_BUFFER_SIZE) {
+                // full, drop the access
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                buffer.lazySet((int) (tail & READ_BUFFER_MASK), node);
+            }
+            return size + 1 >= READ_BUFFER_DRAIN_THRESHOLD;
+        }
+
+        void drain(PantherMemoryCache cache) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & READ_BUFFER_MASK);
+                Node node = buffer.get(index);
+                if (node == null) {
+                    // offered but not published yet
+                    break;
+                }
+                buffer.lazySet(index, null);
+                cache.onAccess(node);
+            }
+            readCounter = head;
+        }
     }
 }
\ No newline at end of file
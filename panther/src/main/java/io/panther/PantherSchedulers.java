@@ -0,0 +1,149 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/16 10:05
+ * <p>
+ * Schedulers of the async APIs, reads and writes run on own bounded lanes so a burst of
+ * large writes never starves reads, and neither creates threads without bound.
+ * Chunks of a parallel decode run on an own lane too, never on the shared computation threads.
+ * Background work, rebuilds, warm-up, evictions and periodic tasks, runs on a small lane of its own.
+ */
+final class PantherSchedulers {
+    static final int DEFAULT_WRITE_THREADS = 2;
+    // async calls queued or running per lane thread, more are rejected
+    static final int MAX_PENDING_CALLS_PER_THREAD = 256;
+    private static final int BACKGROUND_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    final Lane read;
+    final Lane write;
+    final Executor decode;
+    final Scheduler background;
+    // default delivery of results, null means no hop
+    @Nullable
+    final Scheduler delivery;
+
+    PantherSchedulers(int readThreads, int writeThreads, @Nullable Scheduler delivery) {
+        this.read = new Lane("read", newLane("Panther-Read-", readThreads), readThreads * MAX_PENDING_CALLS_PER_THREAD);
+        this.write = new Lane("write", newLane("Panther-Write-", writeThreads),
+                writeThreads * MAX_PENDING_CALLS_PER_THREAD);
+        this.decode = newLane("Panther-Decode-", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        ScheduledThreadPoolExecutor background = new ScheduledThreadPoolExecutor(BACKGROUND_THREADS,
+                newThreadFactory("Panther-Background-"));
+        background.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        background.allowCoreThreadTimeOut(true);
+        background.setRemoveOnCancelPolicy(true);
+        this.background = Schedulers.from(background);
+        this.delivery = delivery;
+    }
+
+    static int defaultReadThreads() {
+        return Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    @NonNull
+    private static ThreadPoolExecutor newLane(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), newThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @NonNull
+    private static ThreadFactory newThreadFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, name + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Threads of one kind of async call. Calls over the pending bound fail with
+     * {@link RejectedExecutionException} instead of queueing without bound, streams subscribed on
+     * {@link #scheduler} are not counted.
+     */
+    static final class Lane {
+        final Scheduler scheduler;
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final int maxPending;
+        private final AtomicInteger pending = new AtomicInteger();
+
+        Lane(String name, ThreadPoolExecutor executor, int maxPending) {
+            this.name = name;
+            this.executor = executor;
+            this.maxPending = maxPending;
+            this.scheduler = Schedulers.from(executor);
+        }
+
+        /**
+         * Observable running callable on the lane once per subscription, like
+         * {@code Observable.fromCallable(callable).subscribeOn(scheduler)}
+         */
+        <T> Observable<T> call(final Callable<T> callable) {
+            return Observable.create(new ObservableOnSubscribe<T>() {
+                @Override
+                public void subscribe(final ObservableEmitter<T> emitter) {
+                    if (pending.incrementAndGet() > maxPending) {
+                        pending.decrementAndGet();
+                        throw new RejectedExecutionException("Panther " + name + " lane is full, "
+                                + maxPending + " calls pending");
+                    }
+                    try {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    if (emitter.isDisposed()) {
+                                        return;
+                                    }
+                                    T result = callable.call();
+                                    if (result == null) {
+                                        emitter.tryOnError(new NullPointerException("The callable returned a null value"));
+                                        return;
+                                    }
+                                    emitter.onNext(result);
+                                    emitter.onComplete();
+                                } catch (Throwable e) {
+                                    emitter.tryOnError(e);
+                                } finally {
+                                    pending.decrementAndGet();
+                                }
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        pending.decrementAndGet();
+                        throw e;
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/29 14:30
+ * <p>
+ * Snapshot of Panther statistics, get it by {@link Panther#stats()}
+ */
+public final class PantherStats {
+    final List<CompressionStats> compressionStats = new ArrayList<>();
+    final List<DictionaryStats> dictionaryStats = new ArrayList<>();
+    final List<CacheStats> cacheStats = new ArrayList<>();
+    final Map<String, Long> initPhases = new LinkedHashMap<>();
+    long readCacheHits;
+    long readCacheMisses;
+    long readCacheBytes;
+    long expiredKeys;
+    long memoryCacheBytes;
+    int memoryCacheLiveEntries;
+    int memoryCacheDeadEntries;
+    long memoryCacheCollected;
+    long offHeapHits;
+    long offHeapMisses;
+    long offHeapBytes;
+    long offHeapEvictions;
+    long prefetchedEntries;
+    long prefetchedBytes;
+    long prefetchHits;
+    long prefetchUsedEntries;
+    long warmUpMillis;
+
+    PantherStats() {
+    }
+
+    /**
+     * Compression decisions and achieved ratios by key prefix
+     *
+     * @return compression stats
+     */
+    @NonNull
+    public List<CompressionStats> getCompressionStats() {
+        return Collections.unmodifiableList(compressionStats);
+    }
+
+    /**
+     * Dictionary compression by key prefix
+     *
+     * @return dictionary stats
+     */
+    @NonNull
+    public List<DictionaryStats> getDictionaryStats() {
+        return Collections.unmodifiableList(dictionaryStats);
+    }
+
+    /**
+     * Byte-bounded cache namespaces
+     *
+     * @return cache stats
+     */
+    @NonNull
+    public List<CacheStats> getCacheStats() {
+        return Collections.unmodifiableList(cacheStats);
+    }
+
+    /**
+     * Milliseconds of the init phases in order: configuration, setup, open, recover, expiry, caches
+     *
+     * @return init phases
+     */
+    @NonNull
+    public Map<String, Long> getInitPhases() {
+        return Collections.unmodifiableMap(initPhases);
+    }
+
+    /**
+     * Reads served by the read cache
+     */
+    public long getReadCacheHits() {
+        return readCacheHits;
+    }
+
+    /**
+     * Reads of cached prefixes that went to database
+     */
+    public long getReadCacheMisses() {
+        return readCacheMisses;
+    }
+
+    /**
+     * Payload bytes of the values in read cache
+     */
+    public long getReadCacheBytes() {
+        return readCacheBytes;
+    }
+
+    /**
+     * Expired keys deleted by the sweeper since start
+     */
+    public long getExpiredKeys() {
+        return expiredKeys;
+    }
+
+    /**
+     * Estimated bytes of the memory cache
+     */
+    public long getMemoryCacheBytes() {
+        return memoryCacheBytes;
+    }
+
+    /**
+     * Memory cache entries whose value is still reachable
+     */
+    public int getMemoryCacheLiveEntries() {
+        return memoryCacheLiveEntries;
+    }
+
+    /**
+     * Soft and weak memory cache entries cleared by the GC and not purged yet
+     */
+    public int getMemoryCacheDeadEntries() {
+        return memoryCacheDeadEntries;
+    }
+
+    /**
+     * Soft and weak memory cache entries purged since start because the GC cleared them
+     */
+    public long getMemoryCacheCollected() {
+        return memoryCacheCollected;
+    }
+
+    /**
+     * Database reads served by the off-heap cache
+     */
+    public long getOffHeapHits() {
+        return offHeapHits;
+    }
+
+    public long getOffHeapMisses() {
+        return offHeapMisses;
+    }
+
+    /**
+     * Bytes of the records in the off-heap cache
+     */
+    public long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    /**
+     * Records dropped with their recycled slab since start
+     */
+    public long getOffHeapEvictions() {
+        return offHeapEvictions;
+    }
+
+    /**
+     * Values prefetched into read cache by the warm-up after open
+     */
+    public long getPrefetchedEntries() {
+        return prefetchedEntries;
+    }
+
+    /**
+     * Payload bytes of the prefetched values
+     */
+    public long getPrefetchedBytes() {
+        return prefetchedBytes;
+    }
+
+    /**
+     * Reads served by prefetched values, also counted in read cache hits
+     */
+    public long getPrefetchHits() {
+        return prefetchHits;
+    }
+
+    /**
+     * Prefetched values read at least once
+     */
+    public long getPrefetchUsedEntries() {
+        return prefetchUsedEntries;
+    }
+
+    /**
+     * Milliseconds the warm-up took, 0 until it finished
+     */
+    public long getWarmUpMillis() {
+        return warmUpMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("PantherStats{");
+        builder.append("\ncompression=").append(compressionStats);
+        builder.append("\ndictionary=").append(dictionaryStats);
+        builder.append("\ninit=").append(initPhases);
+        builder.append("\nreadCache={ hits = ").append(readCacheHits).append(" misses = ").append(readCacheMisses)
+                .append(" bytes = ").append(readCacheBytes).append(" }");
+        builder.append("\nexpiredKeys=").append(expiredKeys);
+        builder.append("\ncache=").append(cacheStats);
+        builder.append("\nmemoryCache={ bytes = ").append(memoryCacheBytes).append(" live = ")
+                .append(memoryCacheLiveEntries).append(" dead = ").append(memoryCacheDeadEntries)
+                .append(" collected = ").append(memoryCacheCollected).append(" }");
+        builder.append("\noffHeap={ hits = ").append(offHeapHits).append(" misses = ").append(offHeapMisses)
+                .append(" bytes = ").append(offHeapBytes).append(" evictions = ").append(offHeapEvictions).append(" }");
+        builder.append("\nwarmUp={ entries = ").append(prefetchedEntries).append(" bytes = ").append(prefetchedBytes)
+                .append(" hits = ").append(prefetchHits).append(" used = ").append(prefetchUsedEntries)
+                .append(" millis = ").append(warmUpMillis).append(" }");
+        return builder.append("\n}").toString();
+    }
+
+    public static final class CompressionStats {
+        String prefix;
+        String compression;
+        boolean skipping;
+        long writes;
+        long compressed;
+        long rejected;
+        long skipped;
+        long bytesIn;
+        long bytesOut;
+
+        CompressionStats() {
+        }
+
+        /**
+         * Key prefix, empty for keys without a known prefix
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * Compression used by the prefix
+         */
+        public String getCompression() {
+            return compression;
+        }
+
+        /**
+         * Whether compression is skipped now because recent samples did not save enough
+         */
+        public boolean isSkipping() {
+            return skipping;
+        }
+
+        /**
+         * Writes large enough to be considered for compression
+         */
+        public long getWrites() {
+            return writes;
+        }
+
+        /**
+         * Writes stored compressed
+         */
+        public long getCompressed() {
+            return compressed;
+        }
+
+        /**
+         * Writes compressed but stored raw because the saving was too small
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Writes not compressed without trying
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Stored bytes / original bytes of the compression attempts
+         */
+        public float getRatio() {
+            return bytesIn == 0 ? 1F : (float) bytesOut / bytesIn;
+        }
+
+        @Override
+        public String toString() {
+            return "{ prefix = " + prefix + " compression = " + compression + " skipping = " + skipping
+                    + " writes = " + writes + " compressed = " + compressed + " rejected = " + rejected
+                    + " skipped = " + skipped + " ratio = " + getRatio() + " }";
+        }
+    }
+
+    public static final class DictionaryStats {
+        String prefix;
+        int dictionaryId;
+        int dictionarySize;
+        long records;
+        long bytesIn;
+        long bytesOut;
+
+        DictionaryStats() {
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * Id of current dictionary, 0 if not trained yet
+         */
+        public int getDictionaryId() {
+            return dictionaryId;
+        }
+
+        public int getDictionarySize() {
+            return dictionarySize;
+        }
+
+        /**
+         * Records compressed with a dictionary
+         */
+        public long getRecords() {
+            return records;
+        }
+
+        /**
+         * Stored bytes / original bytes of the dictionary compressed records
+         */
+        public float getRatio() {
+            return bytesIn == 0 ? 1F : (float) bytesOut / bytesIn;
+        }
+
+        @Override
+        public String toString() {
+            return "{ prefix = " + prefix + " dictionary = " + dictionaryId + " size = " + dictionarySize
+                    + " records = " + records + " ratio = " + getRatio() + " }";
+        }
+    }
+
+    public static final class CacheStats {
+        String prefix;
+        EvictionPolicy policy;
+        long maxBytes;
+        long bytesUsed;
+        int entries;
+        long evictions;
+
+        CacheStats() {
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public EvictionPolicy getPolicy() {
+            return policy;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * Approximate bytes of the tracked keys and records
+         */
+        public long getBytesUsed() {
+            return bytesUsed;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        /**
+         * Entries evicted since start
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "{ prefix = " + prefix + " policy = " + policy + " bytes = " + bytesUsed + "/" + maxBytes
+                    + " entries = " + entries + " evictions = " + evictions + " }";
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+
+import com.snappydb.DB;
+import com.snappydb.KeyIterator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/20 11:30
+ * <p>
+ * Lazy cursor over the keys with a prefix, create by {@link Panther#cursor(String, int, int, boolean)}
+ * <p>
+ * Keys are fetched a page at a time, every page re-seeks after the last key of the previous page
+ * under its own read lock, so a scan of any size runs in constant memory and never holds the lock
+ * between pages. Writes during the scan may or may not be seen. Not thread safe.
+ */
+public final class PrefixCursor {
+    public static final int DEFAULT_PAGE_SIZE = 256;
+
+    // greater than any key with the prefix, keys are stored in modified UTF-8
+    private static final String UPPER_BOUND_SUFFIX = "\uffff\uffff";
+
+    private final PantherDatabase database;
+    private final String prefix;
+    private final String upperBound;
+    private final boolean reverse;
+    private final int pageSize;
+    private final boolean hideInternalKeys;
+    private final ArrayDeque<String> buffer = new ArrayDeque<>();
+    // last key fetched, next page starts after it
+    private String lastKey;
+    private boolean exhausted;
+    private int toSkip;
+    private int remaining;
+
+    PrefixCursor(PantherDatabase database, String prefix, int offset, int limit, boolean reverse, int pageSize) {
+        this.database = database;
+        this.prefix = prefix;
+        this.upperBound = prefix + UPPER_BOUND_SUFFIX;
+        this.reverse = reverse;
+        this.pageSize = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+        this.hideInternalKeys = Panther.INTERNAL_KEY_PREFIX.startsWith(prefix)
+                || prefix.startsWith(Panther.INTERNAL_KEY_PREFIX);
+        this.toSkip = Math.max(offset, 0);
+        this.remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Whether more keys, may fetch the next page
+     *
+     * @return has next
+     */
+    public boolean hasNext() {
+        while (toSkip > 0 && peek() != null) {
+            buffer.poll();
+            toSkip--;
+        }
+        return remaining > 0 && peek() != null;
+    }
+
+    /**
+     * Next key
+     *
+     * @return key
+     */
+    @NonNull
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        return buffer.poll();
+    }
+
+    /**
+     * Next keys, up to the page size
+     *
+     * @return keys, empty at the end
+     */
+    @NonNull
+    public List<String> nextPage() {
+        List<String> keys = new ArrayList<>();
+        while (keys.size() < pageSize && hasNext()) {
+            keys.add(next());
+        }
+        return keys;
+    }
+
+    private String peek() {
+        while (buffer.isEmpty() && !exhausted) {
+            try {
+                fetch();
+            } catch (Exception e) {
+                throw new RuntimeException("Scan { prefix = " + prefix + " } failed", e);
+            }
+        }
+        return buffer.peek();
+    }
+
+    private void fetch() throws Exception {
+        List<String> keys = new ArrayList<>(pageSize + 1);
+        database.beginRead();
+        try {
+            DB db = database.get();
+            String from = lastKey != null ? lastKey : (reverse ? upperBound : prefix);
+            KeyIterator iterator = reverse ? db.findKeysBetweenReverseIterator(from, prefix)
+                    : db.findKeysBetweenIterator(from, upperBound);
+            try {
+                // one more, the range starts with the last key when re-seeking
+                while (keys.size() < pageSize + 1 && iterator.hasNext()) {
+                    String[] page = iterator.next(pageSize + 1 - keys.size());
+                    for (String key : page) {
+                        keys.add(key);
+                    }
+                }
+            } finally {
+                iterator.close();
+            }
+        } finally {
+            database.endRead();
+        }
+        if (keys.size() < pageSize + 1) {
+            exhausted = true;
+        }
+        for (String key : keys) {
+            if (key.equals(lastKey)) {
+                continue;
+            }
+            if (!key.startsWith(prefix)) {
+                exhausted = true;
+                break;
+            }
+            lastKey = key;
+            if (!hideInternalKeys || !key.startsWith(Panther.INTERNAL_KEY_PREFIX)) {
+                buffer.add(key);
+            }
+        }
+    }
+}
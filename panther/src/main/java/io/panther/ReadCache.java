@@ -0,0 +1,182 @@
+package io.panther;
+
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/8 15:20
+ * <p>
+ * Read-through cache of decoded database values, bounded by the bytes of the decoded payloads.
+ * <p>
+ * Values are shared between readers, only enable it for prefixes whose values are not modified
+ * after reading. Every invalidation bumps a stamp, a reader only fills the cache when the stamp
+ * did not change during its database read, so a stale value is never cached.
+ */
+final class ReadCache {
+    static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private final List<String> prefixes;
+    private final LruCache<String, CachedValue> cache;
+    private final AtomicLong stamp = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong prefetchedBytes = new AtomicLong();
+    private final AtomicLong prefetchHits = new AtomicLong();
+    private final AtomicLong prefetchUsed = new AtomicLong();
+
+    ReadCache(List<String> prefixes, int maxBytes) {
+        this.prefixes = prefixes;
+        this.cache = new LruCache<String, CachedValue>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, CachedValue value) {
+                return value.size;
+            }
+        };
+    }
+
+    /**
+     * Whether values of key are cached
+     *
+     * @param key key
+     * @return cacheable
+     */
+    boolean accepts(String key) {
+        for (int i = 0; i < prefixes.size(); i++) {
+            if (key.startsWith(prefixes.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cached value
+     *
+     * @param key       key
+     * @param dataClass class of data, or class of list element
+     * @param list      list value
+     * @return value, null if missed
+     */
+    @Nullable
+    Object get(String key, Class<?> dataClass, boolean list) {
+        CachedValue value = cache.get(key);
+        if (value != null && value.expiresAt != 0 && value.expiresAt <= System.currentTimeMillis()) {
+            cache.remove(key);
+            value = null;
+        }
+        if (value != null && value.dataClass == dataClass && value.list == list) {
+            hits.incrementAndGet();
+            if (value.used != null) {
+                prefetchHits.incrementAndGet();
+                if (value.used.compareAndSet(false, true)) {
+                    prefetchUsed.incrementAndGet();
+                }
+            }
+            return value.value;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stamp to take before reading database
+     *
+     * @return stamp
+     */
+    long stamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Fill the cache after a database read
+     *
+     * @param stamp     stamp taken before the read
+     * @param key       key
+     * @param dataClass class of data
+     * @param list      list value
+     * @param value     decoded value
+     * @param size      bytes of the decoded payload
+     * @param expiresAt expiry time of the record, 0 for never
+     */
+    void put(long stamp, String key, Class<?> dataClass, boolean list, Object value, int size, long expiresAt) {
+        put(stamp, key, new CachedValue(dataClass, list, value, Math.max(size, 1), expiresAt, false));
+    }
+
+    /**
+     * Fill the cache ahead of reads, a value already cached is kept
+     *
+     * @return whether the value is cached
+     */
+    boolean prefetch(long stamp, String key, Class<?> dataClass, boolean list, Object value, int size, long expiresAt) {
+        if (cache.get(key) != null) {
+            return false;
+        }
+        CachedValue cachedValue = new CachedValue(dataClass, list, value, Math.max(size, 1), expiresAt, true);
+        if (!put(stamp, key, cachedValue)) {
+            return false;
+        }
+        prefetched.incrementAndGet();
+        prefetchedBytes.addAndGet(cachedValue.size);
+        return true;
+    }
+
+    private boolean put(long stamp, String key, CachedValue value) {
+        if (stamp != this.stamp.get() || value.size > cache.maxSize()) {
+            return false;
+        }
+        cache.put(key, value);
+        // an invalidation may have slipped in between the check and the put
+        if (stamp != this.stamp.get()) {
+            cache.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    void invalidate(String key) {
+        stamp.incrementAndGet();
+        cache.remove(key);
+    }
+
+    void clear() {
+        stamp.incrementAndGet();
+        cache.evictAll();
+    }
+
+    void fillStats(PantherStats stats) {
+        stats.readCacheHits = hits.get();
+        stats.readCacheMisses = misses.get();
+        stats.readCacheBytes = cache.size();
+        stats.prefetchedEntries = prefetched.get();
+        stats.prefetchedBytes = prefetchedBytes.get();
+        stats.prefetchHits = prefetchHits.get();
+        stats.prefetchUsedEntries = prefetchUsed.get();
+    }
+
+    private static final class CachedValue {
+        final Class<?> dataClass;
+        final boolean list;
+        final Object value;
+        final int size;
+        final long expiresAt;
+        // whether a value filled by warm-up was read, null for values filled by reads
+        @Nullable
+        final AtomicBoolean used;
+
+        CachedValue(Class<?> dataClass, boolean list, Object value, int size, long expiresAt, boolean prefetched) {
+            this.dataClass = dataClass;
+            this.list = list;
+            this.value = value;
+            this.size = size;
+            this.expiresAt = expiresAt;
+            this.used = prefetched ? new AtomicBoolean() : null;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package io.panther;
+
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/2 10:30
+ * <p>
+ * Off-heap cache of stored records between the memory tiers and database. Records are appended
+ * to direct ByteBuffer slabs outside the Java heap and copied out and decoded on hit, so mid-sized
+ * values stay warm without growing the heap or paying database I/O.
+ * <p>
+ * When no slab has room the least recently read slab is dropped with all its records and reused.
+ * Space of overwritten records is reclaimed with their slab.
+ * <p>
+ * Uses the stamp protocol of {@link ReadCache}, a reader only fills the cache when no invalidation
+ * happened during its database read.
+ */
+final class SlabCache {
+    static final int SLAB_SIZE = 1024 * 1024;
+    // smaller records are cheap to read from database
+    static final int MIN_RECORD_LENGTH = 8 * 1024;
+
+    private final Slab[] slabs;
+    private final ConcurrentHashMap<String, Location> locations = new ConcurrentHashMap<>();
+    // read lock to copy records out, write lock to append and recycle slabs
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong stamp = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    // guarded by the write lock
+    private int current = -1;
+    private long evictions;
+    private long bytes;
+
+    SlabCache(int maxBytes) {
+        slabs = new Slab[Math.max(1, maxBytes / SLAB_SIZE)];
+    }
+
+    /**
+     * Whether a record of length is worth caching
+     */
+    static boolean accepts(int length) {
+        return length >= MIN_RECORD_LENGTH && length <= SLAB_SIZE;
+    }
+
+    /**
+     * Cached record
+     *
+     * @param key key
+     * @return copy of the record, null if missed
+     */
+    @Nullable
+    byte[] get(String key) {
+        Location location = locations.get(key);
+        if (location == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            Slab slab = slabs[location.slab];
+            // the slab may have been recycled after the lookup
+            if (slab == null || slab.generation != location.generation) {
+                misses.incrementAndGet();
+                return null;
+            }
+            byte[] record = new byte[location.length];
+            ByteBuffer buffer = slab.buffer.duplicate();
+            buffer.position(location.offset);
+            buffer.get(record);
+            slab.lastAccess = clock.incrementAndGet();
+            hits.incrementAndGet();
+            return record;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stamp to take before reading database
+     */
+    long stamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Fill the cache after a database read
+     *
+     * @param stamp  stamp taken before the read
+     * @param key    key
+     * @param record stored record
+     */
+    void put(long stamp, String key, byte[] record) {
+        if (!accepts(record.length) || stamp != this.stamp.get()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            // invalidations take the write lock, no one can slip in now
+            if (stamp != this.stamp.get()) {
+                return;
+            }
+            Slab slab = current >= 0 ? slabs[current] : null;
+            if (slab == null || slab.buffer.capacity() - slab.position < record.length) {
+                slab = nextSlab();
+            }
+            ByteBuffer buffer = slab.buffer.duplicate();
+            buffer.position(slab.position);
+            buffer.put(record);
+            Location old = locations.put(key, new Location(current, slab.generation, slab.position, record.length));
+            if (old != null) {
+                bytes -= old.length;
+            }
+            slab.keys.add(key);
+            slab.position += record.length;
+            slab.lastAccess = clock.incrementAndGet();
+            bytes += record.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void invalidate(String key) {
+        lock.writeLock().lock();
+        try {
+            stamp.incrementAndGet();
+            Location old = locations.remove(key);
+            if (old != null) {
+                bytes -= old.length;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void fillStats(PantherStats stats) {
+        stats.offHeapHits = hits.get();
+        stats.offHeapMisses = misses.get();
+        lock.readLock().lock();
+        try {
+            stats.offHeapBytes = bytes;
+            stats.offHeapEvictions = evictions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Allocate a slab while the budget allows, otherwise recycle the least recently read one,
+     * must be called inside the write lock
+     */
+    private Slab nextSlab() {
+        int next = -1;
+        for (int i = 0; i < slabs.length; i++) {
+            if (slabs[i] == null) {
+                next = i;
+                break;
+            }
+            if (i != current && (next < 0 || slabs[i].lastAccess < slabs[next].lastAccess)) {
+                next = i;
+            }
+        }
+        if (next < 0) {
+            // only one slab
+            next = current;
+        }
+        Slab slab = slabs[next];
+        if (slab == null) {
+            slab = new Slab(ByteBuffer.allocateDirect(SLAB_SIZE));
+            slabs[next] = slab;
+        } else {
+            for (String key : slab.keys) {
+                Location location = locations.get(key);
+                if (location != null && location.slab == next && location.generation == slab.generation) {
+                    locations.remove(key);
+                    bytes -= location.length;
+                    evictions++;
+                }
+            }
+            slab.keys.clear();
+            slab.position = 0;
+            slab.generation++;
+        }
+        current = next;
+        return slab;
+    }
+
+    private static final class Slab {
+        final ByteBuffer buffer;
+        // guarded by the write lock
+        final List<String> keys = new ArrayList<>();
+        int position;
+        int generation;
+        volatile long lastAccess;
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Location {
+        final int slab;
+        final int generation;
+        final int offset;
+        final int length;
+
+        Location(int slab, int generation, int offset, int length) {
+            this.slab = slab;
+            this.generation = generation;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.panther.util.ByteUtil;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/22 15:30
+ * <p>
+ * Atomic multi-key write, create by {@link Panther#batch()}
+ * <p>
+ * Values are encoded and compressed outside the database lock, then all puts and deletes
+ * are applied together, readers see all of them or none of them.
+ */
+public final class WriteBatch {
+    private final Panther panther;
+    final List<String> keys = new ArrayList<>();
+    // null means delete
+    final List<Object> values = new ArrayList<>();
+
+    WriteBatch(Panther panther) {
+        this.panther = panther;
+    }
+
+    /**
+     * Put data, null or empty string means delete
+     *
+     * @param key  key
+     * @param data data
+     * @return batch
+     */
+    public WriteBatch put(String key, @Nullable Object data) {
+        if (TextUtils.isEmpty(key)) {
+            throw new IllegalArgumentException("KEY can not be null !");
+        }
+        if (data instanceof String && TextUtils.isEmpty((String) data)) {
+            data = null;
+        }
+        keys.add(key);
+        values.add(data);
+        return this;
+    }
+
+    /**
+     * Delete key
+     *
+     * @param key key
+     * @return batch
+     */
+    public WriteBatch delete(String key) {
+        return put(key, null);
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Commit synchronously, the batch is empty afterwards
+     *
+     * @return result
+     */
+    public boolean commit() {
+        boolean result = panther.commitBatch(this);
+        keys.clear();
+        values.clear();
+        return result;
+    }
+
+    /**
+     * Commit asynchronously, the batch is empty afterwards and can be reused at once.
+     * The writes added so far are committed when the result is subscribed.
+     */
+    public Observable<Boolean> commitAsync() {
+        return commitAsync(panther.deliveryScheduler());
+    }
+
+    /**
+     * Commit asynchronously, the batch is empty afterwards and can be reused at once.
+     * The writes added so far are committed when the result is subscribed.
+     *
+     * @param deliverOn scheduler to deliver the result on, null to deliver on the write thread
+     */
+    public Observable<Boolean> commitAsync(@Nullable Scheduler deliverOn) {
+        return panther.commitBatchAsync(snapshot(), deliverOn);
+    }
+
+    /**
+     * Move the writes into a new batch, so the caller can keep adding while it commits
+     *
+     * @return batch of the writes so far
+     */
+    @NonNull
+    private WriteBatch snapshot() {
+        WriteBatch snapshot = new WriteBatch(panther);
+        snapshot.keys.addAll(keys);
+        snapshot.values.addAll(values);
+        keys.clear();
+        values.clear();
+        return snapshot;
+    }
+
+    /**
+     * Journal record of encoded batch, written in one put before the batch is applied
+     * <p>
+     * | count 4 | ( key length 4 | key | record length 4, -1 for delete | record ) ... |
+     *
+     * @param keys    keys
+     * @param records records, null for delete
+     * @return journal
+     */
+    @NonNull
+    static byte[] encodeJournal(List<String> keys, List<byte[]> records) {
+        int size = 4;
+        List<byte[]> keyBytes = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i).getBytes(DataEnvelope.UTF_8);
+            keyBytes.add(key);
+            byte[] record = records.get(i);
+            size += 8 + key.length + (record == null ? 0 : record.length);
+        }
+        byte[] journal = new byte[size];
+        ByteUtil.writeInt(journal, 0, keys.size());
+        int position = 4;
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keyBytes.get(i);
+            ByteUtil.writeInt(journal, position, key.length);
+            System.arraycopy(key, 0, journal, position + 4, key.length);
+            position += 4 + key.length;
+            byte[] record = records.get(i);
+            ByteUtil.writeInt(journal, position, record == null ? -1 : record.length);
+            position += 4;
+            if (record != null) {
+                System.arraycopy(record, 0, journal, position, record.length);
+                position += record.length;
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Decode journal into keys and records, a damaged journal is rejected as a whole
+     *
+     * @param journal journal
+     * @param keys    keys out
+     * @param records records out
+     */
+    static void decodeJournal(byte[] journal, List<String> keys, List<byte[]> records) {
+        int count = readLength(journal, 0);
+        int position = 4;
+        List<String> decodedKeys = new ArrayList<>();
+        List<byte[]> decodedRecords = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int keyLength = readLength(journal, position);
+            position += 4;
+            checkLength(journal, position, keyLength);
+            decodedKeys.add(new String(journal, position, keyLength, DataEnvelope.UTF_8));
+            position += keyLength;
+            checkLength(journal, position, 4);
+            int recordLength = ByteUtil.readInt(journal, position);
+            position += 4;
+            if (recordLength < 0) {
+                decodedRecords.add(null);
+            } else {
+                checkLength(journal, position, recordLength);
+                byte[] record = new byte[recordLength];
+                System.arraycopy(journal, position, record, 0, recordLength);
+                decodedRecords.add(record);
+                position += recordLength;
+            }
+        }
+        if (position != journal.length) {
+            throw new IllegalArgumentException("Damaged batch journal");
+        }
+        keys.addAll(decodedKeys);
+        records.addAll(decodedRecords);
+    }
+
+    private static int readLength(byte[] journal, int position) {
+        checkLength(journal, position, 4);
+        int length = ByteUtil.readInt(journal, position);
+        if (length < 0) {
+            throw new IllegalArgumentException("Damaged batch journal");
+        }
+        return length;
+    }
+
+    private static void checkLength(byte[] journal, int position, int length) {
+        if (length < 0 || length > journal.length - position) {
+            throw new IllegalArgumentException("Damaged batch journal");
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.AsyncSubject;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/18 10:40
+ * <p>
+ * Bounded write-behind queue, async writes are coalesced by key and
+ * group committed by a single writer thread under one lock acquisition.
+ * <p>
+ * Lock order: commit lock, then the queue
+ */
+final class WriteBehindQueue {
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    interface Store {
+        /**
+         * Encode data into a record, called outside the commit lock
+         */
+        @NonNull
+        byte[] encode(String key, @NonNull Object data) throws Exception;
+
+        /**
+         * Take the commit lock, a batch of writes is committed in one acquisition
+         */
+        void beginCommit() throws Exception;
+
+        void endCommit();
+
+        /**
+         * Write one record, called inside the commit lock, record null means delete
+         */
+        void write(String key, @Nullable byte[] record) throws Exception;
+
+        void onBatchCommitted(int size, long costMillis);
+
+        void onWriteFailed(String key, Throwable error);
+    }
+
+    private final Store store;
+    private final int capacity;
+    // pending writes in enqueue order, guarded by this
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+    private long sequence;
+
+    WriteBehindQueue(Store store, int capacity) {
+        this.store = store;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "Panther-WriteBehind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Enqueue a write, never blocks the caller. While the queue is full only writes of queued keys
+     * are accepted, they replace the queued value.
+     *
+     * @param key  key
+     * @param data data, null means delete
+     * @return result of this write, emits when committed, fails with
+     * {@link RejectedExecutionException} if the queue is full
+     */
+    Observable<Boolean> enqueue(String key, @Nullable Object data) {
+        AsyncSubject<Boolean> result = AsyncSubject.create();
+        PendingWrite superseded;
+        synchronized (this) {
+            if (pending.size() >= capacity && !pending.containsKey(key)) {
+                return Observable.error(new RejectedExecutionException("Write behind queue is full"));
+            }
+            PendingWrite write = new PendingWrite(key, data, ++sequence, result);
+            // re-insert to keep the map ordered by sequence
+            superseded = pending.remove(key);
+            pending.put(key, write);
+            notifyAll();
+        }
+        if (superseded != null) {
+            // the newer value wins, the older write is done
+            superseded.complete(true);
+        }
+        return result;
+    }
+
+    /**
+     * Pending write of key
+     *
+     * @param key key
+     * @return pending write, null if none
+     */
+    @Nullable
+    synchronized PendingWrite get(String key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Drop the pending write of key, must be called inside the commit lock
+     * before a synchronous write of the same key
+     *
+     * @param key key
+     */
+    void discard(String key) {
+        PendingWrite write;
+        synchronized (this) {
+            write = pending.remove(key);
+            if (write != null) {
+                notifyAll();
+            }
+        }
+        if (write != null) {
+            write.complete(true);
+        }
+    }
+
+    /**
+     * Merge pending keys with prefix into the keys found in database
+     *
+     * @param prefix prefix
+     * @param keys   keys in database
+     * @return keys
+     */
+    @NonNull
+    synchronized List<String> mergeKeys(String prefix, List<String> keys) {
+        if (pending.isEmpty()) {
+            return keys;
+        }
+        List<String> merged = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (!pending.containsKey(key)) {
+                merged.add(key);
+            }
+        }
+        for (PendingWrite write : pending.values()) {
+            if (write.data != null && write.key.startsWith(prefix)) {
+                merged.add(write.key);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Block until every write enqueued before is committed
+     */
+    void flush() {
+        synchronized (this) {
+            long target = sequence;
+            boolean interrupted = false;
+            while (!pending.isEmpty() && pending.values().iterator().next().sequence <= target) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    synchronized int size() {
+        return pending.size();
+    }
+
+    private void drainLoop() {
+        List<PendingWrite> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (true) {
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignore) {
+
+                    }
+                }
+                // entries stay visible to readers until committed
+                Iterator<PendingWrite> iterator = pending.values().iterator();
+                while (iterator.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                    batch.add(iterator.next());
+                }
+            }
+            try {
+                commit(batch);
+            } catch (Throwable e) {
+                for (PendingWrite write : batch) {
+                    store.onWriteFailed(write.key, e);
+                    write.complete(false);
+                }
+            }
+            synchronized (this) {
+                for (PendingWrite write : batch) {
+                    if (pending.get(write.key) == write) {
+                        pending.remove(write.key);
+                    }
+                }
+                notifyAll();
+            }
+            for (PendingWrite write : batch) {
+                write.complete(write.success);
+            }
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) throws Exception {
+        // encode outside the lock
+        for (PendingWrite write : batch) {
+            try {
+                write.record();
+            } catch (Exception e) {
+                write.error = e;
+            }
+        }
+        long start = System.currentTimeMillis();
+        int committed = 0;
+        store.beginCommit();
+        try {
+            for (PendingWrite write : batch) {
+                synchronized (this) {
+                    // superseded or discarded by a later write
+                    if (pending.get(write.key) != write) {
+                        continue;
+                    }
+                }
+                if (write.error == null) {
+                    try {
+                        store.write(write.key, write.record);
+                        write.success = true;
+                        committed++;
+                    } catch (Exception e) {
+                        write.error = e;
+                    }
+                }
+                if (write.error != null) {
+                    store.onWriteFailed(write.key, write.error);
+                }
+            }
+        } finally {
+            store.endCommit();
+        }
+        store.onBatchCommitted(committed, System.currentTimeMillis() - start);
+    }
+
+    final class PendingWrite {
+        final String key;
+        @Nullable
+        final Object data;
+        final long sequence;
+        private final AsyncSubject<Boolean> result;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private byte[] record;
+        private boolean encoded;
+        private boolean success;
+        private Exception error;
+
+        private PendingWrite(String key, @Nullable Object data, long sequence, AsyncSubject<Boolean> result) {
+            this.key = key;
+            this.data = data;
+            this.sequence = sequence;
+            this.result = result;
+        }
+
+        /**
+         * Encoded record, encoded once by the writer or the first reader
+         *
+         * @return record, null for delete
+         */
+        @Nullable
+        synchronized byte[] record() throws Exception {
+            if (!encoded) {
+                record = data == null ? null : store.encode(key, data);
+                encoded = true;
+            }
+            return record;
+        }
+
+        private void complete(boolean value) {
+            if (done.compareAndSet(false, true)) {
+                result.onNext(value);
+                result.onComplete();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package io.panther.codec;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import io.panther.util.JSONUtil;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/15 14:20
+ * <p>
+ * Gson JSON codec, the default one
+ */
+public class GsonCodec implements PantherCodec {
+    public static final int ID = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @NonNull
+    @Override
+    public byte[] encode(@NonNull Object data) throws Exception {
+        String dataJson = JSONUtil.toJSONString(data);
+        if (dataJson == null) {
+            throw new IllegalArgumentException("Data to json failed");
+        }
+        return dataJson.getBytes(UTF_8);
+    }
+
+    @Nullable
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> dataClass) throws Exception {
+        return JSONUtil.parseObject(new String(data, offset, length, UTF_8), dataClass);
+    }
+
+    @Nullable
+    @Override
+    public <T> List<T> decodeList(byte[] data, int offset, int length, Class<T> dataClass) throws Exception {
+        return JSONUtil.parseList(new String(data, offset, length, UTF_8), dataClass);
+    }
+}
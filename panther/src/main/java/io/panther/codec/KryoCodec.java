@@ -0,0 +1,110 @@
+package io.panther.codec;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.util.List;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/15 15:10
+ * <p>
+ * Kryo binary codec, much cheaper than Gson for large bean graphs.
+ * Kryo is not thread safe, every thread owns its Kryo instance and buffers.
+ * Override {@link #newKryo()} to register classes or serializers.
+ */
+@SuppressWarnings("unchecked")
+public class KryoCodec implements PantherCodec {
+    public static final int ID = 2;
+
+    private static final int BUFFER_SIZE = 4 * 1024;
+    // output buffers grown larger than this are not kept by the thread
+    private static final int MAX_KEPT_BUFFER_SIZE = 256 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ThreadLocal<KryoHolder> holders = new ThreadLocal<KryoHolder>() {
+        @Override
+        protected KryoHolder initialValue() {
+            return new KryoHolder(newKryo());
+        }
+    };
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    /**
+     * Create a Kryo instance, called once for each thread
+     *
+     * @return kryo
+     */
+    @NonNull
+    protected Kryo newKryo() {
+        Kryo kryo = new Kryo();
+        // beans without no-arg constructor
+        ((Kryo.DefaultInstantiatorStrategy) kryo.getInstantiatorStrategy())
+                .setFallbackInstantiatorStrategy(new StdInstantiatorStrategy());
+        return kryo;
+    }
+
+    @NonNull
+    @Override
+    public byte[] encode(@NonNull Object data) throws Exception {
+        KryoHolder holder = holders.get();
+        Output output = holder.output;
+        output.clear();
+        try {
+            holder.kryo.writeClassAndObject(output, data);
+            return output.toBytes();
+        } finally {
+            if (output.getBuffer().length > MAX_KEPT_BUFFER_SIZE) {
+                holder.output = new Output(BUFFER_SIZE, -1);
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> dataClass) throws Exception {
+        Object value = read(data, offset, length);
+        if (value == null || dataClass == Object.class) {
+            return (T) value;
+        }
+        return dataClass.cast(value);
+    }
+
+    @Nullable
+    @Override
+    public <T> List<T> decodeList(byte[] data, int offset, int length, Class<T> dataClass) throws Exception {
+        return (List<T>) read(data, offset, length);
+    }
+
+    private Object read(byte[] data, int offset, int length) {
+        KryoHolder holder = holders.get();
+        Input input = holder.input;
+        input.setBuffer(data, offset, length);
+        try {
+            return holder.kryo.readClassAndObject(input);
+        } finally {
+            input.setBuffer(EMPTY);
+        }
+    }
+
+    private static final class KryoHolder {
+        private final Kryo kryo;
+        private final Input input = new Input();
+        private Output output = new Output(BUFFER_SIZE, -1);
+
+        private KryoHolder(Kryo kryo) {
+            this.kryo = kryo;
+        }
+    }
+}
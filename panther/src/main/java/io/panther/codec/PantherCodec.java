@@ -0,0 +1,64 @@
+package io.panther.codec;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/15 14:02
+ * <p>
+ * Value codec, register it by {@link io.panther.PantherConfiguration.Builder#codec(PantherCodec)}
+ * or {@link io.panther.PantherConfiguration.Builder#codec(Class, PantherCodec)}
+ * <p>
+ * The id is stored with every record, so records written by different codecs can be read side by side.
+ * Ids 0 ~ 15 are reserved by Panther, custom codecs use 16 ~ 255 and must never change the id.
+ * <p>
+ * Implementations must be thread safe.
+ */
+public interface PantherCodec {
+    int MIN_CUSTOM_ID = 16;
+    int MAX_ID = 255;
+
+    /**
+     * Id stored with the record
+     *
+     * @return id
+     */
+    int id();
+
+    /**
+     * Encode data
+     *
+     * @param data data, not null
+     * @return bytes
+     */
+    @NonNull
+    byte[] encode(@NonNull Object data) throws Exception;
+
+    /**
+     * Decode data
+     *
+     * @param data      buffer
+     * @param offset    offset of payload
+     * @param length    length of payload
+     * @param dataClass class of data
+     * @return data
+     */
+    @Nullable
+    <T> T decode(byte[] data, int offset, int length, Class<T> dataClass) throws Exception;
+
+    /**
+     * Decode list data
+     *
+     * @param data      buffer
+     * @param offset    offset of payload
+     * @param length    length of payload
+     * @param dataClass class of list element
+     * @return list data
+     */
+    @Nullable
+    <T> List<T> decodeList(byte[] data, int offset, int length, Class<T> dataClass) throws Exception;
+}
@@ -0,0 +1,125 @@
+package io.panther.compress;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/25 11:02
+ * <p>
+ * Compression of record payload, the id is stored with every record
+ */
+public enum Compression {
+    /**
+     * Not compressed
+     */
+    NONE(0, null),
+    /**
+     * GZIP stream, format of old records
+     */
+    GZIP(1, new GZIPCompressor()),
+    /**
+     * Deflate with reused Deflater and Inflater, good ratio
+     */
+    DEFLATE(2, new DeflateCompressor()),
+    /**
+     * LZ4 block, much faster with lower ratio
+     */
+    LZ4(3, new LZ4Compressor());
+
+    public final int id;
+    @Nullable
+    private final Compressor compressor;
+
+    Compression(int id, @Nullable Compressor compressor) {
+        this.id = id;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Compression of id
+     *
+     * @param id id stored in record
+     * @return compression, null if unknown
+     */
+    @Nullable
+    public static Compression of(int id) {
+        for (Compression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compress data
+     *
+     * @param data   data
+     * @param offset offset
+     * @param length length
+     * @return compressed data
+     */
+    @NonNull
+    public byte[] compress(byte[] data, int offset, int length) throws Exception {
+        if (compressor == null) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return copy;
+        }
+        return compressor.compress(data, offset, length);
+    }
+
+    /**
+     * Compress data with a preset dictionary, only DEFLATE supports it
+     *
+     * @param data       data
+     * @param offset     offset
+     * @param length     length
+     * @param dictionary dictionary
+     * @return compressed data
+     */
+    @NonNull
+    public byte[] compress(byte[] data, int offset, int length, @NonNull byte[] dictionary) throws Exception {
+        if (this != DEFLATE) {
+            throw new UnsupportedOperationException(name() + " does not support dictionary");
+        }
+        return DeflateCompressor.compress(data, offset, length, dictionary);
+    }
+
+    /**
+     * Decompress data compressed with a preset dictionary, only DEFLATE supports it
+     *
+     * @param data       compressed data
+     * @param offset     offset
+     * @param length     length
+     * @param dictionary dictionary
+     * @return data
+     */
+    @NonNull
+    public byte[] decompress(byte[] data, int offset, int length, @NonNull byte[] dictionary) throws Exception {
+        if (this != DEFLATE) {
+            throw new UnsupportedOperationException(name() + " does not support dictionary");
+        }
+        return DeflateCompressor.decompress(data, offset, length, dictionary);
+    }
+
+    /**
+     * Decompress data
+     *
+     * @param data   compressed data
+     * @param offset offset
+     * @param length length
+     * @return data
+     */
+    @NonNull
+    public byte[] decompress(byte[] data, int offset, int length) throws Exception {
+        if (compressor == null) {
+            byte[] copy = new byte[length];
+            System.arraycopy(data, offset, copy, 0, length);
+            return copy;
+        }
+        return compressor.decompress(data, offset, length);
+    }
+}
@@ -0,0 +1,18 @@
+package io.panther.compress;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/25 11:10
+ * <p>
+ * Byte array compressor, implementations must be thread safe
+ */
+interface Compressor {
+    @NonNull
+    byte[] compress(byte[] data, int offset, int length) throws Exception;
+
+    @NonNull
+    byte[] decompress(byte[] data, int offset, int length) throws Exception;
+}
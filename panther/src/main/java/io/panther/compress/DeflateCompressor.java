@@ -0,0 +1,161 @@
+package io.panther.compress;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.panther.util.ByteUtil;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/25 11:50
+ * <p>
+ * Deflate compressor, Deflaters and Inflaters are reused from small pools, the ones not kept are
+ * ended at once so their native zlib memory is not left to GC
+ * <p>
+ * | original length 4 | zlib stream |
+ */
+final class DeflateCompressor implements Compressor {
+    private static final int MAX_POOLED = 4;
+    // a zlib stream expands at most about 1032 times
+    private static final int MAX_RATIO = 1032;
+
+    // guarded by themselves
+    private static final ArrayDeque<Deflater> DEFLATERS = new ArrayDeque<>(MAX_POOLED);
+    private static final ArrayDeque<Inflater> INFLATERS = new ArrayDeque<>(MAX_POOLED);
+
+    @NonNull
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) throws Exception {
+        return compress(data, offset, length, null);
+    }
+
+    @NonNull
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) throws Exception {
+        return decompress(data, offset, length, null);
+    }
+
+    /**
+     * Compress with an optional preset dictionary
+     */
+    @NonNull
+    static byte[] compress(byte[] data, int offset, int length, @Nullable byte[] dictionary) {
+        Deflater deflater = acquireDeflater();
+        byte[] buffer = ScratchBuffer.acquire(length / 2 + 64);
+        int position = 4;
+        boolean reusable = false;
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (position == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                position += deflater.deflate(buffer, position, buffer.length - position);
+            }
+            reusable = true;
+        } finally {
+            releaseDeflater(deflater, reusable);
+        }
+        ByteUtil.writeInt(buffer, 0, length);
+        byte[] compressed = Arrays.copyOf(buffer, position);
+        ScratchBuffer.release(buffer);
+        return compressed;
+    }
+
+    /**
+     * Decompress with an optional preset dictionary
+     */
+    @NonNull
+    static byte[] decompress(byte[] data, int offset, int length, @Nullable byte[] dictionary)
+            throws DataFormatException {
+        if (length < 4) {
+            throw new DataFormatException("Truncated data");
+        }
+        int originalLength = ByteUtil.readInt(data, offset);
+        if (originalLength < 0 || originalLength > (long) (length - 4) * MAX_RATIO) {
+            throw new DataFormatException("Bad length " + originalLength);
+        }
+        Inflater inflater = acquireInflater();
+        boolean reusable = false;
+        try {
+            inflater.setInput(data, offset + 4, length - 4);
+            byte[] decompressed = new byte[originalLength];
+            int position = 0;
+            while (position < originalLength) {
+                int read = inflater.inflate(decompressed, position, originalLength - position);
+                if (read == 0 && inflater.needsDictionary()) {
+                    if (dictionary == null) {
+                        throw new DataFormatException("Dictionary needed");
+                    }
+                    inflater.setDictionary(dictionary);
+                    dictionary = null;
+                } else if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("Truncated data");
+                }
+                position += read;
+            }
+            reusable = true;
+            return decompressed;
+        } finally {
+            releaseInflater(inflater, reusable);
+        }
+    }
+
+    @NonNull
+    private static Deflater acquireDeflater() {
+        Deflater deflater;
+        synchronized (DEFLATERS) {
+            deflater = DEFLATERS.pollFirst();
+        }
+        return deflater != null ? deflater : new Deflater(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Return a deflater to the pool, or end it if the pool is full or it failed
+     */
+    private static void releaseDeflater(Deflater deflater, boolean reusable) {
+        if (reusable) {
+            deflater.reset();
+            synchronized (DEFLATERS) {
+                if (DEFLATERS.size() < MAX_POOLED) {
+                    DEFLATERS.addFirst(deflater);
+                    return;
+                }
+            }
+        }
+        deflater.end();
+    }
+
+    @NonNull
+    private static Inflater acquireInflater() {
+        Inflater inflater;
+        synchronized (INFLATERS) {
+            inflater = INFLATERS.pollFirst();
+        }
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    private static void releaseInflater(Inflater inflater, boolean reusable) {
+        if (reusable) {
+            inflater.reset();
+            synchronized (INFLATERS) {
+                if (INFLATERS.size() < MAX_POOLED) {
+                    INFLATERS.addFirst(inflater);
+                    return;
+                }
+            }
+        }
+        inflater.end();
+    }
+}
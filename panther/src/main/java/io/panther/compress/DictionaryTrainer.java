@@ -0,0 +1,139 @@
+package io.panther.compress;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/8/1 16:40
+ * <p>
+ * Build a preset dictionary for {@link Compression#DEFLATE} from sample values
+ * <p>
+ * 8 byte sequences found in many samples are grown into segments, the best segments fill the
+ * dictionary, best at the end where deflate reaches them with the shortest distance.
+ */
+public final class DictionaryTrainer {
+    public static final int DEFAULT_DICTIONARY_SIZE = 8 * 1024;
+
+    private static final int GRAM = 8;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * Train a dictionary
+     *
+     * @param samples samples
+     * @param maxSize max size of dictionary
+     * @return dictionary, empty if samples share nothing
+     */
+    @NonNull
+    public static byte[] train(List<byte[]> samples, int maxSize) {
+        // in how many samples each 8 byte sequence appears
+        Map<Long, int[]> frequencies = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (byte[] sample : samples) {
+            seen.clear();
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                Long gram = gramAt(sample, i);
+                if (seen.add(gram)) {
+                    int[] frequency = frequencies.get(gram);
+                    if (frequency == null) {
+                        frequencies.put(gram, new int[]{1});
+                    } else {
+                        frequency[0]++;
+                    }
+                }
+            }
+        }
+        int minFrequency = Math.max(2, samples.size() / 4);
+        // segments of consecutive frequent sequences
+        List<Segment> segments = new ArrayList<>();
+        Set<String> contents = new HashSet<>();
+        for (byte[] sample : samples) {
+            int start = -1;
+            long score = 0;
+            for (int i = 0; i + GRAM <= sample.length + 1; i++) {
+                int[] frequency = i + GRAM <= sample.length ? frequencies.get(gramAt(sample, i)) : null;
+                if (frequency != null && frequency[0] >= minFrequency) {
+                    if (start < 0) {
+                        start = i;
+                        score = 0;
+                    }
+                    score += frequency[0];
+                } else if (start >= 0) {
+                    int end = i - 1 + GRAM;
+                    Segment segment = new Segment(sample, start, end, score);
+                    if (contents.add(segment.content())) {
+                        segments.add(segment);
+                    }
+                    start = -1;
+                }
+            }
+        }
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment o1, Segment o2) {
+                return o1.score < o2.score ? 1 : (o1.score == o2.score ? 0 : -1);
+            }
+        });
+        List<Segment> chosen = new ArrayList<>();
+        int size = 0;
+        for (Segment segment : segments) {
+            int length = segment.end - segment.start;
+            if (size + length > maxSize) {
+                continue;
+            }
+            chosen.add(segment);
+            size += length;
+        }
+        byte[] dictionary = new byte[size];
+        int position = 0;
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            Segment segment = chosen.get(i);
+            int length = segment.end - segment.start;
+            System.arraycopy(segment.sample, segment.start, dictionary, position, length);
+            position += length;
+        }
+        return dictionary;
+    }
+
+    private static Long gramAt(byte[] data, int offset) {
+        long gram = 0;
+        for (int i = 0; i < GRAM; i++) {
+            gram = (gram << 8) | (data[offset + i] & 0xFF);
+        }
+        return gram;
+    }
+
+    private static final class Segment {
+        final byte[] sample;
+        final int start;
+        final int end;
+        final long score;
+
+        Segment(byte[] sample, int start, int end, long score) {
+            this.sample = sample;
+            this.start = start;
+            this.end = end;
+            this.score = score;
+        }
+
+        String content() {
+            try {
+                return new String(sample, start, end - start, "ISO-8859-1");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
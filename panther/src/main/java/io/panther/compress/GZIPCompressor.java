@@ -0,0 +1,39 @@
+package io.panther.compress;
+
+import android.support.annotation.NonNull;
+
+import io.panther.util.GZIPUtil;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/25 11:20
+ * <p>
+ * GZIP stream compressor
+ */
+final class GZIPCompressor implements Compressor {
+    @NonNull
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) throws Exception {
+        byte[] input = data;
+        if (offset != 0 || length != data.length) {
+            input = new byte[length];
+            System.arraycopy(data, offset, input, 0, length);
+        }
+        byte[] compressed = GZIPUtil.compress(input);
+        if (compressed == null) {
+            throw new IllegalStateException("GZIP failed");
+        }
+        return compressed;
+    }
+
+    @NonNull
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) throws Exception {
+        byte[] decompressed = GZIPUtil.decompress(data, offset, length);
+        if (decompressed == null) {
+            throw new IllegalStateException("GZIP failed");
+        }
+        return decompressed;
+    }
+}
@@ -0,0 +1,200 @@
+package io.panther.compress;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import io.panther.util.ByteUtil;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/26 10:15
+ * <p>
+ * Pure Java LZ4 block compressor, single pass hash matching, no native library needed
+ * <p>
+ * | original length 4 | LZ4 block |
+ */
+final class LZ4Compressor implements Compressor {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MIN_LENGTH = MF_LIMIT + 1;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 12;
+    private static final int ML_MASK = 0x0F;
+    private static final int RUN_MASK = 0x0F;
+    // every length byte of a sequence adds at most 255 bytes
+    private static final int MAX_RATIO = 255;
+
+    // positions + 1 of the last 4 byte sequences, 0 means empty
+    private static final ThreadLocal<int[]> HASH_TABLES = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    @NonNull
+    @Override
+    public byte[] compress(byte[] data, int offset, int length) throws Exception {
+        byte[] buffer = ScratchBuffer.acquire(4 + length + length / 255 + 16);
+        ByteUtil.writeInt(buffer, 0, length);
+        int end = compressBlock(data, offset, length, buffer, 4);
+        byte[] compressed = Arrays.copyOf(buffer, end);
+        ScratchBuffer.release(buffer);
+        return compressed;
+    }
+
+    @NonNull
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) throws Exception {
+        if (length < 4) {
+            throw new DataFormatException("Truncated data");
+        }
+        int originalLength = ByteUtil.readInt(data, offset);
+        if (originalLength < 0 || originalLength > (long) (length - 4) * MAX_RATIO) {
+            throw new DataFormatException("Bad length " + originalLength);
+        }
+        byte[] decompressed = new byte[originalLength];
+        decompressBlock(data, offset + 4, offset + length, decompressed);
+        return decompressed;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8)
+                | ((buffer[offset + 2] & 0xFF) << 16) | ((buffer[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int writeLength(byte[] dst, int dstOffset, int length) {
+        while (length >= 0xFF) {
+            dst[dstOffset++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dst[dstOffset++] = (byte) length;
+        return dstOffset;
+    }
+
+    private static int writeLiterals(byte[] src, int anchor, int literalLength, byte[] dst, int dstOffset,
+                                     int matchLengthToken) {
+        int tokenOffset = dstOffset++;
+        if (literalLength >= RUN_MASK) {
+            dst[tokenOffset] = (byte) ((RUN_MASK << 4) | matchLengthToken);
+            dstOffset = writeLength(dst, dstOffset, literalLength - RUN_MASK);
+        } else {
+            dst[tokenOffset] = (byte) ((literalLength << 4) | matchLengthToken);
+        }
+        System.arraycopy(src, anchor, dst, dstOffset, literalLength);
+        return dstOffset + literalLength;
+    }
+
+    /**
+     * Compress a block, dst must have room for length + length / 255 + 16 bytes
+     *
+     * @return end offset in dst
+     */
+    private static int compressBlock(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+        int srcEnd = srcOffset + length;
+        int anchor = srcOffset;
+        if (length >= MIN_LENGTH) {
+            int[] table = HASH_TABLES.get();
+            Arrays.fill(table, 0);
+            int matchFindLimit = srcEnd - MF_LIMIT;
+            int matchLimit = srcEnd - LAST_LITERALS;
+            int position = srcOffset;
+            while (position < matchFindLimit) {
+                int sequence = readInt(src, position);
+                int h = hash(sequence);
+                int reference = table[h] - 1;
+                table[h] = position + 1;
+                if (reference < 0 || position - reference > MAX_DISTANCE || readInt(src, reference) != sequence) {
+                    position++;
+                    continue;
+                }
+                // extend backwards
+                while (position > anchor && reference > srcOffset && src[position - 1] == src[reference - 1]) {
+                    position--;
+                    reference--;
+                }
+                // extend forwards
+                int matchLength = MIN_MATCH;
+                while (position + matchLength < matchLimit && src[position + matchLength] == src[reference + matchLength]) {
+                    matchLength++;
+                }
+                int extraMatchLength = matchLength - MIN_MATCH;
+                dstOffset = writeLiterals(src, anchor, position - anchor, dst, dstOffset,
+                        Math.min(extraMatchLength, ML_MASK));
+                int distance = position - reference;
+                dst[dstOffset++] = (byte) distance;
+                dst[dstOffset++] = (byte) (distance >>> 8);
+                if (extraMatchLength >= ML_MASK) {
+                    dstOffset = writeLength(dst, dstOffset, extraMatchLength - ML_MASK);
+                }
+                position += matchLength;
+                anchor = position;
+            }
+        }
+        // last literals
+        return writeLiterals(src, anchor, srcEnd - anchor, dst, dstOffset, 0);
+    }
+
+    private static void decompressBlock(byte[] src, int srcOffset, int srcEnd, byte[] dst) throws DataFormatException {
+        int dstOffset = 0;
+        int dstEnd = dst.length;
+        try {
+            while (true) {
+                int token = src[srcOffset++] & 0xFF;
+                // literals
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[srcOffset++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 0xFF);
+                }
+                System.arraycopy(src, srcOffset, dst, dstOffset, literalLength);
+                srcOffset += literalLength;
+                dstOffset += literalLength;
+                if (srcOffset >= srcEnd) {
+                    break;
+                }
+                // match
+                int distance = (src[srcOffset] & 0xFF) | ((src[srcOffset + 1] & 0xFF) << 8);
+                srcOffset += 2;
+                int matchLength = token & ML_MASK;
+                if (matchLength == ML_MASK) {
+                    int b;
+                    do {
+                        b = src[srcOffset++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 0xFF);
+                }
+                matchLength += MIN_MATCH;
+                int reference = dstOffset - distance;
+                if (distance == 0 || reference < 0 || dstOffset + matchLength > dstEnd) {
+                    throw new DataFormatException("Malformed LZ4 block");
+                }
+                if (distance >= matchLength) {
+                    System.arraycopy(dst, reference, dst, dstOffset, matchLength);
+                    dstOffset += matchLength;
+                } else {
+                    // overlapping copy
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[dstOffset++] = dst[reference++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new DataFormatException("Malformed LZ4 block");
+        }
+        if (dstOffset != dstEnd || srcOffset != srcEnd) {
+            throw new DataFormatException("Malformed LZ4 block");
+        }
+    }
+}
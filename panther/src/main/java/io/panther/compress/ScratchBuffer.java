@@ -0,0 +1,38 @@
+package io.panther.compress;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/7/25 11:35
+ * <p>
+ * Per thread scratch buffer, large buffers are not kept
+ */
+final class ScratchBuffer {
+    private static final int MAX_KEPT_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private ScratchBuffer() {
+    }
+
+    /**
+     * Scratch buffer of at least size bytes, owned by current thread until {@link #release(byte[])}
+     *
+     * @param size min size
+     * @return buffer
+     */
+    static byte[] acquire(int size) {
+        byte[] buffer = BUFFERS.get();
+        if (buffer == null || buffer.length < size) {
+            return new byte[Math.max(size, 4096)];
+        }
+        BUFFERS.set(null);
+        return buffer;
+    }
+
+    static void release(byte[] buffer) {
+        if (buffer.length <= MAX_KEPT_SIZE) {
+            BUFFERS.set(buffer);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.panther.util;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/9 16:10
+ * <p>
+ * Big-endian ints and longs in byte arrays, shared by the binary formats of records,
+ * journals and checkpoints
+ */
+public final class ByteUtil {
+
+    private ByteUtil() {
+    }
+
+    public static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    public static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    public static void writeLong(byte[] buffer, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    public static long readLong(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
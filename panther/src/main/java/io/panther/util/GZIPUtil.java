@@ -14,6 +14,42 @@ import java.util.zip.GZIPOutputStream;
  */
 
 public class GZIPUtil {
+    @Nullable
+    public static byte[] compress(byte[] data) {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(data.length / 2 + 32);
+            GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
+            gzipOutputStream.write(data);
+            gzipOutputStream.close();
+            return byteArrayOutputStream.toByteArray();
+        } catch (Exception ignore) {
+            return null;
+        }
+    }
+
+    @Nullable
+    public static byte[] decompress(byte[] data, int offset, int length) {
+        if (data == null || length <= 0) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(length * 4);
+            GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(data, offset, length));
+            byte[] b = new byte[4096];
+            int read;
+            while (-1 != (read = gzipInputStream.read(b))) {
+                byteArrayOutputStream.write(b, 0, read);
+            }
+            gzipInputStream.close();
+            return byteArrayOutputStream.toByteArray();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     @Nullable
     public static String compress(String data) {
         if (TextUtils.isEmpty(data)) {
@@ -38,20 +74,9 @@ public class GZIPUtil {
             return null;
         }
         try {
-            String decompressedStr = "";
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data.getBytes("ISO-8859-1"));
-            GZIPInputStream gzipInputStream = new GZIPInputStream(byteArrayInputStream);
-            byte[] b = new byte[256];
-            int length = -1;
-            while (-1 != (length = gzipInputStream.read(b))) {
-                byteArrayOutputStream.write(b, 0, length);
-            }
-            decompressedStr = byteArrayOutputStream.toString("UTF-8");
-            byteArrayOutputStream.close();
-            byteArrayInputStream.close();
-            gzipInputStream.close();
-            return decompressedStr;
+            byte[] compressed = data.getBytes("ISO-8859-1");
+            byte[] decompressed = decompress(compressed, 0, compressed.length);
+            return decompressed == null ? null : new String(decompressed, "UTF-8");
         } catch (Exception e) {
             return null;
         }
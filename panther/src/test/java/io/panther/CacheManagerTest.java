@@ -0,0 +1,218 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/11 16:10
+ */
+public class CacheManagerTest {
+    private final Map<String, byte[]> store = new HashMap<>();
+    private final List<String> evicted = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch evictedOnce = new CountDownLatch(1);
+    private final DictionaryManager.Storage storage = new DictionaryManager.Storage() {
+        @Override
+        public byte[] read(String key) {
+            return store.get(key);
+        }
+
+        @Override
+        public void write(String key, byte[] value) {
+            store.put(key, value);
+        }
+    };
+
+    @Test
+    public void checkpointRestoresTracking() throws Exception {
+        CacheManager caches = newCaches(EvictionPolicy.LRU);
+        for (int i = 0; i < 8; i++) {
+            caches.onWrite("img_" + i, new byte[995]);
+        }
+        caches.onWrite("img_\u56fe", new byte[95]);
+        caches.onRead("img_0");
+        caches.onWrite("img_1", null);
+        caches.checkpoint();
+
+        CacheManager restored = newCaches(EvictionPolicy.LRU);
+        assertTrue(restored.load().isEmpty());
+        PantherStats.CacheStats stats = stats(restored);
+        assertEquals(8, stats.getEntries());
+        assertEquals(7 * 1000 + 100, stats.getBytesUsed());
+        // access order survives, img_0 was read last and is not evicted
+        restored.onWrite("img_big", new byte[5000]);
+        assertTrue(evictedOnce.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("img_2", "img_3", "img_4", "img_5"), evicted);
+    }
+
+    @Test
+    public void checkpointRestoresFrequencies() throws Exception {
+        CacheManager caches = newCaches(EvictionPolicy.LFU);
+        for (int i = 0; i < 9; i++) {
+            caches.onWrite("img_" + i, new byte[995]);
+        }
+        for (int i = 0; i < 5; i++) {
+            caches.onRead("img_0");
+            caches.onRead("img_1");
+        }
+        caches.checkpoint();
+
+        CacheManager restored = newCaches(EvictionPolicy.LFU);
+        restored.load();
+        restored.onWrite("img_9", new byte[2995]);
+        assertTrue(evictedOnce.await(5, TimeUnit.SECONDS));
+        // frequencies tie, the least recently used of the rest go
+        assertEquals(Arrays.asList("img_2", "img_3", "img_4"), evicted);
+    }
+
+    @Test
+    public void checkpointOnlyWhenChanged() {
+        CacheManager caches = newCaches(EvictionPolicy.LRU);
+        caches.onWrite("img_0", new byte[10]);
+        caches.checkpoint();
+        byte[] first = store.get(Panther.INTERNAL_KEY_PREFIX + "cache:img_");
+        assertNotNull(first);
+        CacheManager.Namespace namespace = caches.namespaceOf("img_0");
+        assertNull(namespace.checkpointIfDirty());
+        // reads of keys not tracked change nothing
+        caches.onRead("img_untracked");
+        caches.onWrite("other", new byte[10]);
+        assertNull(namespace.checkpointIfDirty());
+        caches.onRead("img_0");
+        assertNotNull(namespace.checkpointIfDirty());
+    }
+
+    @Test
+    public void missingOrDamagedCheckpointIsRebuilt() {
+        CacheManager caches = newCaches(EvictionPolicy.LRU);
+        assertEquals(1, caches.load().size());
+        caches.onWrite("img_0", new byte[10]);
+        caches.checkpoint();
+        String key = Panther.INTERNAL_KEY_PREFIX + "cache:img_";
+        byte[] checkpoint = store.get(key);
+        store.put(key, Arrays.copyOf(checkpoint, checkpoint.length - 3));
+        List<CacheManager.Namespace> missing = newCaches(EvictionPolicy.LRU).load();
+        assertEquals(Collections.singletonList("img_"), prefixes(missing));
+    }
+
+    private CacheManager newCaches(EvictionPolicy policy) {
+        return newCaches(policy, null);
+    }
+
+    /**
+     * @param beforeDelete runs before the victims are confirmed, null for none
+     */
+    private CacheManager newCaches(EvictionPolicy policy, final Runnable beforeDelete) {
+        Map<String, Long> budgets = new HashMap<>();
+        budgets.put("img_", 10000L);
+        Map<String, EvictionPolicy> policies = new HashMap<>();
+        policies.put("img_", policy);
+        final CacheManager[] caches = new CacheManager[1];
+        caches[0] = new CacheManager(storage, budgets, policies, Schedulers.io(), new CacheManager.Callback() {
+            @Override
+            public void evict(List<String> keys) {
+                if (beforeDelete != null) {
+                    beforeDelete.run();
+                }
+                // what Panther does under the writer lock
+                for (String key : keys) {
+                    if (caches[0].confirmEviction(key)) {
+                        evicted.add(key);
+                    }
+                }
+                evictedOnce.countDown();
+            }
+        });
+        return caches[0];
+    }
+
+    @Test
+    public void keysTouchedAfterPickedAreKept() throws Exception {
+        final CacheManager[] caches = new CacheManager[1];
+        final AtomicBoolean touched = new AtomicBoolean();
+        caches[0] = newCaches(EvictionPolicy.LRU, new Runnable() {
+            @Override
+            public void run() {
+                if (touched.compareAndSet(false, true)) {
+                    // rewritten and read between picking and deleting
+                    caches[0].onWrite("img_0", new byte[995]);
+                    caches[0].onRead("img_1");
+                }
+            }
+        });
+        for (int i = 0; i < 9; i++) {
+            caches[0].onWrite("img_" + i, new byte[995]);
+        }
+        caches[0].onWrite("img_big", new byte[2995]);
+        assertTrue(evictedOnce.await(5, TimeUnit.SECONDS));
+        // img_0 and img_1 were picked first but are kept and still tracked
+        assertEquals("img_2", evicted.get(0));
+        assertFalse(evicted.contains("img_0"));
+        assertFalse(evicted.contains("img_1"));
+        PantherStats.CacheStats stats = stats(caches[0]);
+        // skipped victims are neither counted nor dropped
+        assertEquals(10, stats.getEntries() + stats.getEvictions());
+    }
+
+    @Test
+    public void damagedCheckpointIsRejectedAsAWhole() {
+        CacheManager caches = newCaches(EvictionPolicy.LRU);
+        for (int i = 0; i < 3; i++) {
+            caches.onWrite("img_" + i, new byte[10]);
+        }
+        caches.checkpoint();
+        String key = Panther.INTERNAL_KEY_PREFIX + "cache:img_";
+        byte[] checkpoint = store.get(key);
+        // cut inside the last entry, corrupt key length, huge count, trailing bytes
+        List<byte[]> damaged = new ArrayList<>();
+        damaged.add(Arrays.copyOf(checkpoint, checkpoint.length - 1));
+        byte[] longKey = checkpoint.clone();
+        longKey[4] = (byte) 0xFF;
+        damaged.add(longKey);
+        byte[] count = checkpoint.clone();
+        count[0] = 0x7F;
+        damaged.add(count);
+        damaged.add(Arrays.copyOf(checkpoint, checkpoint.length + 1));
+        damaged.add(new byte[2]);
+        for (byte[] bytes : damaged) {
+            store.put(key, bytes);
+            CacheManager restored = newCaches(EvictionPolicy.LRU);
+            assertEquals(1, restored.load().size());
+            // nothing half restored before the rebuild
+            assertEquals(0, stats(restored).getEntries());
+            assertEquals(0, stats(restored).getBytesUsed());
+        }
+    }
+
+    private static PantherStats.CacheStats stats(CacheManager caches) {
+        PantherStats stats = new PantherStats();
+        caches.fillStats(stats);
+        return stats.getCacheStats().get(0);
+    }
+
+    private static List<String> prefixes(List<CacheManager.Namespace> namespaces) {
+        List<String> prefixes = new ArrayList<>();
+        for (CacheManager.Namespace namespace : namespaces) {
+            prefixes.add(namespace.prefix);
+        }
+        return prefixes;
+    }
+}
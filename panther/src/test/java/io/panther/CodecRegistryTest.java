@@ -0,0 +1,135 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.panther.codec.GsonCodec;
+import io.panther.codec.KryoCodec;
+import io.panther.codec.PantherCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/14 14:40
+ */
+public class CodecRegistryTest {
+
+    @Test
+    public void builtInCodecsAreReadable() {
+        CodecRegistry codecs = new CodecRegistry(null, null);
+        assertTrue(codecs.codecOf(GsonCodec.ID) instanceof GsonCodec);
+        assertTrue(codecs.codecOf(KryoCodec.ID) instanceof KryoCodec);
+        assertSame(codecs.codecOf(GsonCodec.ID), codecs.codecFor("value"));
+    }
+
+    @Test
+    public void unknownIdsAreNull() {
+        CodecRegistry codecs = new CodecRegistry(null, null);
+        assertNull(codecs.codecOf(DataEnvelope.CODEC_STRING));
+        assertNull(codecs.codecOf(PantherCodec.MIN_CUSTOM_ID));
+        assertNull(codecs.codecOf(-1));
+        assertNull(codecs.codecOf(PantherCodec.MAX_ID + 1));
+    }
+
+    @Test
+    public void codecsByClass() {
+        Map<Class<?>, PantherCodec> classCodecs = new HashMap<>();
+        CustomCodec custom = new CustomCodec(PantherCodec.MIN_CUSTOM_ID);
+        classCodecs.put(Integer.class, custom);
+        CodecRegistry codecs = new CodecRegistry(new KryoCodec(), classCodecs);
+        assertSame(custom, codecs.codecFor(1));
+        // collections are matched by their first element
+        assertSame(custom, codecs.codecFor(Collections.singletonList(1)));
+        assertTrue(codecs.codecFor("value") instanceof KryoCodec);
+        assertSame(custom, codecs.codecOf(PantherCodec.MIN_CUSTOM_ID));
+    }
+
+    @Test
+    public void subclassOfBuiltInTakesItsId() {
+        CustomGsonCodec custom = new CustomGsonCodec();
+        CodecRegistry codecs = new CodecRegistry(custom, null);
+        // written and read by the subclass
+        assertSame(custom, codecs.codecFor("value"));
+        assertSame(custom, codecs.codecOf(GsonCodec.ID));
+    }
+
+    @Test
+    public void sameCustomCodecTwice() {
+        Map<Class<?>, PantherCodec> classCodecs = new HashMap<>();
+        classCodecs.put(Integer.class, new CustomCodec(20));
+        CodecRegistry codecs = new CodecRegistry(new CustomCodec(20), classCodecs);
+        // one instance serves the id
+        assertSame(codecs.codecOf(20), codecs.codecFor(1));
+        assertSame(codecs.codecOf(20), codecs.codecFor("value"));
+    }
+
+    @Test
+    public void rejectsConflictingIds() {
+        Map<Class<?>, PantherCodec> classCodecs = new HashMap<>();
+        classCodecs.put(Integer.class, new CustomCodec(20));
+        // another class with the same id
+        assertRejected(new OtherCodec(20), classCodecs);
+        // reserved ids
+        assertRejected(new CustomCodec(KryoCodec.ID), null);
+        assertRejected(new CustomCodec(DataEnvelope.CODEC_PRIMITIVE), null);
+        assertRejected(new CustomCodec(5), null);
+        // out of range
+        assertRejected(new CustomCodec(DataEnvelope.CODEC_STRING), null);
+        assertRejected(new CustomCodec(PantherCodec.MAX_ID + 1), null);
+    }
+
+    private static void assertRejected(PantherCodec codec, Map<Class<?>, PantherCodec> classCodecs) {
+        try {
+            new CodecRegistry(codec, classCodecs);
+            fail("codec id " + codec.id() + " accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    static final class CustomGsonCodec extends GsonCodec {
+    }
+
+    static class CustomCodec implements PantherCodec {
+        private final int id;
+
+        CustomCodec(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public byte[] encode(Object data) {
+            return new byte[0];
+        }
+
+        @Override
+        public <T> T decode(byte[] data, int offset, int length, Class<T> dataClass) {
+            return null;
+        }
+
+        @Override
+        public <T> List<T> decodeList(byte[] data, int offset, int length, Class<T> dataClass) {
+            return null;
+        }
+    }
+
+    static final class OtherCodec extends CustomCodec {
+        OtherCodec(int id) {
+            super(id);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.panther.compress.Compression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/10 14:00
+ */
+public class CompressionPolicyTest {
+
+    @Test
+    public void threshold() {
+        CompressionPolicy policy = new CompressionPolicy(Compression.DEFLATE, 1024, 10, null);
+        assertEquals(Compression.NONE, policy.choose("user:1", 1023));
+        assertEquals(Compression.DEFLATE, policy.choose("user:1", 1024));
+    }
+
+    @Test
+    public void minSaving() {
+        CompressionPolicy policy = new CompressionPolicy(Compression.DEFLATE, 0, 10, null);
+        assertTrue(policy.accept("user:1", 1000, 900));
+        assertFalse(policy.accept("user:1", 1000, 901));
+    }
+
+    @Test
+    public void skipsIncompressiblePrefixAndResamples() {
+        CompressionPolicy policy = new CompressionPolicy(Compression.LZ4, 0, 10, null);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Compression.LZ4, policy.choose("image:" + i, 5000));
+            policy.accept("image:" + i, 5000, 5000);
+        }
+        // skipping now, one write of 32 is still tried
+        int tried = 0;
+        for (int i = 0; i < 64; i++) {
+            if (policy.choose("image:x", 5000) != Compression.NONE) {
+                tried++;
+            }
+        }
+        assertEquals(2, tried);
+        // other prefixes are not affected
+        assertEquals(Compression.LZ4, policy.choose("text:1", 5000));
+        // a good sample ends skipping
+        policy.accept("image:y", 5000, 1000);
+        assertEquals(Compression.LZ4, policy.choose("image:z", 5000));
+    }
+
+    @Test
+    public void overrides() {
+        Map<String, Compression> overrides = new HashMap<>();
+        overrides.put("photo", Compression.NONE);
+        overrides.put("photo_thumb", Compression.DEFLATE);
+        CompressionPolicy policy = new CompressionPolicy(Compression.LZ4, 0, 10, overrides);
+        assertEquals(Compression.NONE, policy.choose("photo_1", 5000));
+        // longest configured prefix wins
+        assertEquals(Compression.DEFLATE, policy.choose("photo_thumb_1", 5000));
+        assertEquals(Compression.LZ4, policy.choose("other:1", 5000));
+    }
+
+    @Test
+    public void derivedPrefixesStayBounded() {
+        Map<String, Compression> overrides = new HashMap<>();
+        overrides.put("a", Compression.DEFLATE);
+        CompressionPolicy policy = new CompressionPolicy(Compression.LZ4, 0, 10, overrides);
+        // the configured prefix is the eldest entry, it must not stop the eviction
+        policy.choose("a1", 5000);
+        for (int i = 0; i < 10000; i++) {
+            policy.choose("p" + i + ":x", 5000);
+        }
+        PantherStats stats = new PantherStats();
+        policy.fillStats(stats);
+        assertEquals(256 + 1, stats.getCompressionStats().size());
+        boolean configuredKept = false;
+        for (PantherStats.CompressionStats prefixStats : stats.getCompressionStats()) {
+            configuredKept |= prefixStats.getPrefix().equals("a");
+        }
+        assertTrue(configuredKept);
+    }
+}
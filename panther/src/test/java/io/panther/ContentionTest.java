@@ -0,0 +1,183 @@
+package io.panther;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/14 16:30
+ * <p>
+ * Readers of small records against one slow writer of a large list. The slow write is simulated
+ * by {@link MemoryDB#putMillis}, the single monitor Panther used before is simulated by
+ * synchronizing every call on one lock.
+ */
+public class ContentionTest {
+    private static final int READERS = 4;
+    private static final int READS_PER_READER = 50000;
+    private static final int SMALL_KEYS = 64;
+    private static final long WRITE_MILLIS = 20;
+
+    private final MemoryDB store = MemoryDB.create();
+    private Panther panther;
+    private List<String> large;
+
+    @Before
+    public void open() {
+        panther = MemoryDB.panther(MemoryDB.configuration().build(), store);
+        for (int i = 0; i < SMALL_KEYS; i++) {
+            assertTrue(panther.writeInDatabase("small_" + i, "value_" + i));
+        }
+        large = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            large.add("item_" + i);
+        }
+    }
+
+    @After
+    public void close() {
+        store.putMillis = 0;
+        panther.closeDatabase();
+    }
+
+    @Test
+    public void readsDoNotWaitForAWrite() throws Exception {
+        store.putMillis = 1000;
+        final CountDownLatch writing = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writing.countDown();
+                panther.writeInDatabase("large", large);
+            }
+        });
+        writer.start();
+        writing.await();
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            assertEquals("value_" + (i % SMALL_KEYS), panther.readFromDatabase("small_" + (i % SMALL_KEYS), String.class));
+            assertTrue(panther.keyExist("small_" + (i % SMALL_KEYS)));
+        }
+        // all served while the write is still in the database
+        assertTrue(writer.isAlive());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        writer.join();
+        assertEquals(large, panther.readFromDatabase("large", List.class));
+    }
+
+    @Test
+    public void readLatencyWithASlowWriter() throws Exception {
+        // warm up
+        measure(false, null);
+        Result alone = measure(false, null);
+        store.putMillis = WRITE_MILLIS;
+        Result withWriter = measure(true, null);
+        Result withMonitor = measure(true, new Object());
+        System.out.println("Readers alone: " + alone);
+        System.out.println("Readers with slow writer: " + withWriter);
+        System.out.println("Readers with slow writer, single monitor: " + withMonitor);
+        assertTrue(withWriter.writes > 0);
+        // with one monitor readers sit idle while a write is in the database
+        assertTrue(withWriter.readsPerSecond > withMonitor.readsPerSecond);
+    }
+
+    /**
+     * @param writing whether one writer keeps writing the large list meanwhile
+     * @param monitor lock taken around every call, null for none
+     */
+    private Result measure(boolean writing, final Object monitor) throws Exception {
+        final AtomicBoolean reading = new AtomicBoolean(true);
+        final CountDownLatch done = new CountDownLatch(READERS);
+        final long[][] latencies = new long[READERS][READS_PER_READER];
+        final int[] writes = new int[1];
+        Thread writer = null;
+        if (writing) {
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (reading.get()) {
+                        if (monitor != null) {
+                            synchronized (monitor) {
+                                panther.writeInDatabase("large", large);
+                            }
+                        } else {
+                            panther.writeInDatabase("large", large);
+                        }
+                        writes[0]++;
+                    }
+                }
+            });
+            writer.start();
+        }
+        long start = System.nanoTime();
+        for (int r = 0; r < READERS; r++) {
+            final long[] readerLatencies = latencies[r];
+            final int seed = r;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < READS_PER_READER; i++) {
+                        String key = "small_" + ((i + seed) % SMALL_KEYS);
+                        long readStart = System.nanoTime();
+                        if (monitor != null) {
+                            synchronized (monitor) {
+                                panther.readFromDatabase(key, String.class);
+                            }
+                        } else {
+                            panther.readFromDatabase(key, String.class);
+                        }
+                        readerLatencies[i] = System.nanoTime() - readStart;
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long cost = System.nanoTime() - start;
+        reading.set(false);
+        if (writer != null) {
+            writer.join();
+        }
+        long[] all = new long[READERS * READS_PER_READER];
+        for (int r = 0; r < READERS; r++) {
+            System.arraycopy(latencies[r], 0, all, r * READS_PER_READER, READS_PER_READER);
+        }
+        Arrays.sort(all);
+        return new Result(all.length * 1000000000L / cost, all[all.length / 2] / 1000,
+                all[all.length * 999 / 1000] / 1000, all[all.length - 1] / 1000, writes[0]);
+    }
+
+    private static final class Result {
+        final long readsPerSecond;
+        final long p50Micros;
+        final long p999Micros;
+        final long maxMicros;
+        final int writes;
+
+        Result(long readsPerSecond, long p50Micros, long p999Micros, long maxMicros, int writes) {
+            this.readsPerSecond = readsPerSecond;
+            this.p50Micros = p50Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+            this.writes = writes;
+        }
+
+        @Override
+        public String toString() {
+            return readsPerSecond + " reads/s, p50 = " + p50Micros + "us, p99.9 = " + p999Micros
+                    + "us, max = " + maxMicros + "us, large writes = " + writes;
+        }
+    }
+}
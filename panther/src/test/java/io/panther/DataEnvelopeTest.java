@@ -0,0 +1,123 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+
+import io.panther.codec.GsonCodec;
+import io.panther.util.JSONUtil;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/9 10:00
+ */
+public class DataEnvelopeTest {
+
+    @Test
+    public void roundTrip() {
+        byte[] payload = "{\"name\":\"panther\"}".getBytes(DataEnvelope.UTF_8);
+        byte[] record = DataEnvelope.encode(0, GsonCodec.ID, 1234L, 0, 0, payload);
+        assertTrue(DataEnvelope.isEnvelope(record));
+        assertEquals(DataEnvelope.HEADER_LENGTH + payload.length, record.length);
+
+        DataEnvelope envelope = DataEnvelope.decode(record);
+        assertEquals(GsonCodec.ID, envelope.codec);
+        assertEquals(1234L, envelope.time);
+        assertEquals(0, envelope.compression());
+        assertEquals(0, envelope.expiresAt);
+        assertArrayEquals(payload, Arrays.copyOfRange(envelope.buffer, envelope.payloadOffset,
+                envelope.payloadOffset + envelope.payloadLength));
+    }
+
+    @Test
+    public void optionalFields() {
+        byte[] payload = {1, 2, 3};
+        int flags = 2 | DataEnvelope.FLAG_DICTIONARY;
+        byte[] record = DataEnvelope.encode(flags, 1, 5L, 0x12345678, 9999L, payload);
+        assertEquals(DataEnvelope.HEADER_LENGTH + 4 + 8 + payload.length, record.length);
+
+        DataEnvelope envelope = DataEnvelope.decode(record);
+        assertEquals(2, envelope.compression());
+        assertEquals(0x12345678, envelope.dictionaryId);
+        assertEquals(9999L, envelope.expiresAt);
+        assertTrue((envelope.flags & DataEnvelope.FLAG_EXPIRES) != 0);
+        assertEquals(payload.length, envelope.payloadLength);
+        assertEquals(9999L, DataEnvelope.expiresAt(record));
+        assertTrue(envelope.isExpired(9999L));
+        assertFalse(envelope.isExpired(9998L));
+    }
+
+    @Test
+    public void headerOnlyExpiry() {
+        assertEquals(0, DataEnvelope.expiresAt(DataEnvelope.encode(0, 1, 0, 0, 0, new byte[0])));
+        assertEquals(0, DataEnvelope.expiresAt("{\"dataJson\":\"1\"}".getBytes(DataEnvelope.UTF_8)));
+    }
+
+    @Test
+    public void rejectsForeignRecords() {
+        byte[] legacy = "{\"key\":\"k\",\"dataJson\":\"1\",\"gzip\":false,\"time\":1}".getBytes(DataEnvelope.UTF_8);
+        assertFalse(DataEnvelope.isEnvelope(legacy));
+        assertFalse(DataEnvelope.isEnvelope(new byte[]{DataEnvelope.MAGIC}));
+        try {
+            DataEnvelope.decode(legacy);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        byte[] newer = DataEnvelope.encode(0, 1, 0, 0, 0, new byte[0]);
+        newer[1] = DataEnvelope.VERSION + 1;
+        try {
+            DataEnvelope.decode(newer);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        byte[] truncated = Arrays.copyOf(DataEnvelope.encode(0, 1, 0, 0, 77L, new byte[0]), DataEnvelope.HEADER_LENGTH + 4);
+        try {
+            DataEnvelope.decode(truncated);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void legacyRecord() throws Exception {
+        DataBundle dataBundle = new DataBundle();
+        dataBundle.key = "k";
+        dataBundle.dataJson = "{\"text\":\"\u4f60\u597d \ud83d\ude00\"}";
+        dataBundle.time = 42L;
+        String json = JSONUtil.toJSONString(dataBundle);
+        // legacy records were written as strings, SnappyDB stores the modified UTF-8 of JNI
+        String read = PantherDatabase.decodeString(modifiedUtf8(json));
+        assertEquals(json, read);
+
+        DataBundle parsed = JSONUtil.parseObject(read, DataBundle.class);
+        DataEnvelope envelope = DataEnvelope.fromLegacy(parsed, parsed.dataJson);
+        assertEquals(GsonCodec.ID, envelope.codec);
+        assertEquals(42L, envelope.time);
+        assertEquals(dataBundle.dataJson, new String(envelope.buffer, envelope.payloadOffset,
+                envelope.payloadLength, DataEnvelope.UTF_8));
+    }
+
+    @Test
+    public void decodeStringOfNul() throws Exception {
+        String text = "a\u0000b";
+        assertEquals(text, PantherDatabase.decodeString(modifiedUtf8(text)));
+    }
+
+    private static byte[] modifiedUtf8(String text) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeUTF(text);
+        byte[] withLength = bytes.toByteArray();
+        return Arrays.copyOfRange(withLength, 2, withLength.length);
+    }
+}
@@ -0,0 +1,132 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/11 14:20
+ */
+public class ExpiryManagerTest {
+    private static final String INDEX_PREFIX = Panther.INTERNAL_KEY_PREFIX + "ttl:";
+
+    private final PantherDatabase database = MemoryDB.open();
+    private final List<String> expired = new ArrayList<>();
+    private final ExpiryManager expiry = newExpiry(database, expired);
+
+    @Test
+    public void indexKeysSortByTime() throws Exception {
+        track("a", 2000000000000L);
+        track("b", 999L);
+        track("c", 0);
+        List<String> indexKeys = indexKeys();
+        // zero padded, earlier times first, records without expiry are not indexed
+        assertEquals(2, indexKeys.size());
+        assertEquals(INDEX_PREFIX + "0000000000999:b", indexKeys.get(0));
+        assertEquals(INDEX_PREFIX + "2000000000000:a", indexKeys.get(1));
+        assertEquals(indexKeys.get(0), ExpiryManager.indexKeyOf("b", record(999L)));
+        assertNull(ExpiryManager.indexKeyOf("c", record(0)));
+        assertNull(ExpiryManager.indexKeyOf("missing", null));
+    }
+
+    @Test
+    public void sweepDeletesExpiredAndDropsIndex() throws Exception {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 200; i++) {
+            // more than one sweep batch
+            track("http_" + i, i < 150 ? now - 10 : now + 100000);
+        }
+        // overwritten by a record without expiry
+        put("http_3", record(0));
+        assertEquals(149, expiry.sweep(now));
+        assertEquals(149, expired.size());
+        assertTrue(exists("http_3"));
+        assertFalse(exists("http_4"));
+        assertTrue(exists("http_150"));
+        // only index keys of records not expired yet are left
+        assertEquals(50, indexKeys().size());
+        assertEquals(0, expiry.sweep(now));
+    }
+
+    @Test
+    public void untrackDropsIndexOfDeletedRecord() throws Exception {
+        long expiresAt = System.currentTimeMillis() + 100000;
+        track("a", expiresAt);
+        track("b", expiresAt);
+        String indexKey = ExpiryManager.indexKeyOf("a", database.getBytes("a"));
+        database.get().del("a");
+        expiry.untrack(Collections.singletonList(indexKey));
+        assertEquals(Collections.singletonList(INDEX_PREFIX + expiresAt + ":b"), indexKeys());
+    }
+
+    @Test
+    public void prefixTtl() {
+        long now = System.currentTimeMillis();
+        assertTrue(expiry.expiresAt("http_x", 0) >= now + 1000);
+        // longest prefix wins
+        assertTrue(expiry.expiresAt("http_img_x", 0) >= now + 60000);
+        assertEquals(0, expiry.expiresAt("other", 0));
+        assertTrue(expiry.expiresAt("other", 50) >= now + 50);
+    }
+
+    @Test
+    public void loadFindsIndexOfEarlierRun() throws Exception {
+        ExpiryManager first = newExpiry(database, expired);
+        put("a", record(System.currentTimeMillis() + 100000));
+        first.track("a", database.getBytes("a"));
+
+        ExpiryManager reopened = new ExpiryManager(database, null, Schedulers.io(), null);
+        assertFalse(reopened.isActive());
+        reopened.load();
+        assertTrue(reopened.isActive());
+    }
+
+    private static ExpiryManager newExpiry(PantherDatabase database, final List<String> expired) {
+        Map<String, Long> ttls = new HashMap<>();
+        ttls.put("http_", 1000L);
+        ttls.put("http_img_", 60000L);
+        return new ExpiryManager(database, ttls, Schedulers.io(), new ExpiryManager.Callback() {
+            @Override
+            public void onExpired(String key) {
+                expired.add(key);
+            }
+        });
+    }
+
+    private static byte[] record(long expiresAt) {
+        return DataEnvelope.encode(0, 1, 1L, 0, expiresAt, new byte[1]);
+    }
+
+    private void track(String key, long expiresAt) throws Exception {
+        byte[] record = record(expiresAt);
+        put(key, record);
+        expiry.track(key, record);
+    }
+
+    private void put(String key, byte[] record) throws Exception {
+        database.get().put(key, record);
+    }
+
+    private boolean exists(String key) throws Exception {
+        return database.get().exists(key);
+    }
+
+    private List<String> indexKeys() throws Exception {
+        List<String> keys = new ArrayList<>();
+        Collections.addAll(keys, database.get().findKeys(INDEX_PREFIX));
+        return keys;
+    }
+}
@@ -0,0 +1,82 @@
+package io.panther;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/12 14:00
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void countsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch();
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(5, sketch.frequency("a"));
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("a");
+        }
+        assertEquals(15, sketch.frequency("a"));
+    }
+
+    @Test
+    public void hotItemsStandOut() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(1000);
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment("cold" + i);
+        }
+        for (int r = 0; r < 10; r++) {
+            for (int i = 0; i < 10; i++) {
+                sketch.increment("hot" + i);
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(sketch.frequency("hot" + i) >= 10);
+        }
+        // collisions only ever overestimate, rarely by much
+        int overestimated = 0;
+        for (int i = 0; i < 1000; i++) {
+            int frequency = sketch.frequency("cold" + i);
+            assertTrue(frequency >= 1);
+            if (frequency > 2) {
+                overestimated++;
+            }
+        }
+        assertTrue(overestimated < 50);
+    }
+
+    @Test
+    public void agesWhenSampleIsFull() {
+        FrequencySketch sketch = new FrequencySketch();
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("old");
+        }
+        assertEquals(15, sketch.frequency("old"));
+        // sample size is ten times the capacity, counters are halved once
+        for (int i = 0; i < 10 * sketch.capacity(); i++) {
+            sketch.increment("other" + i);
+        }
+        int frequency = sketch.frequency("old");
+        assertTrue("frequency " + frequency, frequency >= 7 && frequency < 12);
+    }
+
+    @Test
+    public void growsWithinBounds() {
+        FrequencySketch sketch = new FrequencySketch();
+        assertEquals(64, sketch.capacity());
+        sketch.ensureCapacity(10);
+        assertEquals(64, sketch.capacity());
+        sketch.ensureCapacity(5000);
+        assertEquals(5000, sketch.capacity());
+        sketch.ensureCapacity(Integer.MAX_VALUE);
+        assertEquals(1 << 24, sketch.capacity());
+    }
+}
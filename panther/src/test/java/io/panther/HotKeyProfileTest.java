@@ -0,0 +1,116 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/13 16:40
+ */
+public class HotKeyProfileTest {
+    private final Map<String, byte[]> store = new HashMap<>();
+    private int writes;
+    private final DictionaryManager.Storage storage = new DictionaryManager.Storage() {
+        @Override
+        public byte[] read(String key) {
+            return store.get(key);
+        }
+
+        @Override
+        public void write(String key, byte[] value) {
+            store.put(key, value);
+            writes++;
+        }
+    };
+
+    @Test
+    public void saveAndRestore() {
+        HotKeyProfile profile = new HotKeyProfile(storage, Schedulers.io());
+        for (int i = 0; i < 100000; i++) {
+            // 70% of reads on 5 hot keys, the rest spread over 5000 keys
+            int key = i % 10 < 7 ? i % 5 : 1000 + (i * 7919) % 5000;
+            profile.onRead("k" + key, key == 3 ? Integer.class : String.class, key == 3);
+        }
+        List<HotKeyProfile.Entry> saved = profile.load();
+        profile.save();
+
+        List<HotKeyProfile.Entry> restored = new HotKeyProfile(storage, Schedulers.io()).load();
+        assertTrue(restored.size() <= 64);
+        for (int i = 0; i < 5; i++) {
+            HotKeyProfile.Entry entry = restored.get(i);
+            assertTrue(entry.key, entry.key.matches("k[0-4]"));
+            assertEquals(entry.key.equals("k3") ? Integer.class : String.class, entry.dataClass());
+            assertEquals(entry.key.equals("k3"), entry.list);
+            // counts of the last session are halved
+            assertEquals(saved.get(i).key, entry.key);
+            assertEquals(saved.get(i).count >>> 1, entry.count);
+        }
+    }
+
+    @Test
+    public void restoredKeysFadeOut() {
+        HotKeyProfile profile = new HotKeyProfile(storage, Schedulers.io());
+        for (int i = 0; i < 8000; i++) {
+            profile.onRead("hot", String.class, false);
+        }
+        profile.save();
+        int count = new HotKeyProfile(storage, Schedulers.io()).load().get(0).count;
+        // not read any more, the count halves with every session until the key is gone
+        for (int session = 0; session < 31; session++) {
+            HotKeyProfile next = new HotKeyProfile(storage, Schedulers.io());
+            List<HotKeyProfile.Entry> entries = next.load();
+            if (entries.isEmpty()) {
+                assertEquals(0, count);
+                return;
+            }
+            assertEquals(count, entries.get(0).count);
+            count >>>= 1;
+            // restored entries are saved again once the profile changes
+            for (int i = 0; i < 8; i++) {
+                next.onRead("other", String.class, false);
+            }
+            next.save();
+        }
+        fail("hot key never faded out");
+    }
+
+    @Test
+    public void savesOnlyWhenChanged() {
+        HotKeyProfile profile = new HotKeyProfile(storage, Schedulers.io());
+        profile.save();
+        assertEquals(0, writes);
+        for (int i = 0; i < 8; i++) {
+            profile.onRead("k", String.class, false);
+        }
+        profile.save();
+        profile.save();
+        assertEquals(1, writes);
+    }
+
+    @Test
+    public void damagedProfileIsIgnored() {
+        HotKeyProfile profile = new HotKeyProfile(storage, Schedulers.io());
+        for (int i = 0; i < 80; i++) {
+            profile.onRead("key_" + (i % 2), String.class, false);
+        }
+        profile.save();
+        String key = store.keySet().iterator().next();
+        byte[] saved = store.get(key);
+        store.put(key, Arrays.copyOf(saved, 3));
+        assertTrue(new HotKeyProfile(storage, Schedulers.io()).load().isEmpty());
+        store.put(key, Arrays.copyOf(saved, saved.length - 3));
+        // entries before the damage are kept
+        assertTrue(new HotKeyProfile(storage, Schedulers.io()).load().size() <= 1);
+    }
+}
@@ -0,0 +1,165 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/13 14:30
+ */
+public class KeyFilterTest {
+    private final AtomicInteger rebuilds = new AtomicInteger();
+    private final KeyFilter keyFilter = new KeyFilter(new KeyFilter.Builder() {
+        @Override
+        public void rebuild() {
+            rebuilds.incrementAndGet();
+        }
+    });
+
+    @Test
+    public void everyKeyMightExistBeforeTheFirstBuild() {
+        assertFalse(keyFilter.isReady());
+        assertTrue(keyFilter.mightContain("missing"));
+    }
+
+    @Test
+    public void filtersMissingKeys() {
+        build(10000);
+        assertTrue(keyFilter.isReady());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(keyFilter.mightContain("key_" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (keyFilter.mightContain("miss_" + i)) {
+                falsePositives++;
+            }
+        }
+        // about 1%
+        assertTrue("false positives " + falsePositives, falsePositives < 1500);
+        // internal keys are never filtered
+        assertTrue(keyFilter.mightContain(Panther.INTERNAL_KEY_PREFIX + "x"));
+    }
+
+    @Test
+    public void rebuildWhenOutgrownOrDeleted() {
+        build(0);
+        // rewrites of one key do not count
+        for (int i = 0; i < 5000; i++) {
+            keyFilter.add("same");
+        }
+        assertEquals(0, rebuilds.get());
+        for (int i = 0; i < 5000; i++) {
+            keyFilter.add("key_" + i);
+        }
+        assertEquals(1, rebuilds.get());
+
+        build(0);
+        for (int i = 0; i < 2000; i++) {
+            keyFilter.onDelete();
+        }
+        assertEquals(2, rebuilds.get());
+    }
+
+    @Test
+    public void writeBeforeBuildIsKept() {
+        build(0);
+        // writer adds, a build scans and finishes before the record is stored
+        keyFilter.add("late");
+        KeyFilter.Filter filter = keyFilter.startBuild(100);
+        filter.add("stored");
+        keyFilter.finishBuild(filter);
+        // stored, then confirmed
+        keyFilter.confirm("late");
+        assertTrue(keyFilter.mightContain("late"));
+    }
+
+    @Test
+    public void writeDuringBuildIsKept() {
+        build(0);
+        KeyFilter.Filter filter = keyFilter.startBuild(100);
+        // the scan passed the key before it was stored
+        keyFilter.add("late");
+        keyFilter.confirm("late");
+        filter.add("stored");
+        keyFilter.finishBuild(filter);
+        assertTrue(keyFilter.mightContain("late"));
+        assertTrue(keyFilter.mightContain("stored"));
+    }
+
+    @Test
+    public void buildsRacingWithWritesLoseNothing() throws Exception {
+        build(0);
+        final Set<String> stored = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> writers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                final int writer = t;
+                writers.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int i = 0; i < 20000; i++) {
+                            String key = writer + "_" + i;
+                            // the write path of Panther
+                            keyFilter.add(key);
+                            stored.add(key);
+                            keyFilter.confirm(key);
+                            if (!keyFilter.mightContain(key)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            Future<?> builder = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    while (writing.get()) {
+                        KeyFilter.Filter filter = keyFilter.startBuild(stored.size());
+                        for (String key : stored) {
+                            filter.add(key);
+                        }
+                        keyFilter.finishBuild(filter);
+                    }
+                }
+            });
+            for (Future<Boolean> result : writers) {
+                assertTrue(result.get());
+            }
+            writing.set(false);
+            builder.get();
+        } finally {
+            executor.shutdown();
+        }
+        for (String key : stored) {
+            assertTrue(key, keyFilter.mightContain(key));
+        }
+    }
+
+    private void build(int keys) {
+        KeyFilter.Filter filter = keyFilter.startBuild(keys);
+        for (int i = 0; i < keys; i++) {
+            filter.add("key_" + i);
+        }
+        keyFilter.finishBuild(filter);
+    }
+}
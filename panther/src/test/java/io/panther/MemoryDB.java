@@ -0,0 +1,234 @@
+package io.panther;
+
+import com.snappydb.DB;
+import com.snappydb.KeyIterator;
+import com.snappydb.SnappydbException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/11 10:00
+ * <p>
+ * In-memory stand-in of the SnappyDB methods Panther uses, keys sorted like LevelDB for ASCII keys.
+ * Empty prefixes are rejected like SnappyDB does, other methods throw {@link UnsupportedOperationException}.
+ */
+final class MemoryDB implements InvocationHandler {
+    final TreeMap<String, byte[]> records = new TreeMap<>();
+    // calls by method name, guarded by this
+    private final HashMap<String, Integer> calls = new HashMap<>();
+    // full scans wait for it when set, to hold a key filter build
+    volatile CountDownLatch scanGate;
+    // record reads wait for it after reading when set, to hold a reader between its read and its use
+    volatile CountDownLatch readGate;
+    // puts take this long outside the store lock when set, like a large LevelDB write
+    volatile long putMillis;
+
+    private MemoryDB() {
+    }
+
+    /**
+     * Open database on a new in-memory store
+     */
+    static PantherDatabase open() {
+        return open(new MemoryDB());
+    }
+
+    static PantherDatabase open(MemoryDB store) {
+        PantherDatabase database = new PantherDatabase();
+        database.attach((DB) Proxy.newProxyInstance(DB.class.getClassLoader(), new Class[]{DB.class}, store));
+        return database;
+    }
+
+    static MemoryDB create() {
+        return new MemoryDB();
+    }
+
+    /**
+     * Configuration of a Panther on in-memory stores, no logs, results delivered on the Panther lanes
+     */
+    static PantherConfiguration.Builder configuration() {
+        return new PantherConfiguration.Builder()
+                .databaseName("test")
+                .databaseFolder(new File(System.getProperty("java.io.tmpdir")))
+                .memoryCacheBytes(1024 * 1024)
+                .deliveryScheduler(null);
+    }
+
+    /**
+     * Panther on store, opened at once
+     */
+    static Panther panther(PantherConfiguration configuration, MemoryDB store) {
+        return new Panther(configuration, open(store), 0, false);
+    }
+
+    /**
+     * Calls of a DB method so far, "notFound" counts the lookups that threw for a missing key
+     *
+     * @param method method name
+     * @return calls
+     */
+    synchronized int calls(String method) {
+        Integer count = calls.get(method);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Bytes SnappyDB stores for a string, modified UTF-8 of JNI
+     */
+    static byte[] encodeString(String value) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new DataOutputStream(out).writeUTF(value);
+            byte[] withLength = out.toByteArray();
+            byte[] bytes = new byte[withLength.length - 2];
+            System.arraycopy(withLength, 2, bytes, 0, bytes.length);
+            return bytes;
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        CountDownLatch gate = scanGate;
+        if (gate != null && method.getName().equals("allKeysIterator")) {
+            gate.await();
+        }
+        long delay = putMillis;
+        if (delay > 0 && method.getName().equals("put")) {
+            Thread.sleep(delay);
+        }
+        Object result = call(method, args);
+        gate = readGate;
+        if (gate != null && method.getName().equals("getBytes")) {
+            gate.await();
+        }
+        return result;
+    }
+
+    private synchronized Object call(Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        Integer count = calls.get(name);
+        calls.put(name, count != null ? count + 1 : 1);
+        switch (name) {
+            case "isOpen":
+                return true;
+            case "close":
+                return null;
+            case "put":
+                if (args[1] instanceof byte[]) {
+                    records.put((String) args[0], (byte[]) args[1]);
+                } else if (args[1] instanceof String) {
+                    records.put((String) args[0], encodeString((String) args[1]));
+                } else {
+                    break;
+                }
+                return null;
+            case "del":
+                records.remove(args[0]);
+                return null;
+            case "exists":
+                return records.containsKey(args[0]);
+            case "getBytes":
+                byte[] record = records.get(args[0]);
+                if (record == null) {
+                    calls.put("notFound", calls("notFound") + 1);
+                    throw new SnappydbException("Failed to get a byte array: NotFound: ");
+                }
+                return record;
+            case "get":
+                if (args.length != 1) {
+                    break;
+                }
+                record = records.get(args[0]);
+                if (record == null) {
+                    throw new SnappydbException("Failed to get a String: NotFound: ");
+                }
+                return PantherDatabase.decodeString(record);
+            case "findKeys":
+                if (args.length != 1) {
+                    break;
+                }
+                checkPrefix((String) args[0]);
+                return withPrefix((String) args[0]).toArray(new String[0]);
+            case "countKeys":
+                checkPrefix((String) args[0]);
+                return withPrefix((String) args[0]).size();
+            case "allKeysIterator":
+                return iterator(new ArrayList<>(records.keySet()));
+            case "findKeysIterator":
+                checkPrefix((String) args[0]);
+                return iterator(withPrefix((String) args[0]));
+            case "findKeysBetweenIterator":
+                return iterator(new ArrayList<>(records.subMap((String) args[0], true, (String) args[1], true).keySet()));
+            case "findKeysBetweenReverseIterator":
+                NavigableSet<String> keys = records.subMap((String) args[1], true, (String) args[0], true).navigableKeySet();
+                return iterator(new ArrayList<>(keys.descendingSet()));
+            default:
+                break;
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    /**
+     * SnappyDB rejects a missing or empty prefix
+     */
+    private static void checkPrefix(String prefix) throws SnappydbException {
+        if (prefix == null || prefix.isEmpty()) {
+            throw new SnappydbException("Starting with key can't be empty");
+        }
+    }
+
+    private List<String> withPrefix(String prefix) {
+        List<String> keys = new ArrayList<>();
+        for (String key : records.tailMap(prefix, true).keySet()) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    private static KeyIterator iterator(final List<String> keys) {
+        return new KeyIterator() {
+            private int position;
+
+            @Override
+            public boolean hasNext() {
+                return position < keys.size();
+            }
+
+            @Override
+            public String[] next(int max) {
+                int to = Math.min(keys.size(), position + max);
+                String[] page = keys.subList(position, to).toArray(new String[0]);
+                position = to;
+                return page;
+            }
+
+            @Override
+            public Iterable<String[]> byBatch(int size) {
+                throw new UnsupportedOperationException("byBatch");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/12 10:30
+ */
+public class ObjectSizeEstimatorTest {
+    private final ObjectSizeEstimator estimator = new ObjectSizeEstimator(null);
+
+    @Test
+    public void followsBeans() {
+        Holder holder = new Holder();
+        holder.value = new byte[100000];
+        assertTrue(estimator.weigh(holder) > 100000);
+        List<Holder> list = new ArrayList<>();
+        list.add(holder);
+        assertTrue(estimator.weigh(list) > 100000);
+    }
+
+    @Test
+    public void stopsAtFrameworkObjects() {
+        // the referent belongs to whoever keeps it alive
+        Holder holder = new Holder();
+        holder.value = new WeakReference<>(new byte[100000]);
+        assertTrue(estimator.weigh(holder) < 1000);
+        holder.value = Thread.currentThread();
+        assertTrue(estimator.weigh(holder) < 1000);
+    }
+
+    @Test
+    public void boundsLongChains() {
+        Holder head = new Holder();
+        Holder current = head;
+        for (int i = 0; i < 100; i++) {
+            Holder next = new Holder();
+            current.value = next;
+            current = next;
+        }
+        current.value = new byte[100000];
+        // only the first levels are followed
+        assertTrue(estimator.weigh(head) < 1000);
+    }
+
+    @Test
+    public void entryCountToBytes() {
+        assertEquals(Panther.DEFAULT_MEMORY_CACHE_SIZE, PantherMemoryCache.bytesOfEntries(128));
+        assertEquals(Integer.MAX_VALUE, PantherMemoryCache.bytesOfEntries(Integer.MAX_VALUE));
+        assertEquals(0, PantherMemoryCache.bytesOfEntries(0));
+    }
+
+    private static final class Holder {
+        Object value;
+    }
+}
@@ -0,0 +1,121 @@
+package io.panther;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import io.panther.codec.GsonCodec;
+import io.panther.codec.KryoCodec;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/14 15:20
+ */
+public class PantherCodecTest {
+    private Panther panther;
+
+    @After
+    public void close() {
+        if (panther != null) {
+            panther.closeDatabase();
+        }
+    }
+
+    @Test
+    public void gsonSubclassDecodesWhatItEncoded() {
+        panther = MemoryDB.panther(MemoryDB.configuration().codec(new MoneyCodec()).build(), MemoryDB.create());
+        assertEquals(true, panther.writeInDatabase("price", new Money(1234, "EUR")));
+        assertEquals(new Money(1234, "EUR"), panther.readFromDatabase("price", Money.class));
+        // stored text of a JSON record
+        assertEquals("\"1234 EUR\"", panther.readStringFromDatabase("price"));
+
+        List<Money> prices = Arrays.asList(new Money(1, "USD"), new Money(2, "JPY"));
+        panther.writeInDatabase("prices", prices);
+        assertEquals(prices, panther.readListFromDatabase("prices", Money.class));
+    }
+
+    @Test
+    public void recordsOfEveryCodecReadSideBySide() {
+        MemoryDB store = MemoryDB.create();
+        panther = MemoryDB.panther(MemoryDB.configuration().codec(new KryoCodec()).build(), store);
+        panther.writeInDatabase("kryo", new Money(5, "GBP"));
+        panther.writeInDatabase("text", "plain text");
+        panther.closeDatabase();
+
+        panther = MemoryDB.panther(MemoryDB.configuration().build(), store);
+        panther.writeInDatabase("gson", new Money(6, "CHF"));
+        assertEquals(new Money(5, "GBP"), panther.readFromDatabase("kryo", Money.class));
+        assertEquals(new Money(6, "CHF"), panther.readFromDatabase("gson", Money.class));
+        assertEquals("plain text", panther.readStringFromDatabase("text"));
+    }
+
+    /**
+     * Money as one string "cents currency"
+     */
+    static final class MoneyCodec extends GsonCodec {
+        private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+        private final Gson gson = new GsonBuilder().registerTypeAdapter(Money.class, new TypeAdapter<Money>() {
+            @Override
+            public void write(JsonWriter out, Money value) throws IOException {
+                out.value(value.cents + " " + value.currency);
+            }
+
+            @Override
+            public Money read(JsonReader in) throws IOException {
+                String[] parts = in.nextString().split(" ");
+                return new Money(Long.parseLong(parts[0]), parts[1]);
+            }
+        }).create();
+
+        @Override
+        public byte[] encode(Object data) {
+            return gson.toJson(data).getBytes(UTF_8);
+        }
+
+        @Override
+        public <T> T decode(byte[] data, int offset, int length, Class<T> dataClass) {
+            return gson.fromJson(new String(data, offset, length, UTF_8), dataClass);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> List<T> decodeList(byte[] data, int offset, int length, Class<T> dataClass) {
+            Money[] values = gson.fromJson(new String(data, offset, length, UTF_8), Money[].class);
+            return (List<T>) Arrays.asList(values);
+        }
+    }
+
+    static final class Money {
+        final long cents;
+        final String currency;
+
+        Money(long cents, String currency) {
+            this.cents = cents;
+            this.currency = currency;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Money && ((Money) o).cents == cents && ((Money) o).currency.equals(currency);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) cents * 31 + currency.hashCode();
+        }
+    }
+}
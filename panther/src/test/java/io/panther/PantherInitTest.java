@@ -0,0 +1,163 @@
+package io.panther;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/15 16:20
+ * <p>
+ * Deferred open like {@link Panther#initAsync(android.content.Context)}, the test plays the init thread
+ */
+public class PantherInitTest {
+    private final MemoryDB store = MemoryDB.create();
+    private Panther panther;
+
+    @After
+    public void close() {
+        if (panther != null) {
+            panther.start();
+            panther.closeDatabase();
+        }
+    }
+
+    @Test
+    public void earlyCallersWaitForTheOpen() throws Exception {
+        storeValue();
+        panther = new Panther(MemoryDB.configuration().build(), MemoryDB.open(store), 5, true);
+        assertFalse(panther.isReady());
+        final AtomicReference<String> read = new AtomicReference<>();
+        final AtomicBoolean exists = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(2);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read.set(panther.readFromDatabase("key", String.class));
+                done.countDown();
+            }
+        }).start();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                exists.set(panther.keyExist("key"));
+                done.countDown();
+            }
+        }).start();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        // nothing reached the database before the open
+        int calls = store.calls("exists") + store.calls("getBytes");
+        Thread.sleep(50);
+        assertEquals(calls, store.calls("exists") + store.calls("getBytes"));
+        Thread init = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                panther.start();
+            }
+        });
+        init.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(panther.isReady());
+        assertEquals("value", read.get());
+        assertTrue(exists.get());
+    }
+
+    @Test
+    public void memoryCacheIsServedBeforeTheOpen() {
+        panther = new Panther(MemoryDB.configuration().build(), MemoryDB.open(store), 0, true);
+        panther.writeInMemory("key", "value");
+        assertEquals("value", panther.<String>readFromMemory("key"));
+        panther.deleteFromMemory("key");
+        assertNull(panther.<String>readFromMemory("key"));
+        assertFalse(panther.isReady());
+    }
+
+    @Test
+    public void laterStartsWaitForTheFirst() throws Exception {
+        panther = new Panther(MemoryDB.configuration().build(), MemoryDB.open(store), 0, true);
+        final List<Thread> starters = new ArrayList<>();
+        final CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            Thread starter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    panther.start();
+                    // every start returns ready, whichever opened
+                    assertTrue(panther.isReady());
+                    started.countDown();
+                }
+            });
+            starters.add(starter);
+            starter.start();
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // opened once, the journal is checked once per open
+        assertEquals(1, store.calls("exists"));
+        for (Thread starter : starters) {
+            starter.join();
+        }
+    }
+
+    @Test
+    public void interruptedCallerStillWaitsAndKeepsTheInterrupt() throws Exception {
+        storeValue();
+        panther = new Panther(MemoryDB.configuration().build(), MemoryDB.open(store), 0, true);
+        final AtomicReference<String> read = new AtomicReference<>();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read.set(panther.readFromDatabase("key", String.class));
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        caller.start();
+        Thread.sleep(50);
+        caller.interrupt();
+        Thread.sleep(50);
+        assertTrue(caller.isAlive());
+        panther.start();
+        caller.join(5000);
+        assertEquals("value", read.get());
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    public void phasesAreTimedDuringTheFirstOpen() {
+        panther = new Panther(MemoryDB.configuration().build(), MemoryDB.open(store), 5, true);
+        Map<String, Long> phases = panther.stats().getInitPhases();
+        assertEquals(Arrays.asList("configuration", "setup"), new ArrayList<>(phases.keySet()));
+        assertEquals(5L, (long) phases.get("configuration"));
+        panther.start();
+        phases = panther.stats().getInitPhases();
+        assertEquals(Arrays.asList("configuration", "setup", "open", "recover", "expiry", "caches"),
+                new ArrayList<>(phases.keySet()));
+        for (long millis : phases.values()) {
+            assertTrue(millis >= 0);
+        }
+        // later database work is not timed
+        assertTrue(panther.writeInDatabase("key", "value"));
+        panther.closeDatabase();
+        assertEquals(phases, panther.stats().getInitPhases());
+    }
+
+    private void storeValue() {
+        Panther writer = MemoryDB.panther(MemoryDB.configuration().build(), store);
+        assertTrue(writer.writeInDatabase("key", "value"));
+        writer.closeDatabase();
+    }
+}
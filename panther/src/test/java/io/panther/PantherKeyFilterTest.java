@@ -0,0 +1,111 @@
+package io.panther;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/14 10:20
+ */
+public class PantherKeyFilterTest {
+    private final MemoryDB store = MemoryDB.create();
+    private Panther panther;
+
+    @After
+    public void close() {
+        if (panther != null) {
+            panther.closeDatabase();
+        }
+    }
+
+    @Test
+    public void filterIsBuiltOnOpen() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            store.records.put("stored_" + i, MemoryDB.encodeString("value_" + i));
+        }
+        panther = MemoryDB.panther(MemoryDB.configuration().build(), store);
+        // built in background, misses stop reaching the database once it is ready
+        long deadline = System.currentTimeMillis() + 5000;
+        while (databaseCalls() != readMissing() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        int calls = databaseCalls();
+        for (int i = 0; i < 100; i++) {
+            assertNull(panther.readFromDatabase("missing_" + i, String.class));
+        }
+        // about 1% false positives
+        assertTrue(databaseCalls() - calls <= 10);
+        // keys stored before the open are in the filter
+        for (int i = 0; i < 100; i++) {
+            assertTrue(panther.keyExist("stored_" + i));
+        }
+    }
+
+    @Test
+    public void missesDoNotThrowBeforeTheFilterIsBuilt() {
+        store.records.put("stored", MemoryDB.encodeString("value"));
+        store.scanGate = new CountDownLatch(1);
+        try {
+            panther = MemoryDB.panther(MemoryDB.configuration().build(), store);
+            // every read reaches the database until the build finishes
+            for (int i = 0; i < 1000; i++) {
+                assertNull(panther.readFromDatabase("missing_" + i, String.class));
+                assertFalse(panther.keyExist("missing_" + i));
+            }
+            assertTrue(store.calls("exists") >= 2000);
+            panther.deleteFromDatabase("missing_0");
+            assertEquals(0, store.calls("notFound"));
+        } finally {
+            store.scanGate.countDown();
+        }
+    }
+
+    @Test
+    public void expiredKeysCountAsDeletes() throws Exception {
+        panther = MemoryDB.panther(MemoryDB.configuration().build(), store);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (databaseCalls() != readMissing() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, store.calls("allKeysIterator"));
+        // over half of the minimum capacity expire
+        for (int i = 0; i < 600; i++) {
+            assertTrue(panther.writeInDatabase("expiring_" + i, "value", 1));
+        }
+        Thread.sleep(10);
+        Field expiry = Panther.class.getDeclaredField("expiry");
+        expiry.setAccessible(true);
+        assertEquals(600, ((ExpiryManager) expiry.get(panther)).sweep(System.currentTimeMillis()));
+        // the filter is rebuilt without the expired keys
+        awaitCalls("allKeysIterator", 4);
+    }
+
+    private void awaitCalls(String method, int calls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.calls(method) < calls && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(calls, store.calls(method));
+    }
+
+    /**
+     * @return database calls after reading a missing key
+     */
+    private int readMissing() {
+        panther.readFromDatabase("missing", String.class);
+        return databaseCalls();
+    }
+
+    private int databaseCalls() {
+        return store.calls("getBytes") + store.calls("exists");
+    }
+}
@@ -0,0 +1,188 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/12 14:40
+ */
+public class PantherMemoryCacheTest {
+    // about 200 bytes with the entry overhead
+    private static final String VALUE = "0123456789012345678901234567890123456789";
+
+    @Test
+    public void scanDoesNotFlushHotEntries() {
+        PantherMemoryCache cache = PantherMemoryCache.withMaxBytes(100 * 200);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i, true) == null) {
+                    cache.put("hot" + i, VALUE, true);
+                }
+            }
+        }
+        for (int i = 0; i < 5000; i++) {
+            cache.put("scan" + i, VALUE, true);
+        }
+        int hits = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot" + i, true) != null) {
+                hits++;
+            }
+        }
+        assertTrue("hot survivors " + hits, hits >= 40);
+        assertTrue(cache.size() <= cache.maxSize());
+    }
+
+    @Test
+    public void staysWithinBudget() {
+        PantherMemoryCache cache = PantherMemoryCache.withMaxBytes(10000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key" + i, new byte[i % 300], true);
+            assertTrue(cache.size() <= cache.maxSize());
+        }
+        // a value larger than the budget is not kept
+        cache.put("huge", new byte[20000], true);
+        assertNull(cache.get("huge", true));
+        assertTrue(cache.size() <= cache.maxSize());
+    }
+
+    @Test
+    public void referencesAreSeparate() {
+        PantherMemoryCache cache = PantherMemoryCache.withMaxBytes(10000);
+        Object weak = new Object();
+        cache.put("k", weak);
+        cache.put("k", "strong", true);
+        assertSame(weak, cache.get("k"));
+        assertEquals("strong", cache.get("k", true));
+        cache.delete("k");
+        assertNull(cache.get("k"));
+        assertNull(cache.get("k", true));
+        cache.put("a", VALUE, MemoryReference.SOFT);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.keySet().length);
+    }
+
+    @Test
+    public void clearedReferencesArePurged() throws Exception {
+        PantherMemoryCache cache = PantherMemoryCache.withMaxBytes(10000);
+        // held here so only the test clears them
+        Object soft = new Object();
+        Object weak = new Object();
+        cache.put("a", soft, MemoryReference.SOFT);
+        cache.put("b", soft, MemoryReference.SOFT);
+        cache.put("c", weak, MemoryReference.WEAK);
+        cache.put("d", VALUE, MemoryReference.STRONG);
+        int size = cache.size();
+        collect(cache, "softTable", "a");
+        collect(cache, "weakTable", "c");
+        assertEquals(2, cache.deadCount());
+        assertEquals(2, cache.liveCount());
+        // a read of a cleared entry purges every cleared entry with their weight
+        assertNull(cache.get("a", MemoryReference.SOFT));
+        assertEquals(0, cache.deadCount());
+        assertEquals(2, cache.collectedCount());
+        assertEquals(size - 2 * referenceWeight("a"), cache.size());
+        List<String> keys = Arrays.asList(cache.keySet());
+        assertEquals(2, keys.size());
+        assertTrue(keys.contains("soft:b") && keys.contains("strong:d"));
+        // and so does a write
+        collect(cache, "softTable", "b");
+        cache.put("e", VALUE, true);
+        assertEquals(3, cache.collectedCount());
+        assertNull(cache.get("b", MemoryReference.SOFT));
+        assertEquals(2, cache.liveCount());
+        // entries of live referents are still served
+        cache.put("f", soft, MemoryReference.SOFT);
+        cache.put("g", weak, MemoryReference.WEAK);
+        assertSame(soft, cache.get("f", MemoryReference.SOFT));
+        assertSame(weak, cache.get("g", MemoryReference.WEAK));
+    }
+
+    @Test
+    public void deprecatedSizeIsEntryCount() {
+        @SuppressWarnings("deprecation")
+        PantherMemoryCache cache = new PantherMemoryCache(10);
+        assertEquals(10 * PantherMemoryCache.ESTIMATED_ENTRY_BYTES, cache.maxSize());
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        final PantherMemoryCache cache = PantherMemoryCache.withMaxBytes(20000);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 50000; i++) {
+                            String key = "c" + random.nextInt(500);
+                            int action = random.nextInt(50);
+                            if (action < 5) {
+                                cache.put(key, key, true);
+                            } else if (action == 5) {
+                                cache.delete(key);
+                            } else {
+                                Object value = cache.get(key, true);
+                                if (value != null && !value.equals(key)) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= cache.maxSize());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Weight of a soft or weak entry, the reference only
+     */
+    private static int referenceWeight(String key) {
+        return 64 + 2 * key.length();
+    }
+
+    /**
+     * Clear and enqueue the reference of an entry like the GC does
+     */
+    private static void collect(PantherMemoryCache cache, String table, String key) throws Exception {
+        Field tableField = PantherMemoryCache.class.getDeclaredField(table);
+        tableField.setAccessible(true);
+        Object node = ((Map<?, ?>) tableField.get(cache)).get(key);
+        Field valueField = node.getClass().getDeclaredField("value");
+        valueField.setAccessible(true);
+        Reference<?> reference = (Reference<?>) valueField.get(node);
+        reference.clear();
+        assertTrue(reference.enqueue());
+    }
+}
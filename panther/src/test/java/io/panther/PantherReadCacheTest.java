@@ -0,0 +1,127 @@
+package io.panther;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/15 10:40
+ */
+public class PantherReadCacheTest {
+    private final MemoryDB store = MemoryDB.create();
+    private Panther panther;
+
+    @After
+    public void close() {
+        store.readGate = null;
+        if (panther != null) {
+            panther.closeDatabase();
+        }
+    }
+
+    @Test
+    public void servedFromMemoryUntilWritten() {
+        open(1024);
+        assertTrue(panther.writeInDatabase("cfg_a", "first"));
+        assertEquals("first", panther.readFromDatabase("cfg_a", String.class));
+        int reads = store.calls("getBytes");
+        assertEquals("first", panther.readFromDatabase("cfg_a", String.class));
+        assertEquals(reads, store.calls("getBytes"));
+        assertEquals(1, panther.stats().getReadCacheHits());
+
+        assertTrue(panther.writeInDatabase("cfg_a", "second"));
+        assertEquals("second", panther.readFromDatabase("cfg_a", String.class));
+        // keys of other prefixes always reach the database
+        assertTrue(panther.writeInDatabase("other", "value"));
+        reads = store.calls("getBytes");
+        assertEquals("value", panther.readFromDatabase("other", String.class));
+        assertEquals("value", panther.readFromDatabase("other", String.class));
+        assertEquals(reads + 2, store.calls("getBytes"));
+    }
+
+    @Test
+    public void deletesInvalidate() {
+        open(1024);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(panther.writeInDatabase("cfg_" + i, "value_" + i));
+            assertEquals("value_" + i, panther.readFromDatabase("cfg_" + i, String.class));
+        }
+        assertTrue(panther.deleteFromDatabase("cfg_0"));
+        assertNull(panther.readFromDatabase("cfg_0", String.class));
+        assertEquals("value_1", panther.readFromDatabase("cfg_1", String.class));
+        assertEquals(2, panther.deleteByPrefix("cfg_"));
+        assertNull(panther.readFromDatabase("cfg_1", String.class));
+        assertNull(panther.readFromDatabase("cfg_2", String.class));
+        assertEquals(0, panther.stats().getReadCacheBytes());
+    }
+
+    @Test
+    public void boundedByReadCacheSize() {
+        open(64);
+        // payloads of about 25 bytes, two fit
+        for (int i = 0; i < 3; i++) {
+            assertTrue(panther.writeInDatabase("cfg_" + i, "value_of_twenty_bytes_" + i));
+            panther.readFromDatabase("cfg_" + i, String.class);
+        }
+        assertTrue(panther.stats().getReadCacheBytes() <= 64);
+        int reads = store.calls("getBytes");
+        panther.readFromDatabase("cfg_2", String.class);
+        assertEquals(reads, store.calls("getBytes"));
+        panther.readFromDatabase("cfg_0", String.class);
+        assertEquals(reads + 1, store.calls("getBytes"));
+        // a value over the bound is never cached
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append('x');
+        }
+        assertTrue(panther.writeInDatabase("cfg_large", large.toString()));
+        panther.readFromDatabase("cfg_large", String.class);
+        reads = store.calls("getBytes");
+        assertEquals(large.toString(), panther.readFromDatabase("cfg_large", String.class));
+        assertEquals(reads + 1, store.calls("getBytes"));
+    }
+
+    @Test
+    public void readRacingAWriteDoesNotCacheTheOldValue() throws Exception {
+        open(1024);
+        assertTrue(panther.writeInDatabase("cfg_a", "old"));
+        final int reads = store.calls("getBytes");
+        CountDownLatch gate = new CountDownLatch(1);
+        store.readGate = gate;
+        final AtomicReference<String> raced = new AtomicReference<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                raced.set(panther.readFromDatabase("cfg_a", String.class));
+            }
+        });
+        reader.start();
+        // the reader holds the old record
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.calls("getBytes") == reads && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        store.readGate = null;
+        assertTrue(panther.writeInDatabase("cfg_a", "new"));
+        gate.countDown();
+        reader.join();
+        assertEquals("old", raced.get());
+        assertEquals("new", panther.readFromDatabase("cfg_a", String.class));
+        assertEquals("new", panther.readFromDatabase("cfg_a", String.class));
+    }
+
+    private void open(int readCacheSize) {
+        panther = MemoryDB.panther(MemoryDB.configuration()
+                .readCachePrefix("cfg_")
+                .readCacheSize(readCacheSize)
+                .build(), store);
+    }
+}
@@ -0,0 +1,177 @@
+package io.panther;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Function;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/15 14:00
+ */
+public class PantherSchedulersTest {
+    private final MemoryDB store = MemoryDB.create();
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private Panther panther;
+
+    @After
+    public void close() {
+        store.readGate = null;
+        store.scanGate = null;
+        if (panther != null) {
+            panther.closeDatabase();
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void readsRunOnAtMostTheLaneThreads() throws Exception {
+        panther = MemoryDB.panther(MemoryDB.configuration().readThreads(2).build(), store);
+        assertTrue(panther.writeInDatabase("key", "value"));
+        int reads = store.calls("getBytes");
+        CountDownLatch gate = new CountDownLatch(1);
+        store.readGate = gate;
+        List<TestObserver<String>> observers = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            observers.add(panther.readFromDatabaseAsync("key", String.class).map(threadName()).test());
+        }
+        awaitCalls("getBytes", reads + 2);
+        Thread.sleep(100);
+        // the rest wait in the queue
+        assertEquals(reads + 2, store.calls("getBytes"));
+        gate.countDown();
+        Set<String> threads = new HashSet<>();
+        for (TestObserver<String> observer : observers) {
+            assertTrue(observer.awaitTerminalEvent(5, TimeUnit.SECONDS));
+            observer.assertNoErrors();
+            threads.add(observer.values().get(0));
+        }
+        assertTrue(threads.size() <= 2);
+        for (String thread : threads) {
+            assertTrue(thread, thread.startsWith("Panther-Read-"));
+        }
+    }
+
+    @Test
+    public void callsOverThePendingBoundAreRejected() throws Exception {
+        panther = MemoryDB.panther(MemoryDB.configuration().readThreads(1).build(), store);
+        assertTrue(panther.writeInDatabase("key", "value"));
+        CountDownLatch gate = new CountDownLatch(1);
+        store.readGate = gate;
+        List<TestObserver<String>> observers = new ArrayList<>();
+        for (int i = 0; i < PantherSchedulers.MAX_PENDING_CALLS_PER_THREAD; i++) {
+            observers.add(panther.readFromDatabaseAsync("key", String.class).test());
+        }
+        // failed at subscribe, nothing queued
+        panther.readFromDatabaseAsync("key", String.class).test().assertError(RejectedExecutionException.class);
+        // other lanes are not affected
+        TestObserver<Boolean> write = panther.writeInDatabaseAsync("other", "value").test();
+        assertTrue(write.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        write.assertValue(true);
+        gate.countDown();
+        for (TestObserver<String> observer : observers) {
+            assertTrue(observer.awaitTerminalEvent(5, TimeUnit.SECONDS));
+            observer.assertValue("value");
+        }
+        // finished calls free their slots
+        TestObserver<String> read = panther.readFromDatabaseAsync("key", String.class).test();
+        assertTrue(read.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        read.assertValue("value");
+    }
+
+    @Test
+    public void deliveredOnTheConfiguredScheduler() throws Exception {
+        panther = MemoryDB.panther(MemoryDB.configuration().deliveryScheduler(newScheduler("Delivery")).build(),
+                store);
+        assertTrue(panther.writeInDatabase("key", "value"));
+        assertEquals("Delivery", deliveredOn(panther.readFromDatabaseAsync("key", String.class)));
+        assertEquals("Delivery", deliveredOn(panther.writeInDatabaseAsync("key", "value")));
+        // per call, null means no hop
+        assertTrue(deliveredOn(panther.readFromDatabaseAsync("key", String.class, null)).startsWith("Panther-Read-"));
+        assertTrue(deliveredOn(panther.deleteFromDatabaseAsync("key", null)).startsWith("Panther-Write-"));
+        assertEquals("Other", deliveredOn(panther.writeInDatabaseAsync("key", "value", newScheduler("Other"))));
+    }
+
+    @Test
+    public void backgroundWorkRunsOnTheBackgroundLane() throws Exception {
+        store.scanGate = new CountDownLatch(1);
+        panther = MemoryDB.panther(MemoryDB.configuration().build(), store);
+        // the key filter build waits in its scan
+        Thread scanning = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (scanning == null && System.currentTimeMillis() < deadline) {
+            scanning = threadIn(MemoryDB.class.getName());
+            Thread.sleep(5);
+        }
+        assertTrue(scanning != null && scanning.getName().startsWith("Panther-Background-"));
+        store.scanGate.countDown();
+    }
+
+    private String deliveredOn(Observable<?> result) throws Exception {
+        TestObserver<String> observer = result.map(threadName()).test();
+        assertTrue(observer.awaitTerminalEvent(5, TimeUnit.SECONDS));
+        observer.assertNoErrors();
+        return observer.values().get(0);
+    }
+
+    private static <T> Function<T, String> threadName() {
+        return new Function<T, String>() {
+            @Override
+            public String apply(T value) {
+                return Thread.currentThread().getName();
+            }
+        };
+    }
+
+    private Scheduler newScheduler(final String name) {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name);
+            }
+        });
+        executors.add(executor);
+        return Schedulers.from(executor);
+    }
+
+    private void awaitCalls(String method, int calls) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.calls(method) < calls && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(calls, store.calls(method));
+    }
+
+    private static Thread threadIn(String className) {
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            for (StackTraceElement element : entry.getValue()) {
+                if (element.getClassName().equals(className) && element.getMethodName().equals("invoke")) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
+}
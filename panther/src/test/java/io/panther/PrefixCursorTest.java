@@ -0,0 +1,91 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/11 10:40
+ */
+public class PrefixCursorTest {
+    private final PantherDatabase database = MemoryDB.open();
+
+    @Test
+    public void pagesInOrder() throws Exception {
+        List<String> keys = fill();
+        List<String> reversed = new ArrayList<>(keys);
+        Collections.reverse(reversed);
+
+        // page sizes not dividing the key count, the last key of a page is not repeated
+        assertEquals(keys, scan(new PrefixCursor(database, "user_", 0, 0, false, 7)));
+        assertEquals(keys, scan(new PrefixCursor(database, "user_", 0, 0, false, 1000)));
+        assertEquals(reversed, scan(new PrefixCursor(database, "user_", 0, 0, true, 7)));
+        assertEquals(keys.subList(0, 100), scan(new PrefixCursor(database, "user_0", 0, 0, false, 3)));
+    }
+
+    @Test
+    public void offsetAndLimit() throws Exception {
+        List<String> keys = fill();
+        List<String> reversed = new ArrayList<>(keys);
+        Collections.reverse(reversed);
+
+        assertEquals(keys.subList(5, 25), scan(new PrefixCursor(database, "user_", 5, 20, false, 7)));
+        assertEquals(reversed.subList(290, 300), scan(new PrefixCursor(database, "user_", 290, 0, true, 256)));
+        assertEquals(Collections.<String>emptyList(), scan(new PrefixCursor(database, "user_", 300, 0, false, 7)));
+
+        PrefixCursor cursor = new PrefixCursor(database, "user_", 0, 10, false, 4);
+        assertEquals(keys.subList(0, 4), cursor.nextPage());
+        assertEquals(keys.subList(4, 8), cursor.nextPage());
+        assertEquals(keys.subList(8, 10), cursor.nextPage());
+        assertEquals(Collections.<String>emptyList(), cursor.nextPage());
+    }
+
+    @Test
+    public void hidesInternalKeys() throws Exception {
+        fill();
+        List<String> visible = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            String key = "_tmp" + i;
+            database.get().put(key, new byte[1]);
+            visible.add(key);
+        }
+        assertEquals(visible, scan(new PrefixCursor(database, "_", 0, 0, false, 2)));
+        assertFalse(new PrefixCursor(database, Panther.INTERNAL_KEY_PREFIX, 0, 0, false, 2).hasNext());
+    }
+
+    /**
+     * 300 keys under user_, some other keys and internal keys around them
+     *
+     * @return sorted keys under user_
+     */
+    private List<String> fill() throws Exception {
+        TreeSet<String> keys = new TreeSet<>();
+        for (int i = 0; i < 300; i++) {
+            String key = String.format("user_%03d", i);
+            database.get().put(key, new byte[1]);
+            keys.add(key);
+        }
+        for (int i = 0; i < 10; i++) {
+            database.get().put("user" + i, new byte[1]);
+            database.get().put("usera" + i, new byte[1]);
+        }
+        database.get().put(Panther.INTERNAL_KEY_PREFIX + "ttl:user_001", new byte[1]);
+        return new ArrayList<>(keys);
+    }
+
+    private static List<String> scan(PrefixCursor cursor) {
+        List<String> keys = new ArrayList<>();
+        while (cursor.hasNext()) {
+            keys.addAll(cursor.nextPage());
+        }
+        return keys;
+    }
+}
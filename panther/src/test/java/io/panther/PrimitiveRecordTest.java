@@ -0,0 +1,123 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import io.panther.util.JSONUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/13 10:20
+ */
+public class PrimitiveRecordTest {
+
+    @Test
+    public void binaryRecordsConvertBetweenTypes() {
+        DataEnvelope intRecord = primitive(DataEnvelope.PRIMITIVE_INT, -5);
+        assertEquals(-5, intRecord.primitive(DataEnvelope.PRIMITIVE_INT));
+        assertEquals(-5.0, Double.longBitsToDouble(intRecord.primitive(DataEnvelope.PRIMITIVE_DOUBLE)), 0);
+        assertEquals(1, intRecord.primitive(DataEnvelope.PRIMITIVE_BOOLEAN));
+
+        DataEnvelope doubleRecord = primitive(DataEnvelope.PRIMITIVE_DOUBLE, Double.doubleToRawLongBits(2.5));
+        assertEquals(2, doubleRecord.primitive(DataEnvelope.PRIMITIVE_LONG));
+        assertEquals(2.5, doubleRecord.primitiveValue(Object.class));
+        assertEquals("2.5", doubleRecord.primitiveValue(String.class));
+
+        assertEquals(Long.MAX_VALUE, primitive(DataEnvelope.PRIMITIVE_LONG, Long.MAX_VALUE).primitiveValue(Long.class));
+        assertEquals(false, primitive(DataEnvelope.PRIMITIVE_BOOLEAN, 0).primitiveValue(Boolean.class));
+    }
+
+    @Test
+    public void boxedAsTheRequestedClass() {
+        DataEnvelope intRecord = primitive(DataEnvelope.PRIMITIVE_INT, 300);
+        assertEquals((short) 300, intRecord.primitiveValue(Short.class));
+        assertEquals((short) 300, intRecord.primitiveValue(short.class));
+        // narrowed like a cast
+        assertEquals((byte) 300, intRecord.primitiveValue(Byte.class));
+        assertEquals((byte) 2, primitive(DataEnvelope.PRIMITIVE_DOUBLE, Double.doubleToRawLongBits(2.5))
+                .primitiveValue(byte.class));
+        // supertypes of the stored box
+        assertEquals(300, intRecord.primitiveValue(Number.class));
+        assertEquals(300, intRecord.primitiveValue(Comparable.class));
+        for (Class<?> dataClass : new Class<?>[]{Character.class, char.class, Date.class, StringBuilder.class}) {
+            try {
+                intRecord.primitiveValue(dataClass);
+                fail(dataClass.getName());
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().contains(dataClass.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void readsOfOtherClassesFailCleanly() {
+        Panther panther = MemoryDB.panther(MemoryDB.configuration().build(), MemoryDB.create());
+        try {
+            assertTrue(panther.writeInDatabase("number", 300));
+            Short value = panther.readFromDatabase("number", Short.class);
+            assertEquals(Short.valueOf((short) 300), value);
+            // logged and null, never a ClassCastException in the caller
+            Date date = panther.readFromDatabase("number", Date.class);
+            assertNull(date);
+            Character character = panther.readFromDatabase("number", Character.class);
+            assertNull(character);
+        } finally {
+            panther.closeDatabase();
+        }
+    }
+
+    @Test
+    public void legacyRecordsReadAsPrimitives() {
+        // values written as DataBundle JSON by earlier versions
+        assertEquals(1, legacyBits("1", DataEnvelope.PRIMITIVE_INT));
+        assertEquals(1, legacyBits("1", DataEnvelope.PRIMITIVE_LONG));
+        assertEquals(1.0, Double.longBitsToDouble(legacyBits("1", DataEnvelope.PRIMITIVE_DOUBLE)), 0);
+        assertEquals(9007199254740993L, legacyBits("9007199254740993", DataEnvelope.PRIMITIVE_LONG));
+        // floats were stored through Gson as decimals
+        assertEquals(2.0, Double.longBitsToDouble(legacyBits("2.0", DataEnvelope.PRIMITIVE_DOUBLE)), 0);
+        assertEquals(2, legacyBits("2.0", DataEnvelope.PRIMITIVE_INT));
+        assertEquals(0, legacyBits("false", DataEnvelope.PRIMITIVE_BOOLEAN));
+        assertEquals(1, legacyBits("true", DataEnvelope.PRIMITIVE_BOOLEAN));
+        // numbers written as strings
+        assertEquals(3, legacyBits("\"3\"", DataEnvelope.PRIMITIVE_INT));
+    }
+
+    @Test
+    public void boxedClasses() {
+        assertEquals(Integer.class, DataEnvelope.boxedClassOf(DataEnvelope.PRIMITIVE_INT));
+        assertEquals(Long.class, DataEnvelope.boxedClassOf(DataEnvelope.PRIMITIVE_LONG));
+        assertEquals(Double.class, DataEnvelope.boxedClassOf(DataEnvelope.PRIMITIVE_DOUBLE));
+        assertEquals(Boolean.class, DataEnvelope.boxedClassOf(DataEnvelope.PRIMITIVE_BOOLEAN));
+        for (int type = DataEnvelope.PRIMITIVE_INT; type <= DataEnvelope.PRIMITIVE_BOOLEAN; type++) {
+            Object boxed = DataEnvelope.boxedClassOf(type) == Boolean.class ? (Object) true
+                    : JSONUtil.parseObject("7", DataEnvelope.boxedClassOf(type));
+            assertEquals(type, DataEnvelope.primitiveTypeOf(boxed));
+        }
+    }
+
+    private static DataEnvelope primitive(int type, long bits) {
+        return DataEnvelope.decode(DataEnvelope.encodePrimitive(type, bits, 1L, 0));
+    }
+
+    /**
+     * Bits read from a legacy record, the way Panther decodes text records that are not primitives
+     */
+    private static long legacyBits(String dataJson, int type) {
+        DataBundle dataBundle = new DataBundle();
+        dataBundle.key = "k";
+        dataBundle.dataJson = dataJson;
+        dataBundle.time = 1L;
+        String record = JSONUtil.toJSONString(dataBundle);
+        DataBundle parsed = JSONUtil.parseObject(record, DataBundle.class);
+        DataEnvelope envelope = DataEnvelope.fromLegacy(parsed, parsed.dataJson);
+        String text = new String(envelope.buffer, envelope.payloadOffset, envelope.payloadLength, DataEnvelope.UTF_8);
+        return DataEnvelope.primitiveBits(JSONUtil.parseObject(text, DataEnvelope.boxedClassOf(type)));
+    }
+}
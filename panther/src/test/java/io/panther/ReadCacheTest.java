@@ -0,0 +1,94 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/15 10:00
+ */
+public class ReadCacheTest {
+    private final ReadCache cache = new ReadCache(Arrays.asList("cfg_", "profile_"), 100);
+
+    @Test
+    public void onlyConfiguredPrefixesAreAccepted() {
+        assertTrue(cache.accepts("cfg_a"));
+        assertTrue(cache.accepts("profile_1"));
+        assertFalse(cache.accepts("cf"));
+        assertFalse(cache.accepts("other_cfg_a"));
+        assertTrue(new ReadCache(Collections.singletonList(""), 100).accepts("any"));
+    }
+
+    @Test
+    public void readRacingAnInvalidationIsNotCached() {
+        long stamp = cache.stamp();
+        // a write lands between the database read and the fill
+        cache.invalidate("cfg_a");
+        cache.put(stamp, "cfg_a", String.class, false, "stale", 5, 0);
+        assertNull(cache.get("cfg_a", String.class, false));
+        // invalidating another key or clearing bumps the stamp as well
+        stamp = cache.stamp();
+        cache.invalidate("cfg_b");
+        assertFalse(cache.prefetch(stamp, "cfg_a", String.class, false, "stale", 5, 0));
+        stamp = cache.stamp();
+        cache.clear();
+        cache.put(stamp, "cfg_a", String.class, false, "stale", 5, 0);
+        assertNull(cache.get("cfg_a", String.class, false));
+
+        cache.put(cache.stamp(), "cfg_a", String.class, false, "fresh", 5, 0);
+        assertEquals("fresh", cache.get("cfg_a", String.class, false));
+    }
+
+    @Test
+    public void boundedByPayloadBytes() {
+        for (int i = 0; i < 4; i++) {
+            cache.put(cache.stamp(), "cfg_" + i, String.class, false, "value_" + i, 30, 0);
+        }
+        PantherStats stats = new PantherStats();
+        cache.fillStats(stats);
+        assertEquals(90, stats.getReadCacheBytes());
+        // least recently used goes first
+        assertNull(cache.get("cfg_0", String.class, false));
+        assertEquals("value_3", cache.get("cfg_3", String.class, false));
+        // larger than the whole cache, never cached
+        cache.put(cache.stamp(), "cfg_big", String.class, false, "big", 101, 0);
+        assertNull(cache.get("cfg_big", String.class, false));
+        assertEquals("value_1", cache.get("cfg_1", String.class, false));
+    }
+
+    @Test
+    public void missesOnOtherShapeOrExpiry() {
+        cache.put(cache.stamp(), "cfg_a", String.class, false, "value", 5, 0);
+        assertNull(cache.get("cfg_a", Integer.class, false));
+        assertNull(cache.get("cfg_a", String.class, true));
+        cache.put(cache.stamp(), "cfg_b", String.class, false, "value", 5, System.currentTimeMillis() - 1);
+        assertNull(cache.get("cfg_b", String.class, false));
+        PantherStats stats = new PantherStats();
+        cache.fillStats(stats);
+        assertEquals(5, stats.getReadCacheBytes());
+        assertEquals(3, stats.getReadCacheMisses());
+    }
+
+    @Test
+    public void prefetchKeepsCachedValues() {
+        cache.put(cache.stamp(), "cfg_a", String.class, false, "read", 5, 0);
+        assertFalse(cache.prefetch(cache.stamp(), "cfg_a", String.class, false, "prefetched", 5, 0));
+        assertTrue(cache.prefetch(cache.stamp(), "cfg_b", String.class, false, "prefetched", 5, 0));
+        assertEquals("read", cache.get("cfg_a", String.class, false));
+        assertEquals("prefetched", cache.get("cfg_b", String.class, false));
+        assertEquals("prefetched", cache.get("cfg_b", String.class, false));
+        PantherStats stats = new PantherStats();
+        cache.fillStats(stats);
+        assertEquals(1, stats.getPrefetchedEntries());
+        assertEquals(2, stats.getPrefetchHits());
+        assertEquals(1, stats.getPrefetchUsedEntries());
+    }
+}
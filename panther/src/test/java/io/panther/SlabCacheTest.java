@@ -0,0 +1,144 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/12 16:20
+ */
+public class SlabCacheTest {
+    // ten records fit in a slab
+    private static final int RECORD_LENGTH = 100 * 1024;
+
+    @Test
+    public void acceptsMidSizedRecords() {
+        assertFalse(SlabCache.accepts(SlabCache.MIN_RECORD_LENGTH - 1));
+        assertTrue(SlabCache.accepts(SlabCache.MIN_RECORD_LENGTH));
+        assertTrue(SlabCache.accepts(SlabCache.SLAB_SIZE));
+        assertFalse(SlabCache.accepts(SlabCache.SLAB_SIZE + 1));
+        SlabCache cache = new SlabCache(SlabCache.SLAB_SIZE);
+        cache.put(cache.stamp(), "small", new byte[100]);
+        assertNull(cache.get("small"));
+    }
+
+    @Test
+    public void recyclesLeastRecentlyReadSlab() {
+        SlabCache cache = new SlabCache(3 * SlabCache.SLAB_SIZE);
+        for (int i = 0; i < 30; i++) {
+            cache.put(cache.stamp(), "k" + i, record(i));
+        }
+        // slab 0 read after slab 1 was filled
+        assertNotNull(cache.get("k0"));
+        cache.put(cache.stamp(), "k30", record(30));
+
+        for (int i = 0; i <= 30; i++) {
+            byte[] record = cache.get("k" + i);
+            if (i >= 10 && i < 20) {
+                assertNull("k" + i, record);
+            } else {
+                assertArrayEquals("k" + i, record(i), record);
+            }
+        }
+        PantherStats stats = stats(cache);
+        assertEquals(10, stats.getOffHeapEvictions());
+        assertEquals(21L * RECORD_LENGTH, stats.getOffHeapBytes());
+    }
+
+    @Test
+    public void overwrittenRecordsAreReclaimedWithTheirSlab() {
+        SlabCache cache = new SlabCache(2 * SlabCache.SLAB_SIZE);
+        for (int i = 0; i < 10; i++) {
+            cache.put(cache.stamp(), "k" + i, record(i));
+        }
+        // the new copy goes to the next slab, the old one stays dead in slab 0
+        cache.put(cache.stamp(), "k0", record(100));
+        assertArrayEquals(record(100), cache.get("k0"));
+        assertEquals(10L * RECORD_LENGTH, stats(cache).getOffHeapBytes());
+        for (int i = 10; i < 30; i++) {
+            cache.put(cache.stamp(), "k" + i, record(i));
+            assertTrue(stats(cache).getOffHeapBytes() <= 2L * SlabCache.SLAB_SIZE);
+        }
+        // evicted records of recycled slabs are counted once
+        assertTrue(stats(cache).getOffHeapEvictions() <= 30);
+    }
+
+    @Test
+    public void staleFillIsDropped() {
+        SlabCache cache = new SlabCache(SlabCache.SLAB_SIZE);
+        long stamp = cache.stamp();
+        // a write invalidated the key while the reader was reading the database
+        cache.invalidate("k");
+        cache.put(stamp, "k", record(1));
+        assertNull(cache.get("k"));
+        cache.put(cache.stamp(), "k", record(2));
+        assertArrayEquals(record(2), cache.get("k"));
+        cache.invalidate("k");
+        assertNull(cache.get("k"));
+        assertEquals(0, stats(cache).getOffHeapBytes());
+    }
+
+    @Test
+    public void readersNeverSeeRecycledBytes() throws Exception {
+        final SlabCache cache = new SlabCache(2 * SlabCache.SLAB_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < 2000; i++) {
+                            int id = random.nextInt(60);
+                            if (seed == 0) {
+                                cache.put(cache.stamp(), "k" + id, record(id));
+                                continue;
+                            }
+                            byte[] record = cache.get("k" + id);
+                            if (record != null && !Arrays.equals(record(id), record)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] record(int id) {
+        byte[] record = new byte[RECORD_LENGTH];
+        Arrays.fill(record, (byte) id);
+        record[0] = (byte) (id >>> 8);
+        return record;
+    }
+
+    private static PantherStats stats(SlabCache cache) {
+        PantherStats stats = new PantherStats();
+        cache.fillStats(stats);
+        return stats;
+    }
+}
@@ -0,0 +1,74 @@
+package io.panther;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/9 16:40
+ */
+public class WriteBatchTest {
+
+    @Test
+    public void journalRoundTrip() {
+        List<String> keys = Arrays.asList("user:1", "user:\u5f20\u4e09", "empty", "deleted");
+        List<byte[]> records = Arrays.asList(new byte[]{1, 2, 3}, new byte[]{4}, new byte[0], null);
+        byte[] journal = WriteBatch.encodeJournal(keys, records);
+
+        List<String> decodedKeys = new ArrayList<>();
+        List<byte[]> decodedRecords = new ArrayList<>();
+        WriteBatch.decodeJournal(journal, decodedKeys, decodedRecords);
+        assertEquals(keys, decodedKeys);
+        assertEquals(records.size(), decodedRecords.size());
+        for (int i = 0; i < records.size() - 1; i++) {
+            assertArrayEquals(records.get(i), decodedRecords.get(i));
+        }
+        // deletes survive recovery as deletes
+        assertNull(decodedRecords.get(3));
+    }
+
+    @Test
+    public void emptyJournal() {
+        List<String> keys = new ArrayList<>();
+        List<byte[]> records = new ArrayList<>();
+        WriteBatch.decodeJournal(WriteBatch.encodeJournal(keys, records), keys, records);
+        assertTrue(keys.isEmpty());
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void damagedJournalIsRejectedAsWhole() {
+        byte[] journal = WriteBatch.encodeJournal(Arrays.asList("a", "b"),
+                Arrays.asList(new byte[]{1, 2, 3, 4}, new byte[]{5, 6, 7, 8}));
+        for (int length = 0; length < journal.length; length++) {
+            List<String> keys = new ArrayList<>();
+            List<byte[]> records = new ArrayList<>();
+            try {
+                WriteBatch.decodeJournal(Arrays.copyOf(journal, length), keys, records);
+                fail("Truncated at " + length);
+            } catch (IllegalArgumentException expected) {
+                // recovery never applies half of a batch
+                assertTrue(keys.isEmpty());
+                assertTrue(records.isEmpty());
+            }
+        }
+        byte[] corrupted = journal.clone();
+        // key length far past the end
+        corrupted[4] = 0x7F;
+        try {
+            WriteBatch.decodeJournal(corrupted, new ArrayList<String>(), new ArrayList<byte[]>());
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
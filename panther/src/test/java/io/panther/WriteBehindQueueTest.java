@@ -0,0 +1,84 @@
+package io.panther;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/9 14:30
+ */
+public class WriteBehindQueueTest {
+
+    @Test
+    public void fullQueueFailsWithoutBlocking() throws Exception {
+        final CountDownLatch commitStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> written = new ArrayList<>();
+        WriteBehindQueue queue = new WriteBehindQueue(new WriteBehindQueue.Store() {
+            @NonNull
+            @Override
+            public byte[] encode(String key, @NonNull Object data) {
+                return new byte[]{1};
+            }
+
+            @Override
+            public void beginCommit() throws Exception {
+                commitStarted.countDown();
+                release.await();
+            }
+
+            @Override
+            public void endCommit() {
+            }
+
+            @Override
+            public void write(String key, @Nullable byte[] record) {
+                synchronized (written) {
+                    written.add(key);
+                }
+            }
+
+            @Override
+            public void onBatchCommitted(int size, long costMillis) {
+            }
+
+            @Override
+            public void onWriteFailed(String key, Throwable error) {
+            }
+        }, 2);
+
+        TestObserver<Boolean> first = queue.enqueue("a", 1).test();
+        assertTrue(commitStarted.await(5, TimeUnit.SECONDS));
+        // the writer holds "a" in its batch, which still counts until committed
+        TestObserver<Boolean> second = queue.enqueue("b", 2).test();
+        TestObserver<Boolean> rejected = queue.enqueue("c", 3).test();
+        rejected.assertError(RejectedExecutionException.class);
+        // a queued key is still accepted and replaces the older value
+        TestObserver<Boolean> replaced = queue.enqueue("b", 4).test();
+        second.assertValue(true);
+
+        release.countDown();
+        first.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        replaced.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        first.assertValue(true);
+        replaced.assertValue(true);
+        queue.flush();
+        synchronized (written) {
+            assertEquals(2, written.size());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.panther.codec;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/14 14:10
+ */
+public class CodecTest {
+    private static final PantherCodec[] CODECS = {new GsonCodec(), new KryoCodec()};
+
+    @Test
+    public void roundTrip() throws Exception {
+        Bean bean = new Bean("panther", 7, new ArrayList<>(Arrays.asList("a", "b")));
+        List<Bean> beans = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            beans.add(new Bean("bean_" + i, i, null));
+        }
+        for (PantherCodec codec : CODECS) {
+            byte[] encoded = codec.encode(bean);
+            // payload inside a larger record
+            byte[] record = new byte[encoded.length + 5];
+            System.arraycopy(encoded, 0, record, 3, encoded.length);
+            assertEquals(bean, codec.decode(record, 3, encoded.length, Bean.class));
+
+            encoded = codec.encode(beans);
+            assertEquals(beans, codec.decodeList(encoded, 0, encoded.length, Bean.class));
+        }
+    }
+
+    @Test
+    public void kryoReadsBeansWithoutNoArgConstructor() throws Exception {
+        KryoCodec codec = new KryoCodec();
+        Immutable value = new Immutable(42);
+        byte[] encoded = codec.encode(value);
+        assertEquals(42, codec.decode(encoded, 0, encoded.length, Immutable.class).value);
+        // the class is stored with the value
+        assertEquals(Immutable.class, codec.decode(encoded, 0, encoded.length, Object.class).getClass());
+    }
+
+    @Test
+    public void gsonReadsNullAsNull() throws Exception {
+        byte[] encoded = "null".getBytes("UTF-8");
+        assertNull(new GsonCodec().decode(encoded, 0, encoded.length, Bean.class));
+    }
+
+    static final class Bean {
+        String name;
+        int count;
+        List<String> tags;
+
+        Bean() {
+        }
+
+        Bean(String name, int count, List<String> tags) {
+            this.name = name;
+            this.count = count;
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Bean)) {
+                return false;
+            }
+            Bean other = (Bean) o;
+            return name.equals(other.name) && count == other.count
+                    && (tags == null ? other.tags == null : tags.equals(other.tags));
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + count;
+        }
+    }
+
+    static final class Immutable {
+        final int value;
+
+        Immutable(int value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.panther.compress;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/10 10:20
+ */
+public class CompressorTest {
+    private static final Compressor[] COMPRESSORS = {new DeflateCompressor(), new LZ4Compressor()};
+
+    @Test
+    public void roundTrip() throws Exception {
+        Random random = new Random(1);
+        List<byte[]> inputs = new ArrayList<>();
+        inputs.add(new byte[0]);
+        inputs.add(new byte[]{42});
+        inputs.add("{\"id\":1,\"name\":\"panther\",\"tags\":[\"a\",\"b\"]}".getBytes("UTF-8"));
+        byte[] noise = new byte[70000];
+        random.nextBytes(noise);
+        inputs.add(noise);
+        // long runs and matches farther than the LZ4 window
+        byte[] repetitive = new byte[300000];
+        for (int i = 0; i < repetitive.length; i++) {
+            repetitive[i] = (byte) (i % 1000 < 500 ? 'a' : i % 7);
+        }
+        inputs.add(repetitive);
+        for (Compressor compressor : COMPRESSORS) {
+            for (byte[] input : inputs) {
+                byte[] compressed = compressor.compress(input, 0, input.length);
+                assertArrayEquals(compressor.getClass().getSimpleName(), input,
+                        compressor.decompress(compressed, 0, compressed.length));
+            }
+        }
+    }
+
+    @Test
+    public void roundTripOfSlices() throws Exception {
+        byte[] data = "xxxxHELLO HELLO HELLO HELLO HELLO HELLO HELLOyyyy".getBytes("UTF-8");
+        byte[] expected = Arrays.copyOfRange(data, 4, data.length - 4);
+        for (Compressor compressor : COMPRESSORS) {
+            byte[] compressed = compressor.compress(data, 4, data.length - 8);
+            byte[] framed = new byte[compressed.length + 6];
+            System.arraycopy(compressed, 0, framed, 3, compressed.length);
+            assertArrayEquals(expected, compressor.decompress(framed, 3, compressed.length));
+        }
+    }
+
+    @Test
+    public void dictionary() throws Exception {
+        byte[] dictionary = "\"status\":\"active\",\"country\":\"CN\",\"language\":\"zh\"".getBytes("UTF-8");
+        byte[] value = "{\"id\":7,\"status\":\"active\",\"country\":\"CN\"}".getBytes("UTF-8");
+        byte[] compressed = DeflateCompressor.compress(value, 0, value.length, dictionary);
+        assertArrayEquals(value, DeflateCompressor.decompress(compressed, 0, compressed.length, dictionary));
+        try {
+            DeflateCompressor.decompress(compressed, 0, compressed.length, null);
+            fail();
+        } catch (DataFormatException expected) {
+        }
+    }
+
+    @Test
+    public void malformedInput() throws Exception {
+        byte[] input = new byte[5000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) (i % 31);
+        }
+        for (Compressor compressor : COMPRESSORS) {
+            String name = compressor.getClass().getSimpleName();
+            byte[] compressed = compressor.compress(input, 0, input.length);
+            expectMalformed(name, compressor, Arrays.copyOf(compressed, 2));
+            expectMalformed(name, compressor, Arrays.copyOf(compressed, compressed.length / 2));
+            // a huge claimed length is rejected before allocating it
+            byte[] huge = compressed.clone();
+            huge[0] = 0x7F;
+            expectMalformed(name, compressor, huge);
+            byte[] negative = compressed.clone();
+            negative[0] = (byte) 0x80;
+            expectMalformed(name, compressor, negative);
+            // corrupted bytes either fail cleanly or decode to something of the claimed length
+            Random random = new Random(2);
+            for (int i = 0; i < 200; i++) {
+                byte[] corrupted = compressed.clone();
+                corrupted[4 + random.nextInt(corrupted.length - 4)] ^= 1 << random.nextInt(8);
+                try {
+                    assertTrue(compressor.decompress(corrupted, 0, corrupted.length).length == input.length);
+                } catch (DataFormatException expected) {
+                }
+            }
+        }
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                final int seed = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        byte[] input = new byte[2000 + seed * 100];
+                        for (int i = 0; i < input.length; i++) {
+                            input[i] = (byte) ((i * seed) % 13);
+                        }
+                        for (int i = 0; i < 50; i++) {
+                            for (Compressor compressor : COMPRESSORS) {
+                                byte[] compressed = compressor.compress(input, 0, input.length);
+                                if (!Arrays.equals(input, compressor.decompress(compressed, 0, compressed.length))) {
+                                    return false;
+                                }
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void expectMalformed(String name, Compressor compressor, byte[] data) throws Exception {
+        try {
+            compressor.decompress(data, 0, data.length);
+            fail(name);
+        } catch (DataFormatException expected) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.panther.compress;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Project: ProjectPanther
+ * Author: LiShen
+ * Time: 2019/9/10 15:30
+ */
+public class DictionaryTrainerTest {
+
+    @Test
+    public void dictionaryShrinksSimilarValues() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            samples.add(profile(i));
+        }
+        byte[] dictionary = DictionaryTrainer.train(samples, DictionaryTrainer.DEFAULT_DICTIONARY_SIZE);
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= DictionaryTrainer.DEFAULT_DICTIONARY_SIZE);
+        // the shared field names made it in
+        assertTrue(new String(dictionary, "UTF-8").contains("\"notification_settings\""));
+
+        byte[] value = profile(1000);
+        byte[] plain = Compression.DEFLATE.compress(value, 0, value.length);
+        byte[] withDictionary = Compression.DEFLATE.compress(value, 0, value.length, dictionary);
+        assertTrue(withDictionary.length < plain.length);
+        assertArrayEquals(value, Compression.DEFLATE.decompress(withDictionary, 0, withDictionary.length, dictionary));
+    }
+
+    @Test
+    public void respectsMaxSize() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            samples.add(profile(i));
+        }
+        assertTrue(DictionaryTrainer.train(samples, 100).length <= 100);
+        assertEquals(0, DictionaryTrainer.train(samples, 0).length);
+    }
+
+    @Test
+    public void unrelatedSamplesGiveEmptyDictionary() {
+        Random random = new Random(3);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            byte[] sample = new byte[256];
+            random.nextBytes(sample);
+            samples.add(sample);
+        }
+        assertEquals(0, DictionaryTrainer.train(samples, 1024).length);
+        assertEquals(0, DictionaryTrainer.train(Collections.<byte[]>emptyList(), 1024).length);
+        // samples shorter than a sequence
+        List<byte[]> tiny = new ArrayList<>();
+        tiny.add(new byte[]{1, 2, 3});
+        tiny.add(new byte[]{1, 2, 3});
+        assertEquals(0, DictionaryTrainer.train(tiny, 1024).length);
+    }
+
+    private static byte[] profile(int id) throws Exception {
+        return ("{\"id\":" + id + ",\"nickname\":\"user" + id + "\",\"avatar_url\":\"https://img.example.com/avatar/"
+                + id + ".png\",\"notification_settings\":{\"email\":true,\"push\":" + (id % 2 == 0)
+                + "},\"locale\":\"zh_CN\"}").getBytes("UTF-8");
+    }
+}